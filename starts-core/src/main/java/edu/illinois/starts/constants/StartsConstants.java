@@ -57,6 +57,8 @@ public interface StartsConstants {
     String TEST_CLASSES = "test-classes";
     String JAR_CHECKSUMS = "jar-checksums";
     String CHANGED_CLASSES = "changed-classes";
+    String CLASS_EDGES = "class-edges";
+    String SELECTION_GRAPH = "selection-graph";
     String CHECK_IF_ALL_AFFECTED = "checkIfAllAffected";
     String STARTS_AFFECTED_TESTS = "STARTS:AffectedTests: ";
 
@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.data;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import edu.illinois.starts.util.SymbolTable;
+
+/**
+ * Graphe de dependances en representation CSR (compressed sparse row) :
+ * chaque sommet est un entier 0..n-1 (dictionnaire {@link SymbolTable}) et ses
+ * successeurs sont la tranche {@code targets[offsets[v] .. offsets[v+1]]}.
+ * Les aretes inverses (predecesseurs) sont stockees de la meme facon.
+ *
+ * <p>Une arete A -> B signifie "A depend de B", comme dans le graphe YASGL
+ * qu'il remplace. Les tableaux exposes par les getters sont partages : ne pas
+ * les modifier.
+ */
+public class CsrGraph {
+    private static final int[] NO_EDGE = new int[0];
+
+    private final SymbolTable vertices;
+    private final int[] forwardOffsets;
+    private final int[] forwardTargets;
+    private final int[] reverseOffsets;
+    private final int[] reverseTargets;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private CsrGraph(SymbolTable vertices, int[] forwardOffsets, int[] forwardTargets,
+                     int[] reverseOffsets, int[] reverseTargets) {
+        this.vertices = vertices;
+        this.forwardOffsets = forwardOffsets;
+        this.forwardTargets = forwardTargets;
+        this.reverseOffsets = reverseOffsets;
+        this.reverseTargets = reverseTargets;
+    }
+
+    public int getVertexCount() {
+        return vertices.size();
+    }
+
+    public int getEdgeCount() {
+        return forwardTargets.length;
+    }
+
+    /** Identifiant du sommet, ou -1 s'il n'est pas dans le graphe. */
+    public int getId(String name) {
+        return vertices.find(name);
+    }
+
+    public String getName(int id) {
+        return vertices.name(id);
+    }
+
+    public int[] getForwardOffsets() {
+        return forwardOffsets;
+    }
+
+    public int[] getForwardTargets() {
+        return forwardTargets;
+    }
+
+    public int[] getReverseOffsets() {
+        return reverseOffsets;
+    }
+
+    public int[] getReverseTargets() {
+        return reverseTargets;
+    }
+
+    /** Noms de tous les sommets, dans l'ordre des identifiants. */
+    public List<String> getVertices() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return vertices.name(index);
+            }
+
+            @Override
+            public int size() {
+                return vertices.size();
+            }
+        };
+    }
+
+    public Collection<String> getSuccessors(String name) {
+        return names(getId(name), forwardOffsets, forwardTargets);
+    }
+
+    public Collection<String> getPredecessors(String name) {
+        return names(getId(name), reverseOffsets, reverseTargets);
+    }
+
+    private Collection<String> names(int id, int[] offsets, int[] targets) {
+        if (id < 0) {
+            return new HashSet<>();
+        }
+        Set<String> names = new HashSet<>();
+        for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+            names.add(vertices.name(targets[i]));
+        }
+        return names;
+    }
+
+    /** Parcourt les aretes source -> destination, groupees par source. */
+    public void forEachEdge(BiConsumer<String, String> consumer) {
+        for (int v = 0; v < vertices.size(); v++) {
+            String source = vertices.name(v);
+            for (int i = forwardOffsets[v]; i < forwardOffsets[v + 1]; i++) {
+                consumer.accept(source, vertices.name(forwardTargets[i]));
+            }
+        }
+    }
+
+    /** Sommets atteignables depuis {@code start} (inclus) en suivant les aretes. */
+    public Set<String> acceptForward(Collection<String> start) {
+        return reach(start, forwardOffsets, forwardTargets);
+    }
+
+    /** Sommets qui atteignent {@code start} (inclus), i.e. parcours des aretes inverses. */
+    public Set<String> acceptBackward(Collection<String> start) {
+        return reach(start, reverseOffsets, reverseTargets);
+    }
+
+    private Set<String> reach(Collection<String> start, int[] offsets, int[] targets) {
+        BitSet visited = new BitSet(vertices.size());
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (String name : start) {
+            int id = getId(name);
+            if (id >= 0 && !visited.get(id)) {
+                visited.set(id);
+                queue.add(id);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int v = queue.poll();
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                int w = targets[i];
+                if (!visited.get(w)) {
+                    visited.set(w);
+                    queue.add(w);
+                }
+            }
+        }
+        Set<String> reached = new HashSet<>();
+        for (int v = visited.nextSetBit(0); v >= 0; v = visited.nextSetBit(v + 1)) {
+            reached.add(vertices.name(v));
+        }
+        return reached;
+    }
+
+    /**
+     * Ecrit les noms des sommets et les aretes directes ; les aretes inverses sont
+     * recalculees a la lecture.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        int n = vertices.size();
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(n);
+        for (int v = 0; v < n; v++) {
+            out.writeUTF(vertices.name(v));
+        }
+        out.writeInt(forwardTargets.length);
+        for (int v = 0; v < n; v++) {
+            out.writeInt(forwardOffsets[v + 1] - forwardOffsets[v]);
+        }
+        for (int target : forwardTargets) {
+            out.writeInt(target);
+        }
+    }
+
+    /** Relit un graphe ecrit par {@link #writeTo}. */
+    public static CsrGraph readFrom(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported graph format version: " + version);
+        }
+        int n = in.readInt();
+        SymbolTable vertices = new SymbolTable();
+        for (int v = 0; v < n; v++) {
+            vertices.intern(in.readUTF());
+        }
+        int edgeCount = in.readInt();
+        int[] forwardOffsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            forwardOffsets[v + 1] = forwardOffsets[v] + in.readInt();
+        }
+        if (forwardOffsets[n] != edgeCount) {
+            throw new IOException("Corrupted graph: " + forwardOffsets[n] + " edges instead of " + edgeCount);
+        }
+        int[] forwardTargets = edgeCount == 0 ? NO_EDGE : new int[edgeCount];
+        for (int i = 0; i < edgeCount; i++) {
+            forwardTargets[i] = in.readInt();
+            if (forwardTargets[i] < 0 || forwardTargets[i] >= n) {
+                throw new IOException("Corrupted graph: vertex " + forwardTargets[i] + " out of " + n);
+            }
+        }
+        return Builder.withReverse(vertices, forwardOffsets, forwardTargets);
+    }
+
+    /**
+     * Accumule les aretes sous forme de paires d'entiers puis construit les
+     * tableaux CSR en un tri par denombrement. Les doublons sont supprimes.
+     */
+    public static class Builder {
+        private final SymbolTable vertices;
+        private int[] sources = new int[1024];
+        private int[] targets = new int[1024];
+        private int edgeCount;
+
+        public Builder() {
+            this(new SymbolTable());
+        }
+
+        public Builder(SymbolTable vertices) {
+            this.vertices = vertices;
+        }
+
+        public int addVertex(String name) {
+            return vertices.intern(name);
+        }
+
+        public Builder addEdge(String source, String target) {
+            return addEdge(vertices.intern(source), vertices.intern(target));
+        }
+
+        public Builder addEdge(int source, int target) {
+            if (edgeCount == sources.length) {
+                sources = Arrays.copyOf(sources, edgeCount * 2);
+                targets = Arrays.copyOf(targets, edgeCount * 2);
+            }
+            sources[edgeCount] = source;
+            targets[edgeCount] = target;
+            edgeCount++;
+            return this;
+        }
+
+        public CsrGraph build() {
+            int n = vertices.size();
+            int[] forwardOffsets = new int[n + 1];
+            int[] forwardTargets = dedupe(group(sources, targets, edgeCount, n, forwardOffsets), forwardOffsets, n);
+            return withReverse(vertices, forwardOffsets, forwardTargets);
+        }
+
+        private static CsrGraph withReverse(SymbolTable vertices, int[] forwardOffsets, int[] forwardTargets) {
+            int n = vertices.size();
+            // Le tri par denombrement est stable : les predecesseurs sortent deja tries et uniques
+            int[] reverseOffsets = new int[n + 1];
+            int[] reverseTargets = group(forwardTargets, forwardSources(forwardOffsets, forwardTargets.length),
+                    forwardTargets.length, n, reverseOffsets);
+            return new CsrGraph(vertices, forwardOffsets, forwardTargets, reverseOffsets, reverseTargets);
+        }
+
+        /**
+         * Tri par denombrement des {@code count} paires (keys[i], values[i]) selon key :
+         * remplit {@code offsets} et retourne les values groupees par key.
+         */
+        private static int[] group(int[] keys, int[] values, int count, int n, int[] offsets) {
+            for (int i = 0; i < count; i++) {
+                offsets[keys[i] + 1]++;
+            }
+            for (int v = 0; v < n; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            int[] next = Arrays.copyOf(offsets, n);
+            int[] grouped = count == 0 ? NO_EDGE : new int[count];
+            for (int i = 0; i < count; i++) {
+                grouped[next[keys[i]]++] = values[i];
+            }
+            return grouped;
+        }
+
+        /** Trie chaque tranche et supprime les aretes en double, en compactant les tableaux. */
+        private static int[] dedupe(int[] grouped, int[] offsets, int n) {
+            int write = 0;
+            int start = 0;
+            for (int v = 0; v < n; v++) {
+                int end = offsets[v + 1];
+                Arrays.sort(grouped, start, end);
+                offsets[v] = write;
+                for (int i = start; i < end; i++) {
+                    if (i == start || grouped[i] != grouped[i - 1]) {
+                        grouped[write++] = grouped[i];
+                    }
+                }
+                start = end;
+            }
+            offsets[n] = write;
+            return write == grouped.length ? grouped : Arrays.copyOf(grouped, write);
+        }
+
+        private static int[] forwardSources(int[] offsets, int count) {
+            int[] sources = new int[count];
+            for (int v = 0; v + 1 < offsets.length; v++) {
+                Arrays.fill(sources, offsets[v], offsets[v + 1], v);
+            }
+            return sources;
+        }
+    }
+}
@@ -7,29 +7,43 @@ package edu.illinois.starts.data;
 import static java.lang.String.join;
 
 import java.net.URL;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.BitSet;
+import java.util.List;
 
 import edu.illinois.starts.constants.StartsConstants;
 import edu.illinois.starts.util.Pair;
 
 /**
  * This class creates objects that represent one row in the .zlc file.
+ * The tests of the row are kept as indices into the test list of the file; test
+ * names are only produced when the row is written (PLAIN_TEXT).
  */
 public class ZLCData implements StartsConstants {
     private ZLCFormat format;
     private URL url;
     private String checksum;
-    private Set<String> testsStr;
-    private Set<Integer> testsIdx;
+    private BitSet tests;
+    private List<String> testList;
 
-    public ZLCData(URL url, String checksum, ZLCFormat format, Set<String> testsStr, Set<Integer> testsIdx) {
+    public ZLCData(URL url, String checksum, ZLCFormat format, BitSet tests, List<String> testList) {
         this.format = format;
         this.url = url;
         this.checksum = checksum;
-        this.testsStr = testsStr;
-        this.testsIdx = testsIdx;
+        this.tests = tests;
+        this.testList = testList;
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /** Index des tests de la ligne dans la liste de tests du fichier. */
+    public BitSet getTests() {
+        return tests;
     }
 
     @Override
@@ -38,17 +52,12 @@ public class ZLCData implements StartsConstants {
         String data;
         switch (format) {
             case INDEXED:
-                if (testsIdx.isEmpty()) {
-                    data = join(WHITE_SPACE, url.toExternalForm(), checksum);
-                } else {
-                    data = join(WHITE_SPACE, url.toExternalForm(), checksum, toCSVInt(testsIdx));
-                }
-                break;
+            case BINARY:
             case PLAIN_TEXT:
-                if (testsStr.isEmpty()) {
+                if (tests.isEmpty()) {
                     data = join(WHITE_SPACE, url.toExternalForm(), checksum);
                 } else {
-                    data = join(WHITE_SPACE, url.toExternalForm(), checksum, toCSVStr(testsStr));
+                    data = join(WHITE_SPACE, url.toExternalForm(), checksum, toCSV());
                 }
                 break;
             default:
@@ -57,12 +66,19 @@ public class ZLCData implements StartsConstants {
         return data;
     }
 
-    private static String toCSVInt(Set<Integer> tests) {
-        return tests.stream().map(String::valueOf).collect(Collectors.joining(COMMA));
-    }
-
-    private static String toCSVStr(Set<String> tests) {
-        return String.join(COMMA, tests);
+    private String toCSV() {
+        StringBuilder csv = new StringBuilder();
+        for (int idx = tests.nextSetBit(0); idx >= 0; idx = tests.nextSetBit(idx + 1)) {
+            if (csv.length() > 0) {
+                csv.append(COMMA);
+            }
+            if (format == ZLCFormat.INDEXED) {
+                csv.append(idx);
+            } else {
+                csv.append(testList.get(idx));
+            }
+        }
+        return csv.toString();
     }
 
     @Override
@@ -2,6 +2,8 @@ package edu.illinois.starts.data;
 
 import java.util.List;
 
+import edu.illinois.starts.enums.HashAlgorithm;
+
 /**
  * This class creates object that represents the entire .zlc file.
  */
@@ -9,17 +11,29 @@ public class ZLCFileContent {
     private ZLCFormat format;
     private List<String> tests;
     private List<ZLCData> zlcData;
+    private HashAlgorithm hashAlgorithm;
 
     public ZLCFileContent(List<String> tests, List<ZLCData> zlcData, ZLCFormat format) {
+        this(tests, zlcData, format, HashAlgorithm.LEGACY);
+    }
+
+    public ZLCFileContent(List<String> tests, List<ZLCData> zlcData, ZLCFormat format,
+                          HashAlgorithm hashAlgorithm) {
         this.tests = tests;
         this.zlcData = zlcData;
         this.format = format;
+        this.hashAlgorithm = hashAlgorithm;
     }
 
     public ZLCFormat getFormat() {
         return format;
     }
 
+    /** The algorithm of the checksums, recorded in the file header. */
+    public HashAlgorithm getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
     public int getTestsCount() {
         return tests.size();
     }
@@ -3,5 +3,6 @@ package edu.illinois.starts.data;
 public enum ZLCFormat {
     PLAIN_TEXT,  // store full URLs of tests
     INDEXED,  // store indices of tests
+    BINARY,  // binary file with a string table and a sorted class index, see ZLCBinaryFile
     ;
 }
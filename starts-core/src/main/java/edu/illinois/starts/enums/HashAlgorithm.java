@@ -0,0 +1,17 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.enums;
+
+/**
+ * The algorithm used to checksum class files.
+ */
+public enum HashAlgorithm {
+    /** CRC32 computed by Ekstazi's Hasher, the historical checksums. */
+    LEGACY,
+    /** CRC32C (java.util.zip.CRC32C, hardware-accelerated on recent CPUs). */
+    CRC32C,
+    /** 64-bit xxHash. */
+    XXH64
+}
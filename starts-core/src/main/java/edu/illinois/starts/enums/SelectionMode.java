@@ -0,0 +1,15 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.enums;
+
+/**
+ * How affected tests are found from the changed classes.
+ */
+public enum SelectionMode {
+    /** Read the tests listed for each changed class in deps.zlc. */
+    ZLC,
+    /** Walk the persisted dependency graph backwards from the changed classes. */
+    REVERSE_GRAPH
+}
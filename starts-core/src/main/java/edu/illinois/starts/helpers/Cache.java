@@ -6,125 +6,299 @@ package edu.illinois.starts.helpers;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 
 import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.util.JarDigestIndex;
 import edu.illinois.starts.util.Logger;
 
 /** Utility methods for dealing with cached files. */
 
 public class Cache implements StartsConstants {
     private static final Logger LOGGER = Logger.getGlobal();
-    private static final String GRAPH_EXTENSION = ".graph";
+    static final String GRAPH_EXTENSION = ".graph";
+    /** Graphes indexes par contenu : by-digest/(2 premiers caracteres)/(empreinte).graph */
+    private static final String DIGEST_DIR = "by-digest";
+    /** Index chemin du JAR -> empreinte, a la racine du cache. */
+    static final String DIGEST_INDEX = "jar-digests.idx";
+    private static final String SNAPSHOT = "-SNAPSHOT";
 
     File jdepsCache;
     String m2Repo;
 
     private Set<String> cpJars;
+    private JarDigestIndex digests;
+    /** JAR -> fichier de son graphe dans le cache. */
+    private final Map<String, File> cacheFiles = new HashMap<>();
+    /** Graphes calcules par ce module, faute d'etre dans le cache. */
+    private final Set<File> createdGraphs = Collections.synchronizedSet(new HashSet<>());
+    private int parallelism;
+    private boolean useJdeps;
 
     public Cache(File jdepsCache, String m2Repo) {
         this.jdepsCache = jdepsCache;
         this.m2Repo = m2Repo;
     }
 
-    public List<String> loadM2EdgesFromCache(String pathString) {
-        // mkdirs() (et non mkdir()) cree toute l'arborescence parente si besoin
-        // (ex: scripts/starts/work/jdeps-cache). Le double check exists() gere
-        // le cas ou un autre module l'a cree entre-temps (cache mutualise).
-        if (!jdepsCache.exists() && !jdepsCache.mkdirs() && !jdepsCache.exists()) {
+    /**
+     * Nombre de threads pour calculer les graphes des JARs absents du cache
+     * (1 = sequentiel, 0 = nombre de processeurs).
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /** Calcule les graphes des JARs avec jdeps (ToolProvider) au lieu de {@link DepsExtractor}. */
+    public void setUseJdeps(boolean useJdeps) {
+        this.useJdeps = useJdeps;
+    }
+
+    public CachedEdges loadM2EdgesFromCache(String pathString) {
+        // createDirectories cree toute l'arborescence parente si besoin
+        // (ex: scripts/starts/work/jdeps-cache) et n'echoue pas si un autre
+        // module ou processus l'a creee entre-temps (cache mutualise).
+        try {
+            Files.createDirectories(jdepsCache.toPath());
+        } catch (IOException ioe) {
             throw new RuntimeException("I could not create the jdeps cache: "
-                                               + jdepsCache.getAbsolutePath());
+                                               + jdepsCache.getAbsolutePath(), ioe);
         }
+        digests = JarDigestIndex.in(new File(jdepsCache, DIGEST_INDEX));
         //1. get jars from sfClassPath
         cpJars = getJarsFromCP(pathString);
-        //2. get the edges for the jars from jdepsCache (if they are in jdepsCache and add them to moreEdges
-        Set<String> jarsInCache = getJarsInGraphCache(cpJars);
-        HashSet<String> missing = getJarsMissingFromCache(jarsInCache);
+        //2. get the graphs of the jars from jdepsCache (if they are in jdepsCache)
+        Map<String, File> graphs = getJarsInGraphCache(cpJars);
+        Set<String> missing = new HashSet<>(cpJars);
+        missing.removeAll(graphs.keySet());
         // Some projects depend directly on jars in the standard library, so
         // we want to check there as well
-        jarsInCache.addAll(checkMissingJarsInJDKCache(missing));
-        return loadCachedEdges(jarsInCache);
-
-    }
-
-    private HashSet<String> getJarsMissingFromCache(Set<String> jarsInCache) {
-        HashSet<String> missing = new HashSet<>();
-        if (!cpJars.equals(jarsInCache)) {
-            missing = new HashSet<>(cpJars);
-            missing.removeAll(jarsInCache);
-        }
-        return missing;
+        graphs.putAll(checkMissingJarsInJDKCache(missing));
+        digests.save();
+        // Des JARs identiques partagent un graphe : il n'est lu qu'une fois
+        Map<File, String> jarsByGraph = new LinkedHashMap<>();
+        graphs.forEach((jar, graph) -> jarsByGraph.putIfAbsent(graph, jar));
+        CachedEdges edges = loadCachedEdges(jarsByGraph);
+        // Apres la lecture : les graphes recalcules pendant celle-ci (evinces, illisibles) sont des misses
+        Set<File> hits = new HashSet<>(jarsByGraph.keySet());
+        hits.removeAll(createdGraphs);
+        new GraphCacheManager(jdepsCache).recordAccess(hits, createdGraphs);
+        return edges;
     }
 
-    private Set<String> checkMissingJarsInJDKCache(HashSet<String> missing) {
-        Set<String> found = new HashSet<>();
+    private Map<String, File> checkMissingJarsInJDKCache(Set<String> missing) {
+        Map<String, File> found = new HashMap<>();
         Set<String> notFound = new HashSet<>();
         for (String jar : missing) {
             File missingFile = new File(jar);
             String fileName = missingFile.getName();
             File jdkJarGraphFile = new File(jdepsCache, fileName.replace(JAR_EXTENSION, GRAPH_EXTENSION));
             if (jdkJarGraphFile.exists()) {
-                found.add(jdkJarGraphFile.getName());
+                found.put(jar, jdkJarGraphFile);
             } else {
                 notFound.add(jar);
             }
         }
-        List<String> newlyCreated = new ArrayList<>();
+        //1. compute the missing graphs and store them in the cache
+        Map<File, List<String>> toCreate = new LinkedHashMap<>();
         for (String jar : notFound) {
-            //1. parse with jdeps and store in the cache
-            List<String> args = new ArrayList<>(Arrays.asList("-v", jar));
-            Writer.writeDepsToFile(RTSUtil.runJdeps(args), createCacheFile(jar).getAbsolutePath());
-            newlyCreated.add(jar);
+            // Des JARs identiques partagent le meme graphe : calcule une seule fois
+            toCreate.computeIfAbsent(createCacheFile(jar), f -> new ArrayList<>()).add(jar);
         }
-        //2. add newly-created graphs to list of jars that were previously found in cache
-        found.addAll(newlyCreated);
-        //3. remove newly-created graphs from list of jars that were not found
-        notFound.removeAll(newlyCreated);
+        found.putAll(createGraphs(toCreate));
+        //2. remove newly-created graphs from list of jars that were not found
+        notFound.removeAll(found.keySet());
         if (notFound.size() > 0) {
             throw new RuntimeException("I could not find or create jdeps graphs in any cache: " + notFound);
         }
         return found;
     }
 
-    private List<String> loadCachedEdges(Set<String> jarsInCache) {
-        List<String> edges = new ArrayList<>();
-        for (String jar : jarsInCache) {
-            File cacheFile = createCacheFile(jar);
+    /**
+     * Calcule les graphes manquants sur {@link #setParallelism} threads. Chaque graphe est
+     * publie des qu'il est ecrit ; l'echec d'un JAR est signale sans interrompre les autres.
+     *
+     * @param toCreate fichier du graphe -> JARs de ce contenu
+     * @return JAR -> graphe, pour les graphes crees
+     */
+    private Map<String, File> createGraphs(Map<File, List<String>> toCreate) {
+        Map<String, File> created = new HashMap<>();
+        if (toCreate.isEmpty()) {
+            return created;
+        }
+        long start = System.currentTimeMillis();
+        int threads = Math.min(toCreate.size(), parallelism > 0 ? parallelism
+                : Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            Map<File, Future<?>> tasks = new LinkedHashMap<>();
+            for (Map.Entry<File, List<String>> entry : toCreate.entrySet()) {
+                String jar = entry.getValue().get(0);
+                tasks.put(entry.getKey(), pool.submit(() -> {
+                    createGraph(entry.getKey(), jar, false);
+                    return null;
+                }));
+            }
+            for (Map.Entry<File, Future<?>> task : tasks.entrySet()) {
+                List<String> jars = toCreate.get(task.getKey());
+                try {
+                    task.getValue().get();
+                    for (String jar : jars) {
+                        created.put(jar, task.getKey());
+                    }
+                } catch (ExecutionException ee) {
+                    LOGGER.log(Level.SEVERE, "I could not create the jdeps graph of " + jars + ": " + ee.getCause());
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while creating jdeps graphs", ie);
+        } finally {
+            pool.shutdownNow();
+        }
+        LOGGER.log(Level.FINE, "[PROFILE] createJarGraphs(" + toCreate.size() + " jars, threads=" + threads
+                + "): " + Writer.millsToLog(System.currentTimeMillis() - start));
+        return created;
+    }
+
+    /**
+     * Un seul builder (thread ou processus) calcule une entree : les autres attendent le
+     * verrou, puis reprennent le graphe qu'il a publie.
+     *
+     * @param replace reecrire le graphe meme s'il existe (graphe illisible)
+     */
+    private void createGraph(File cacheFile, String jar, boolean replace) throws IOException {
+        try (CacheEntryLock lock = CacheEntryLock.acquire(cacheFile)) {
+            if (!replace && cacheFile.exists()) {
+                LOGGER.log(Level.FINE, "jdeps graph of " + jar + " published by another build: " + cacheFile);
+                return;
+            }
+            GraphCacheFile.write(cacheFile, extractJarDeps(jar));
+            createdGraphs.add(cacheFile);
+        }
+    }
+
+    /** @return les graphes calcules par ce module (les autres ont ete trouves dans le cache) */
+    Set<File> getCreatedGraphs() {
+        return Collections.unmodifiableSet(createdGraphs);
+    }
+
+    /** Equivalent de {@code jdeps -v jar}, lu directement dans les .class sauf si jdeps est force. */
+    private Map<String, Set<String>> extractJarDeps(String jar) {
+        if (useJdeps) {
+            return RTSUtil.runJdeps(new ArrayList<>(Arrays.asList("-v", jar)));
+        }
+        return DepsExtractor.extract(Collections.singletonList(jar), null);
+    }
+
+    /** @param graphs graphe -> un JAR de ce contenu */
+    private CachedEdges loadCachedEdges(Map<File, String> graphs) {
+        long start = System.currentTimeMillis();
+        CachedEdges edges = new CachedEdges();
+        for (Map.Entry<File, String> graph : graphs.entrySet()) {
+            File cacheFile = graph.getKey();
             LOGGER.log(Level.FINEST, "@@LoadingFromNormalCache: " + cacheFile.getAbsolutePath());
             try {
-                List<String> lines = Files.readAllLines(cacheFile.toPath(), Charset.defaultCharset());
-                edges.addAll(lines);
+                GraphCacheFile.read(cacheFile, edges);
+            } catch (NoSuchFileException | GraphCacheFile.CorruptGraphException unreadable) {
+                // Evince par un cache-gc depuis qu'il a ete trouve, ou illisible (tronque, autre
+                // version) : on le recalcule
+                boolean corrupt = unreadable instanceof GraphCacheFile.CorruptGraphException;
+                if (corrupt) {
+                    LOGGER.log(Level.WARNING, "Rebuilding jdeps graph of " + graph.getValue() + ": "
+                            + unreadable.getMessage());
+                }
+                try {
+                    createGraph(cacheFile, graph.getValue(), corrupt);
+                    GraphCacheFile.read(cacheFile, edges);
+                } catch (IOException ioe) {
+                    ioe.printStackTrace();
+                }
             } catch (IOException ioe) {
                 ioe.printStackTrace();
             }
         }
         LOGGER.log(Level.FINEST, "@@LoadedCachedEdgesFromJars: ");
+        LOGGER.log(Level.FINE, "[PROFILE] loadCachedEdges(" + graphs.size() + " jars, " + edges.size()
+                + " edges, created=" + createdGraphs.size() + "): "
+                + Writer.millsToLog(System.currentTimeMillis() - start));
         return edges;
     }
 
-    private Set<String> getJarsInGraphCache(Set<String> cpJars) {
-        Set<String> inCache = new HashSet<>();
+    private Map<String, File> getJarsInGraphCache(Set<String> cpJars) {
+        Map<String, File> inCache = new HashMap<>();
         for (String jar : cpJars) {
             File cacheJar = createCacheFile(jar);
-            if (cacheJar.exists()) {
-                inCache.add(jar);
+            if (cacheJar.exists() || adoptPathKeyedGraph(jar, cacheJar)) {
+                inCache.put(jar, cacheJar);
             }
         }
         return inCache;
     }
 
+    /**
+     * Graphe de {@code jar}, range sous l'empreinte de son contenu : un JAR reinstalle au meme
+     * chemin avec un autre contenu (SNAPSHOT) n'a plus le graphe de l'ancien, et des JARs
+     * identiques (autre worktree, autre depot local) partagent le meme graphe.
+     */
     private File createCacheFile(String jar) {
+        return cacheFiles.computeIfAbsent(jar, j -> {
+            try {
+                String digest = digests.digest(Paths.get(j));
+                return new File(jdepsCache, DIGEST_DIR + File.separator + digest.substring(0, 2)
+                        + File.separator + digest + GRAPH_EXTENSION);
+            } catch (IOException ioe) {
+                LOGGER.log(Level.WARNING, "Cannot digest " + j + ", its graph is cached by path: " + ioe);
+                return pathKeyedCacheFile(j);
+            }
+        });
+    }
+
+    /** Ancien emplacement du graphe, deduit du chemin du JAR sous le depot local. */
+    private File pathKeyedCacheFile(String jar) {
         String cachePath = jar.replace(m2Repo + File.separator, EMPTY).replace(JAR_EXTENSION, GRAPH_EXTENSION);
         return new File(jdepsCache, cachePath);
     }
 
+    /**
+     * Reprend le graphe d'un JAR publie (non SNAPSHOT) deja calcule a l'ancien emplacement :
+     * son contenu ne change pas pour un chemin donne. Les graphes des SNAPSHOT sont recalcules.
+     */
+    private boolean adoptPathKeyedGraph(String jar, File cacheFile) {
+        File pathKeyed = pathKeyedCacheFile(jar);
+        if (jar.contains(SNAPSHOT) || pathKeyed.equals(cacheFile) || !pathKeyed.exists()) {
+            return false;
+        }
+        Path target = cacheFile.toPath();
+        Path tmp = GraphCacheFile.tmpFile(target);
+        try {
+            Files.createDirectories(target.getParent());
+            Files.copy(pathKeyed.toPath(), tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException ioe) {
+            LOGGER.log(Level.FINEST, "Cannot adopt " + pathKeyed + ": " + ioe);
+            return false;
+        }
+    }
+
     private Set<String> getJarsFromCP(String sfPathString) {
         if (cpJars != null) {
             return cpJars;
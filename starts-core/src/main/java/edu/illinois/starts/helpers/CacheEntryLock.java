@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Verrou exclusif sur une entree du cache jdeps, entre threads et entre processus (modules
+ * d'un {@code mvn -T}, builds lances dans plusieurs shells) : celui qui l'obtient calcule
+ * l'entree, les autres attendent puis reprennent le fichier publie.
+ *
+ * <p>Le verrou porte sur un fichier {@code <entree>.lock}. Un {@link FileLock} est tenu par
+ * la JVM entiere : les threads d'un meme processus sont d'abord departages par un
+ * {@link ReentrantLock}, retire de la table des qu'aucun thread ne l'utilise plus (un gros
+ * classpath y laisserait sinon un verrou par JAR pour toute la vie du processus).
+ *
+ * <p>Les fichiers .lock ne sont pas supprimes a la liberation : un autre processus peut deja
+ * l'avoir ouvert, et supprimer le fichier lui ferait verrouiller un fichier qui n'est plus
+ * celui des suivants. Seul {@link GraphCacheManager#gc} les supprime,
+ * avec leur entree : au pire, deux builders calculent alors la meme entree et la publient
+ * deux fois a l'identique.
+ */
+final class CacheEntryLock implements AutoCloseable {
+    static final String LOCK_EXTENSION = ".lock";
+    private static final Map<Path, ThreadLock> IN_PROCESS = new ConcurrentHashMap<>();
+
+    private final Path lockFile;
+    private final ThreadLock threadLock;
+    private final FileChannel channel;
+    private final FileLock fileLock;
+
+    private CacheEntryLock(Path lockFile, ThreadLock threadLock, FileChannel channel, FileLock fileLock) {
+        this.lockFile = lockFile;
+        this.threadLock = threadLock;
+        this.channel = channel;
+        this.fileLock = fileLock;
+    }
+
+    /** Attend que l'entree soit libre (bloquant). */
+    static CacheEntryLock acquire(File entry) throws IOException {
+        Path lockFile = entry.toPath().toAbsolutePath().resolveSibling(entry.getName() + LOCK_EXTENSION);
+        // Compte les utilisateurs dans la table meme : le verrou n'en sort jamais entre sa
+        // reprise par un thread et son lock()
+        ThreadLock threadLock = IN_PROCESS.compute(lockFile, (p, held) -> {
+            ThreadLock used = held != null ? held : new ThreadLock();
+            used.users++;
+            return used;
+        });
+        threadLock.lock.lock();
+        FileChannel channel = null;
+        try {
+            Files.createDirectories(lockFile.getParent());
+            channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            return new CacheEntryLock(lockFile, threadLock, channel, channel.lock());
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            release(lockFile, threadLock);
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            fileLock.release();
+            channel.close();
+        } finally {
+            release(lockFile, threadLock);
+        }
+    }
+
+    private static void release(Path lockFile, ThreadLock threadLock) {
+        threadLock.lock.unlock();
+        IN_PROCESS.computeIfPresent(lockFile, (p, held) -> --held.users == 0 ? null : held);
+    }
+
+    /** @return le nombre d'entrees dont le verrou est tenu ou attendu dans ce processus */
+    static int inProcess() {
+        return IN_PROCESS.size();
+    }
+
+    /** Verrou entre threads d'une entree, et nombre de threads qui le tiennent ou l'attendent. */
+    private static final class ThreadLock {
+        private final ReentrantLock lock = new ReentrantLock();
+        /** Modifie uniquement dans IN_PROCESS.compute*, sous le verrou de la table. */
+        private int users;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import edu.illinois.starts.util.SymbolTable;
+
+/**
+ * Aretes des JARs lues dans le cache jdeps, sous forme de paires d'identifiants : un nom
+ * de classe n'est materialise qu'une fois pour tous les JARs, jamais par arete.
+ *
+ * <p>Non thread-safe.
+ */
+public final class CachedEdges {
+    private final SymbolTable symbols = new SymbolTable();
+    /** source, cible, source, cible... */
+    private int[] pairs = new int[2048];
+    private int size;
+
+    /** Noms des sommets references par {@link #source} et {@link #target}. */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /** @return le nombre d'aretes (doublons entre JARs compris) */
+    public int size() {
+        return size;
+    }
+
+    public int source(int edge) {
+        return pairs[2 * edge];
+    }
+
+    public int target(int edge) {
+        return pairs[2 * edge + 1];
+    }
+
+    /** @return les aretes sous la forme "source cible" des anciens graphes texte, sans doublons */
+    public Set<String> toStrings() {
+        Set<String> edges = new HashSet<>();
+        for (int edge = 0; edge < size; edge++) {
+            edges.add(symbols.name(source(edge)) + " " + symbols.name(target(edge)));
+        }
+        return edges;
+    }
+
+    void add(int source, int target) {
+        if (2 * size == pairs.length) {
+            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+        }
+        pairs[2 * size] = source;
+        pairs[2 * size + 1] = target;
+        size++;
+    }
+}
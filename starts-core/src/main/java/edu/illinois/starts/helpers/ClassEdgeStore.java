@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.util.Logger;
+import edu.illinois.starts.util.StatIndex;
+
+/**
+ * Aretes sortantes de chaque .class local, telles que lues au run precedent,
+ * avec le checksum des octets dont elles ont ete extraites. Seules les classes
+ * dont le checksum a change sont re-analysees par {@link DepsExtractor}.
+ *
+ * <p>La taille et la date du fichier sont retenues aussi, comme dans {@link StatIndex} :
+ * un .class dont elles n'ont pas change n'est meme pas relu. Elles ne sont pas retenues
+ * pour un fichier "racy" (modifie juste avant d'etre lu), qui sera relu au run suivant.
+ *
+ * <p>Un .class sans classe (module-info, fichier illisible) est retenu avec un nom de classe
+ * vide et sans aretes : il n'est pas relu non plus tant qu'il ne change pas.
+ *
+ * <p>Les aretes sont stockees brutes (avant -filter et exclusions) pour que
+ * changer filterLib / exclureArchiDep n'invalide pas le store.
+ *
+ * <p>Format : une ligne par fichier .class
+ * {@code checksum TAB taille TAB date TAB chemin TAB classe TAB dep1 dep2 ...}
+ * (taille et date a -1 si inconnues ; les lignes sans taille ni date des stores
+ * precedents sont acceptees).
+ */
+public class ClassEdgeStore implements StartsConstants {
+    private static final Logger LOGGER = Logger.getGlobal();
+    private static final String TAB = "\t";
+    private static final int FIELDS = 6;
+    private static final int FIELDS_WITHOUT_STAT = 4;
+    private static final long UNKNOWN = -1;
+    private static final String NO_CLASS = "";
+
+    private final File file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private volatile boolean dirty;
+
+    private ClassEdgeStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Charge le store ; un fichier absent ou illisible donne un store vide
+     * (toutes les classes seront re-analysees).
+     */
+    public static ClassEdgeStore load(File file) {
+        ClassEdgeStore store = new ClassEdgeStore(file);
+        if (!file.exists()) {
+            return store;
+        }
+        long start = System.currentTimeMillis();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(TAB, -1);
+                if (parts.length != FIELDS && parts.length != FIELDS_WITHOUT_STAT) {
+                    throw new IOException("Broken line: " + line);
+                }
+                boolean withStat = parts.length == FIELDS;
+                int path = withStat ? 3 : 1;
+                String[] deps = parts[path + 2].isEmpty() ? new String[0] : parts[path + 2].split(WHITE_SPACE);
+                store.entries.put(parts[path], new Entry(Long.parseLong(parts[0]),
+                        withStat ? Long.parseLong(parts[1]) : UNKNOWN, withStat ? Long.parseLong(parts[2]) : UNKNOWN,
+                        parts[path + 1], deps));
+            }
+        } catch (IOException | NumberFormatException ex) {
+            LOGGER.log(Level.WARNING, "Ignoring corrupt class edge store " + file + ": " + ex.getMessage());
+            store.entries.clear();
+            store.dirty = true;
+        }
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "[PROFILE] loadClassEdgeStore(" + store.entries.size() + "): "
+                + Writer.millsToLog(end - start));
+        return store;
+    }
+
+    public static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    /**
+     * @param stat attributs actuels du fichier, pris avant de le lire
+     * @return l'entree de {@code path} si le fichier a la meme taille et la meme date qu'a sa
+     *         derniere lecture, sinon null (le fichier est alors a relire)
+     */
+    public Entry get(String path, StatIndex.FileStat stat) {
+        Entry entry = entries.get(path);
+        if (entry != null && entry.size == stat.getSize() && entry.modified == stat.getModified()) {
+            hits.incrementAndGet();
+            return entry;
+        }
+        return null;
+    }
+
+    /**
+     * @param stat attributs du fichier pris avant sa lecture, retenus si l'entree est reprise
+     * @return l'entree de {@code path} si elle a ete calculee a partir des memes octets, sinon null
+     */
+    public Entry get(String path, long checksum, StatIndex.FileStat stat) {
+        Entry entry = entries.get(path);
+        if (entry != null && entry.checksum == checksum) {
+            hits.incrementAndGet();
+            // Memes octets sous une autre date (ex : recompilation a l'identique)
+            Entry refreshed = new Entry(checksum, size(stat), modified(stat), entry.className, entry.deps);
+            if (refreshed.size != entry.size || refreshed.modified != entry.modified) {
+                entries.put(path, refreshed);
+                dirty = true;
+            }
+            return entry;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /** @param stat attributs du fichier pris avant sa lecture, null s'ils sont inconnus */
+    public void put(String path, long checksum, StatIndex.FileStat stat, String className, Set<String> deps) {
+        entries.put(path, new Entry(checksum, size(stat), modified(stat), className, deps.toArray(new String[0])));
+        dirty = true;
+    }
+
+    /** Retient un .class sans classe (module-info, fichier illisible), pour ne pas le relire. */
+    public void putNoClass(String path, long checksum, StatIndex.FileStat stat) {
+        entries.put(path, new Entry(checksum, size(stat), modified(stat), NO_CLASS, new String[0]));
+        dirty = true;
+    }
+
+    private static long size(StatIndex.FileStat stat) {
+        return stat == null || stat.isRacy() ? UNKNOWN : stat.getSize();
+    }
+
+    private static long modified(StatIndex.FileStat stat) {
+        return stat == null || stat.isRacy() ? UNKNOWN : stat.getModified();
+    }
+
+    /** Oublie les .class qui n'existent plus (classes supprimees ou renommees). */
+    public void retainAll(Collection<String> paths) {
+        Set<String> keep = paths instanceof Set ? (Set<String>) paths : new HashSet<>(paths);
+        if (entries.keySet().retainAll(keep)) {
+            dirty = true;
+        }
+    }
+
+    public void save() {
+        LOGGER.log(Level.INFO, "Classes re-analysees: " + misses.get() + " / " + (hits.get() + misses.get()));
+        if (!dirty) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Path target = file.toPath();
+        Path tmp = target.resolveSibling(file.getName() + ".tmp");
+        try {
+            Files.createDirectories(target.getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    Entry entry = e.getValue();
+                    writer.write(Long.toString(entry.checksum));
+                    writer.write(TAB);
+                    writer.write(Long.toString(entry.size));
+                    writer.write(TAB);
+                    writer.write(Long.toString(entry.modified));
+                    writer.write(TAB);
+                    writer.write(e.getKey());
+                    writer.write(TAB);
+                    writer.write(entry.className);
+                    writer.write(TAB);
+                    writer.write(String.join(WHITE_SPACE, entry.deps));
+                    writer.write(System.lineSeparator());
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "[PROFILE] saveClassEdgeStore(" + entries.size() + "): "
+                + Writer.millsToLog(end - start));
+    }
+
+    /** Aretes brutes d'un .class. */
+    public static final class Entry {
+        private final long checksum;
+        private final long size;
+        private final long modified;
+        private final String className;
+        private final String[] deps;
+
+        Entry(long checksum, long size, long modified, String className, String[] deps) {
+            this.checksum = checksum;
+            this.size = size;
+            this.modified = modified;
+            this.className = className;
+            this.deps = deps;
+        }
+
+        /** @return faux pour un module-info ou un fichier illisible, sans aretes */
+        public boolean hasClass() {
+            return !className.isEmpty();
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public List<String> getDeps() {
+            return Arrays.asList(deps);
+        }
+    }
+}
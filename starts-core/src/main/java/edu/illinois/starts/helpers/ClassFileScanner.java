@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Set;
+
+/**
+ * Lecture directe d'un fichier .class pour en extraire les dependances de
+ * type, comme le fait {@code jdeps -v}, sans passer par le texte de sortie.
+ *
+ * <p>On ne s'appuie pas sur {@link edu.illinois.starts.asm.ClassReader} : la
+ * version vendue refuse les classes plus recentes que Java 8 et ne connait pas
+ * les entrees CONSTANT_Dynamic / Module / Package. Le pool de constantes est
+ * donc parcouru ici avec la meme disposition que ClassReader.
+ *
+ * <p>Sont retenues les memes sources que jdeps :
+ * <ul>
+ *   <li>toutes les entrees CONSTANT_Class (super-classe, interfaces, classes
+ *       referencees par le code, classes internes...) ;</li>
+ *   <li>les descripteurs des NameAndType (pas ceux des MethodType) ;</li>
+ *   <li>les descripteurs et attributs Signature des champs et des methodes,
+ *       et la Signature de la classe (hors parametres de type formels) ;</li>
+ *   <li>le type des annotations (pas leurs valeurs).</li>
+ * </ul>
+ * Les tables de debug (LocalVariableTable...) sont ignorees, comme par jdeps.
+ */
+public final class ClassFileScanner {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int ACC_MODULE = 0x8000;
+
+    private static final int UTF8 = 1;
+    private static final int INT = 3;
+    private static final int FLOAT = 4;
+    private static final int LONG = 5;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STR = 8;
+    private static final int FIELD = 9;
+    private static final int METH = 10;
+    private static final int IMETH = 11;
+    private static final int NAME_TYPE = 12;
+    private static final int HANDLE = 15;
+    private static final int MTYPE = 16;
+    private static final int CONDY = 17;
+    private static final int INDY = 18;
+    private static final int MODULE = 19;
+    private static final int PACKAGE = 20;
+
+    /** Attributs ignores par {@link #withoutDebug}, les memes que ClassReader.SKIP_DEBUG. */
+    private static final Set<String> DEBUG_ATTRIBUTES = Set.of("SourceFile", "SourceDebugExtension",
+            "LineNumberTable", "LocalVariableTable", "LocalVariableTypeTable");
+
+    private final byte[] bytes;
+    private final int[] items;
+    private final String[] strings;
+    private final int header;
+    private final char[] buf;
+
+    private ClassFileScanner(byte[] bytes) {
+        this.bytes = bytes;
+        if (bytes.length < 10 || readInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a class file");
+        }
+        items = new int[readUnsignedShort(8)];
+        strings = new String[items.length];
+        int max = 0;
+        int index = 10;
+        for (int i = 1; i < items.length; ++i) {
+            items[i] = index + 1;
+            int size;
+            switch (bytes[index]) {
+                case FIELD:
+                case METH:
+                case IMETH:
+                case INT:
+                case FLOAT:
+                case NAME_TYPE:
+                case CONDY:
+                case INDY:
+                    size = 5;
+                    break;
+                case LONG:
+                case DOUBLE:
+                    size = 9;
+                    ++i;
+                    break;
+                case UTF8:
+                    size = 3 + readUnsignedShort(index + 1);
+                    if (size > max) {
+                        max = size;
+                    }
+                    break;
+                case HANDLE:
+                    size = 4;
+                    break;
+                case CLASS:
+                case STR:
+                case MTYPE:
+                case MODULE:
+                case PACKAGE:
+                    size = 3;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown constant pool tag " + bytes[index]);
+            }
+            index += size;
+        }
+        buf = new char[max];
+        header = index;
+    }
+
+    /**
+     * Ajoute a {@code deps} les FQN des types references par la classe.
+     *
+     * @param bytes contenu du fichier .class
+     * @param deps  ensemble a completer (la classe elle-meme n'y est jamais ajoutee)
+     * @return FQN de la classe lue, ou null pour un module-info
+     */
+    public static String scan(byte[] bytes, Set<String> deps) {
+        return new ClassFileScanner(bytes).collect(deps);
+    }
+
+    /**
+     * Contenu de la classe sans ses attributs de debug, pour en calculer le checksum : les
+     * numeros de ligne et les tables de variables locales sont retires, y compris ceux des
+     * attributs Code. Le resultat n'est pas un .class valide. Le pool de constantes est garde
+     * tel quel : renommer une variable locale change donc encore le checksum.
+     *
+     * @throws IllegalArgumentException si {@code bytes} n'est pas un fichier .class
+     */
+    public static byte[] withoutDebug(byte[] bytes) {
+        return new ClassFileScanner(bytes).strip();
+    }
+
+    private byte[] strip() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+        // En-tete, pool de constantes, acces, classe, super-classe et interfaces
+        int u = header + 6;
+        u += 2 + 2 * readUnsignedShort(u);
+        out.write(bytes, 0, u);
+        for (int member = 0; member < 2; member++) {
+            int count = readUnsignedShort(u);
+            out.write(bytes, u, 2);
+            u += 2;
+            for (int i = 0; i < count; i++) {
+                // acces, nom et descripteur
+                out.write(bytes, u, 6);
+                u = stripAttributes(u + 6, out);
+            }
+        }
+        stripAttributes(u, out);
+        return out.toByteArray();
+    }
+
+    private int stripAttributes(int u, ByteArrayOutputStream out) {
+        int count = readUnsignedShort(u);
+        u += 2;
+        for (int i = 0; i < count; i++) {
+            String name = readUTF8(u);
+            int length = readInt(u + 2);
+            int start = u + 6;
+            if ("Code".equals(name)) {
+                // max_stack, max_locals, code et table des exceptions, puis les attributs du code
+                out.write(bytes, u, 2);
+                int v = start + 8 + readInt(start + 4);
+                v += 2 + 8 * readUnsignedShort(v);
+                out.write(bytes, start, v - start);
+                stripAttributes(v, out);
+            } else if (!DEBUG_ATTRIBUTES.contains(name)) {
+                out.write(bytes, u, 6 + length);
+            }
+            u = start + length;
+        }
+        return u;
+    }
+
+    private String collect(Set<String> deps) {
+        int access = readUnsignedShort(header);
+        if ((access & ACC_MODULE) != 0) {
+            return null;
+        }
+        String self = readClass(header + 2).replace('/', '.');
+        Collector out = new Collector(self, deps);
+
+        // 1) Pool de constantes : classes et descripteurs des NameAndType. Les
+        //    MethodType (arguments des lambdas) ne sont pas suivis par jdeps.
+        for (int i = 1; i < items.length; ++i) {
+            int offset = items[i];
+            switch (bytes[offset - 1]) {
+                case CLASS:
+                    addClassOrArray(readUTF8(offset), out);
+                    break;
+                case NAME_TYPE:
+                    addDescriptor(readUTF8(offset + 2), out);
+                    break;
+                case LONG:
+                case DOUBLE:
+                    ++i;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // 2) Interfaces, puis champs et methodes
+        int u = header + 6;
+        u += 2 + 2 * readUnsignedShort(u);
+        for (int member = 0; member < 2; member++) {
+            int count = readUnsignedShort(u);
+            u += 2;
+            for (int i = 0; i < count; i++) {
+                addDescriptor(readUTF8(u + 4), out);
+                u = readAttributes(u + 6, out);
+            }
+        }
+
+        // 3) Attributs de la classe
+        readAttributes(u, out);
+        return self;
+    }
+
+    private int readAttributes(int u, Collector out) {
+        int count = readUnsignedShort(u);
+        u += 2;
+        for (int i = 0; i < count; i++) {
+            String name = readUTF8(u);
+            int length = readInt(u + 2);
+            int start = u + 6;
+            switch (name) {
+                case "Signature":
+                    addSignature(readUTF8(start), out);
+                    break;
+                case "RuntimeVisibleAnnotations":
+                case "RuntimeInvisibleAnnotations":
+                    readAnnotations(start, out);
+                    break;
+                case "RuntimeVisibleParameterAnnotations":
+                case "RuntimeInvisibleParameterAnnotations":
+                    int params = bytes[start] & 0xFF;
+                    int v = start + 1;
+                    for (int p = 0; p < params; p++) {
+                        v = readAnnotations(v, out);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            u = start + length;
+        }
+        return u;
+    }
+
+    private int readAnnotations(int v, Collector out) {
+        int count = readUnsignedShort(v);
+        v += 2;
+        for (int i = 0; i < count; i++) {
+            v = readAnnotation(v, out);
+        }
+        return v;
+    }
+
+    private int readAnnotation(int v, Collector out) {
+        if (out != null) {
+            addDescriptor(readUTF8(v), out);
+        }
+        int pairs = readUnsignedShort(v + 2);
+        v += 4;
+        for (int i = 0; i < pairs; i++) {
+            v = skipElementValue(v + 2);
+        }
+        return v;
+    }
+
+    private int skipElementValue(int v) {
+        switch (bytes[v] & 0xFF) {
+            case 'e':
+                return v + 5;
+            case '@':
+                // jdeps ne suit pas les valeurs des annotations
+                return readAnnotation(v + 1, null);
+            case '[':
+                int count = readUnsignedShort(v + 1);
+                v += 3;
+                for (int i = 0; i < count; i++) {
+                    v = skipElementValue(v);
+                }
+                return v;
+            default:
+                return v + 3;
+        }
+    }
+
+    private static void addClassOrArray(String internalName, Collector out) {
+        if (internalName.charAt(0) == '[') {
+            addDescriptor(internalName, out);
+        } else {
+            out.add(internalName);
+        }
+    }
+
+    /**
+     * Descripteur de champ ou de methode : chaque {@code L...;} est un type.
+     */
+    private static void addDescriptor(String desc, Collector out) {
+        int i = desc.indexOf('L');
+        while (i >= 0) {
+            int end = desc.indexOf(';', i);
+            out.add(desc.substring(i + 1, end));
+            i = desc.indexOf('L', end + 1);
+        }
+    }
+
+    /**
+     * Signature generique. Les parametres de type formels en tete
+     * ({@code <T:Lfoo/Bar;>}) sont ignores, comme par jdeps.
+     */
+    private static void addSignature(String sig, Collector out) {
+        int i = 0;
+        if (sig.charAt(0) == '<') {
+            i = skipFormalTypeParameters(sig);
+        }
+        while (i < sig.length()) {
+            char c = sig.charAt(i);
+            if (c == 'L') {
+                i = readClassTypeSignature(sig, i, out);
+            } else if (c == 'T') {
+                i = sig.indexOf(';', i) + 1;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static int skipFormalTypeParameters(String sig) {
+        int depth = 0;
+        int i = 0;
+        do {
+            char c = sig.charAt(i++);
+            if (c == '<') {
+                depth++;
+            } else if (c == '>') {
+                depth--;
+            }
+        } while (depth > 0);
+        return i;
+    }
+
+    /**
+     * Lit {@code Lpkg/Outer<...>.Inner<...>;} a partir de {@code start} et
+     * ajoute {@code pkg/Outer$Inner} ainsi que les arguments de type.
+     */
+    private static int readClassTypeSignature(String sig, int start, Collector out) {
+        StringBuilder name = new StringBuilder();
+        int i = start + 1;
+        while (true) {
+            char c = sig.charAt(i);
+            if (c == ';') {
+                out.add(name.toString());
+                return i + 1;
+            } else if (c == '.') {
+                name.append('$');
+                i++;
+            } else if (c == '<') {
+                i = readTypeArguments(sig, i + 1, out);
+            } else {
+                name.append(c);
+                i++;
+            }
+        }
+    }
+
+    private static int readTypeArguments(String sig, int i, Collector out) {
+        while (sig.charAt(i) != '>') {
+            char c = sig.charAt(i);
+            if (c == 'L') {
+                i = readClassTypeSignature(sig, i, out);
+            } else if (c == 'T') {
+                i = sig.indexOf(';', i) + 1;
+            } else {
+                // '*', '+', '-', '[' et types primitifs
+                i++;
+            }
+        }
+        return i + 1;
+    }
+
+    private String readClass(int index) {
+        return readUTF8(items[readUnsignedShort(index)]);
+    }
+
+    private String readUTF8(int index) {
+        int item = readUnsignedShort(index);
+        if (item == 0) {
+            return null;
+        }
+        String s = strings[item];
+        if (s != null) {
+            return s;
+        }
+        index = items[item];
+        return strings[item] = decodeUTF8(index + 2, readUnsignedShort(index));
+    }
+
+    private String decodeUTF8(int index, int utfLen) {
+        int endIndex = index + utfLen;
+        int strLen = 0;
+        int c;
+        int st = 0;
+        char cc = 0;
+        while (index < endIndex) {
+            c = bytes[index++];
+            switch (st) {
+                case 0:
+                    c = c & 0xFF;
+                    if (c < 0x80) {
+                        buf[strLen++] = (char) c;
+                    } else if (c < 0xE0 && c > 0xBF) {
+                        cc = (char) (c & 0x1F);
+                        st = 1;
+                    } else {
+                        cc = (char) (c & 0x0F);
+                        st = 2;
+                    }
+                    break;
+                case 1:
+                    buf[strLen++] = (char) ((cc << 6) | (c & 0x3F));
+                    st = 0;
+                    break;
+                default:
+                    cc = (char) ((cc << 6) | (c & 0x3F));
+                    st = 1;
+                    break;
+            }
+        }
+        return new String(buf, 0, strLen);
+    }
+
+    private int readUnsignedShort(int index) {
+        return ((bytes[index] & 0xFF) << 8) | (bytes[index + 1] & 0xFF);
+    }
+
+    private int readInt(int index) {
+        return ((bytes[index] & 0xFF) << 24) | ((bytes[index + 1] & 0xFF) << 16)
+                | ((bytes[index + 2] & 0xFF) << 8) | (bytes[index + 3] & 0xFF);
+    }
+
+    /** Convertit les noms internes en FQN et ecarte la classe elle-meme. */
+    private static final class Collector {
+        private final String self;
+        private final Set<String> deps;
+
+        Collector(String self, Set<String> deps) {
+            this.self = self;
+            this.deps = deps;
+        }
+
+        void add(String internalName) {
+            String fqn = internalName.replace('/', '.');
+            if (!fqn.equals(self)) {
+                deps.add(fqn);
+            }
+        }
+    }
+}
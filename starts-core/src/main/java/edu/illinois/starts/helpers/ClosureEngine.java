@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.stream.IntStream;
+
+import edu.illinois.starts.data.CsrGraph;
+import edu.illinois.starts.util.CompressedBitmap;
+import edu.illinois.starts.util.Logger;
+
+/**
+ * Fermetures transitives sur le graphe condense en composantes fortement
+ * connexes (Tarjan, iteratif).
+ *
+ * <p>Tous les sommets d'un cycle (typiquement entite {@code <->} DAO) ont la meme
+ * fermeture : elle est calculee une seule fois par composante. Tarjan emet les
+ * composantes en ordre topologique inverse (les puits d'abord) : fermeture
+ * d'une composante = ses membres + union des fermetures de ses successeurs.
+ *
+ * <p>En parallele, les composantes sont regroupees par niveau (0 pour les
+ * puits, 1 + max des successeurs sinon) : toutes les composantes d'un meme
+ * niveau ne dependent que de niveaux inferieurs et sont calculees en meme temps.
+ * Le resultat est identique au calcul sequentiel.
+ *
+ * <p>Les fermetures sont des {@link CompressedBitmap} sur une numerotation des
+ * sommets dans l'ordre d'emission des composantes (index dans {@code members}) :
+ * une composante et tout ce qu'elle atteint occupent les index inferieurs, les
+ * fermetures sont denses et partagent leurs blocs communs. Chaque thread fait
+ * ses unions dans son propre tampon de mots, reutilise d'une composante a l'autre.
+ *
+ * <p>Seule la partie du graphe atteignable depuis les sommets de depart est
+ * parcourue.
+ */
+public class ClosureEngine {
+    private static final Logger LOGGER = Logger.getGlobal();
+    private static final int UNVISITED = -1;
+    /** En dessous, un niveau est calcule sur le thread courant (cout du fork/join). */
+    private static final int MIN_PARALLEL_LEVEL_SIZE = 64;
+
+    private final CsrGraph graph;
+    /** sommet -> composante, UNVISITED si non atteint. */
+    private final int[] component;
+    private int componentCount;
+    private int largestComponent;
+    /**
+     * membres de la composante c : members[memberOffsets[c] .. memberOffsets[c+1]]. L'index
+     * d'un sommet dans members est sa position dans les fermetures.
+     */
+    private int[] memberOffsets = new int[65];
+    private int[] members;
+    private final int[] positions;
+    /** DAG condense : successeurs (distincts) de la composante c. */
+    private int[] successorOffsets = new int[65];
+    private int[] successors = new int[256];
+    private int[] levels = new int[64];
+    private int levelCount;
+    private CompressedBitmap[] closures;
+    private final CompressedBitmap.BlockPool blocks = new CompressedBitmap.BlockPool();
+    private ThreadLocal<long[]> scratch;
+
+    public ClosureEngine(CsrGraph graph) {
+        this.graph = graph;
+        this.component = new int[graph.getVertexCount()];
+        this.members = new int[graph.getVertexCount()];
+        this.positions = new int[graph.getVertexCount()];
+        Arrays.fill(component, UNVISITED);
+    }
+
+    /**
+     * Calcule, sur le thread courant, les fermetures de tout ce qui est atteignable depuis {@code starts}.
+     */
+    public ClosureEngine compute(int[] starts) {
+        return compute(starts, 1);
+    }
+
+    /**
+     * Calcule les composantes puis leurs fermetures pour tout ce qui est atteignable depuis
+     * {@code starts}.
+     *
+     * @param parallelism nombre de threads pour les unions ; 1 = sequentiel, 0 = nombre de processeurs
+     */
+    public ClosureEngine compute(int[] starts, int parallelism) {
+        long start = System.currentTimeMillis();
+        condense(starts);
+        long condensed = System.currentTimeMillis();
+        closures = new CompressedBitmap[componentCount];
+        int words = CompressedBitmap.scratchWords(graph.getVertexCount());
+        scratch = ThreadLocal.withInitial(() -> new long[words]);
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        if (threads == 1) {
+            for (int c = 0; c < componentCount; c++) {
+                computeClosure(c);
+            }
+        } else {
+            computeByLevel(threads);
+        }
+        scratch = null;
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "[PROFILE] closureEngine(condense: components=" + componentCount + ", largest="
+                + largestComponent + ", levels=" + levelCount + "): " + Writer.millsToLog(condensed - start));
+        LOGGER.log(Level.FINE, "[PROFILE] closureEngine(unions: threads=" + threads + ", blocks=" + blocks.size()
+                + ", blockBytes=" + blocks.getSizeInBytes() + "): " + Writer.millsToLog(end - condensed));
+        return this;
+    }
+
+    /**
+     * Tarjan iteratif. Remplit les composantes, leurs membres, le DAG condense et
+     * le niveau de chaque composante.
+     */
+    private void condense(int[] starts) {
+        int n = graph.getVertexCount();
+        int[] offsets = graph.getForwardOffsets();
+        int[] targets = graph.getForwardTargets();
+        int[] index = new int[n];
+        int[] low = new int[n];
+        Arrays.fill(index, UNVISITED);
+        BitSet onStack = new BitSet(n);
+        // pile de Tarjan, et pile d'appels explicite (sommet, prochaine arete)
+        int[] stack = new int[n];
+        int stackSize = 0;
+        int[] callVertex = new int[n];
+        int[] callEdge = new int[n];
+        int depth = 0;
+        int counter = 0;
+        int memberCount = 0;
+        int successorCount = 0;
+        // derniere composante pour laquelle une composante successeur a ete ajoutee
+        int[] lastAddedTo = new int[64];
+
+        for (int root : starts) {
+            if (index[root] != UNVISITED) {
+                continue;
+            }
+            index[root] = counter;
+            low[root] = counter++;
+            stack[stackSize++] = root;
+            onStack.set(root);
+            callVertex[depth] = root;
+            callEdge[depth++] = offsets[root];
+
+            while (depth > 0) {
+                int v = callVertex[depth - 1];
+                int e = callEdge[depth - 1];
+                if (e < offsets[v + 1]) {
+                    callEdge[depth - 1]++;
+                    int w = targets[e];
+                    if (index[w] == UNVISITED) {
+                        index[w] = counter;
+                        low[w] = counter++;
+                        stack[stackSize++] = w;
+                        onStack.set(w);
+                        callVertex[depth] = w;
+                        callEdge[depth++] = offsets[w];
+                    } else if (onStack.get(w)) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                depth--;
+                if (low[v] == index[v]) {
+                    // v est la racine d'une composante : depiler ses membres
+                    int c = componentCount++;
+                    ensureComponentCapacity(c);
+                    if (c >= lastAddedTo.length) {
+                        lastAddedTo = Arrays.copyOf(lastAddedTo, c * 2);
+                    }
+                    int first = memberCount;
+                    int member;
+                    do {
+                        member = stack[--stackSize];
+                        onStack.clear(member);
+                        component[member] = c;
+                        positions[member] = memberCount;
+                        members[memberCount++] = member;
+                    } while (member != v);
+                    memberOffsets[c + 1] = memberCount;
+                    largestComponent = Math.max(largestComponent, memberCount - first);
+
+                    // Successeurs distincts dans le DAG condense, et niveau
+                    lastAddedTo[c] = c;
+                    int level = 0;
+                    for (int i = first; i < memberCount; i++) {
+                        int m = members[i];
+                        for (int j = offsets[m]; j < offsets[m + 1]; j++) {
+                            int cw = component[targets[j]];
+                            if (lastAddedTo[cw] != c) {
+                                lastAddedTo[cw] = c;
+                                if (successorCount == successors.length) {
+                                    successors = Arrays.copyOf(successors, successorCount * 2);
+                                }
+                                successors[successorCount++] = cw;
+                                level = Math.max(level, levels[cw] + 1);
+                            }
+                        }
+                    }
+                    successorOffsets[c + 1] = successorCount;
+                    levels[c] = level;
+                    levelCount = Math.max(levelCount, level + 1);
+                }
+                if (depth > 0) {
+                    int u = callVertex[depth - 1];
+                    low[u] = Math.min(low[u], low[v]);
+                }
+            }
+        }
+    }
+
+    private void ensureComponentCapacity(int c) {
+        if (c + 1 >= memberOffsets.length) {
+            memberOffsets = Arrays.copyOf(memberOffsets, memberOffsets.length * 2);
+            successorOffsets = Arrays.copyOf(successorOffsets, successorOffsets.length * 2);
+        }
+        if (c >= levels.length) {
+            levels = Arrays.copyOf(levels, levels.length * 2);
+        }
+    }
+
+    private void computeByLevel(int threads) {
+        // Composantes triees par niveau (tri par denombrement)
+        int[] levelOffsets = new int[levelCount + 1];
+        for (int c = 0; c < componentCount; c++) {
+            levelOffsets[levels[c] + 1]++;
+        }
+        for (int l = 0; l < levelCount; l++) {
+            levelOffsets[l + 1] += levelOffsets[l];
+        }
+        int[] next = Arrays.copyOf(levelOffsets, levelCount);
+        int[] byLevel = new int[componentCount];
+        for (int c = 0; c < componentCount; c++) {
+            byLevel[next[levels[c]]++] = c;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (int l = 0; l < levelCount; l++) {
+                int from = levelOffsets[l];
+                int to = levelOffsets[l + 1];
+                if (to - from < MIN_PARALLEL_LEVEL_SIZE) {
+                    for (int i = from; i < to; i++) {
+                        computeClosure(byLevel[i]);
+                    }
+                } else {
+                    pool.submit(() -> IntStream.range(from, to).parallel()
+                            .forEach(i -> computeClosure(byLevel[i]))).join();
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Les fermetures des successeurs de {@code c} doivent etre calculees. Elles sont toutes
+     * sous memberOffsets[c] : seuls les mots entre le premier bloc touche et la fin de la
+     * composante sont compresses.
+     */
+    private void computeClosure(int c) {
+        long[] words = scratch.get();
+        int from = memberOffsets[c];
+        int to = memberOffsets[c + 1];
+        int low = from;
+        for (int i = successorOffsets[c]; i < successorOffsets[c + 1]; i++) {
+            CompressedBitmap successor = closures[successors[i]];
+            successor.orInto(words);
+            low = Math.min(low, successor.firstBlockStart());
+        }
+        for (int p = from; p < to; p++) {
+            words[p >>> 6] |= 1L << p;
+        }
+        closures[c] = CompressedBitmap.drain(words, low >>> 6, ((to - 1) >>> 6) + 1, blocks);
+    }
+
+    /**
+     * @return la fermeture de {@code vertex} (lui-meme inclus), partagee par toute sa
+     *         composante, en positions (voir {@link #vertexAt}). Null si le sommet n'a pas ete atteint.
+     */
+    public CompressedBitmap closureOf(int vertex) {
+        int c = component[vertex];
+        return c == UNVISITED ? null : closures[c];
+    }
+
+    /** Sommet a la position {@code position} des fermetures. */
+    public int vertexAt(int position) {
+        return members[position];
+    }
+
+    /** Position de {@code vertex} dans les fermetures, si le sommet a ete atteint. */
+    public int positionOf(int vertex) {
+        return positions[vertex];
+    }
+
+    /** Sommets de la fermeture de {@code vertex}, en identifiants du graphe. */
+    public void forEachInClosure(int vertex, IntConsumer consumer) {
+        CompressedBitmap closure = closureOf(vertex);
+        if (closure != null) {
+            closure.forEach(position -> consumer.accept(members[position]));
+        }
+    }
+
+    public int getComponentCount() {
+        return componentCount;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.illinois.starts.data.CsrGraph;
+import edu.illinois.starts.util.CompressedBitmap;
+
+/**
+ * Vue en lecture seule, par noms de classes, d'une fermeture calculee par
+ * {@link ClosureEngine} : rien n'est copie dans un HashSet, les noms sont ceux
+ * du graphe.
+ */
+class ClosureSet extends AbstractSet<String> {
+    private final CsrGraph graph;
+    private final ClosureEngine engine;
+    private final CompressedBitmap closure;
+
+    ClosureSet(CsrGraph graph, ClosureEngine engine, CompressedBitmap closure) {
+        this.graph = graph;
+        this.engine = engine;
+        this.closure = closure;
+    }
+
+    @Override
+    public int size() {
+        return closure.cardinality();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        int id = graph.getId((String) o);
+        return id >= 0 && engine.closureOf(id) != null && closure.contains(engine.positionOf(id));
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        CompressedBitmap.Cursor cursor = closure.cursor();
+        return new Iterator<String>() {
+            private int next = cursor.next();
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public String next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                String name = graph.getName(engine.vertexAt(next));
+                next = cursor.next();
+                return name;
+            }
+        };
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.enums.HashAlgorithm;
+import edu.illinois.starts.util.ClassHasher;
+import edu.illinois.starts.util.Logger;
+import edu.illinois.starts.util.SessionChecksums;
+import edu.illinois.starts.util.StatIndex;
+
+/**
+ * Remplace l'appel a jdeps (ToolProvider + parsing du texte) par une lecture
+ * directe des .class, en parallele, vers la meme Map classe -> dependances
+ * que {@link RTSUtil#getDepsFromJdepsOutput}.
+ *
+ * <p>Avec un {@link ScannedClasses}, chaque .class des repertoires n'est lu qu'une fois pour
+ * le graphe et pour le ZLC : son emplacement est retenu, et son checksum (debug retire, avec
+ * l'algorithme par defaut) est calcule sur les memes octets et depose dans
+ * {@link SessionChecksums}, ou la mise a jour du ZLC le reprend tant que le fichier n'a pas
+ * change. Un .class dont le {@link ClassEdgeStore} connait deja la taille et la date n'est
+ * pas lu du tout.
+ */
+public class DepsExtractor implements StartsConstants {
+    private static final Logger LOGGER = Logger.getGlobal();
+    private static final String META_INF = "META-INF/";
+
+    /** Un meme nom de type est reference par des milliers de classes : on partage l'instance. */
+    private final Map<String, String> names = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> deps = new ConcurrentHashMap<>();
+    private final Pattern filter;
+    private final ClassEdgeStore store;
+    private final ScannedClasses scanned;
+    private final ThreadLocal<ClassHasher> hashers;
+    private final SessionChecksums session;
+    private final LongAdder hashed = new LongAdder();
+
+    private DepsExtractor(Pattern filter, ClassEdgeStore store, ScannedClasses scanned) {
+        this.filter = filter;
+        this.store = store;
+        this.scanned = scanned;
+        if (scanned != null) {
+            HashAlgorithm algorithm = ClassHasher.getDefaultAlgorithm();
+            this.hashers = ThreadLocal.withInitial(() -> ClassHasher.create(algorithm, true));
+            this.session = SessionChecksums.get(ClassHasher.key(true, algorithm));
+        } else {
+            this.hashers = null;
+            this.session = null;
+        }
+    }
+
+    /**
+     * Equivalent de {@code jdeps -v [-filter regex] paths...}.
+     *
+     * @param paths  repertoires de classes ou jars a analyser
+     * @param filter meme regex que l'option -filter de jdeps (appliquee au FQN cible), ou null
+     * @return classe -> dependances ; les classes sans dependance apres filtrage sont absentes,
+     *         comme dans la sortie de jdeps
+     */
+    public static Map<String, Set<String>> extract(List<String> paths, String filter) {
+        return extract(paths, filter, null);
+    }
+
+    /**
+     * Comme {@link #extract(List, String)}, mais les .class des repertoires dont le
+     * checksum est inchange depuis le run precedent ne sont pas re-analyses : leurs
+     * aretes sont reprises de {@code store}, qui est ensuite mis a jour et sauvegarde.
+     */
+    public static Map<String, Set<String>> extract(List<String> paths, String filter, ClassEdgeStore store) {
+        return extract(paths, filter, store, null);
+    }
+
+    /**
+     * Comme {@link #extract(List, String, ClassEdgeStore)}, en retenant dans {@code scanned}
+     * l'emplacement (et le checksum) des .class lus dans les repertoires.
+     *
+     * @param scanned alimente pendant la lecture, null pour ne rien retenir
+     */
+    public static Map<String, Set<String>> extract(List<String> paths, String filter, ClassEdgeStore store,
+                                                   ScannedClasses scanned) {
+        long start = System.currentTimeMillis();
+        DepsExtractor extractor = new DepsExtractor(filter == null ? null : Pattern.compile(filter), store,
+                scanned);
+        List<ClassFile> classFiles = new ArrayList<>();
+        List<String> jars = new ArrayList<>();
+        int directories = 0;
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.isDirectory()) {
+                classFiles.addAll(listClassFiles(file.toPath(), directories++));
+            } else if (path.endsWith(JAR_EXTENSION) && file.isFile()) {
+                jars.add(path);
+            }
+        }
+        classFiles.parallelStream().forEach(extractor::scanFile);
+        jars.parallelStream().forEach(extractor::scanJar);
+        if (store != null) {
+            store.retainAll(classFiles.stream().map(c -> c.file.toString()).collect(Collectors.toSet()));
+            store.save();
+        }
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "[PROFILE] extractDeps(" + classFiles.size() + " classes, " + jars.size()
+                + " jars, checksums=" + extractor.hashed.sum() + "): " + Writer.millsToLog(end - start));
+        return extractor.deps;
+    }
+
+    /** @param order rang du repertoire parmi ceux analyses */
+    private static List<ClassFile> listClassFiles(Path dir, int order) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(p -> p.toString().endsWith(CLASS_EXTENSION))
+                    .map(p -> new ClassFile(p, dir.relativize(p).toString().replace(File.separatorChar, '/'), order))
+                    .collect(Collectors.toList());
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private void scanFile(ClassFile classFile) {
+        String location = classFile.file.toString();
+        // Attributs pris avant la lecture : une modification pendant le calcul invalide le checksum
+        StatIndex.FileStat stat = session == null && store == null ? null : StatIndex.stat(classFile.file);
+        if (scanned != null) {
+            scanned.add(classFile.resourceName, classFile.file, classFile.order);
+        }
+        // Taille et date inchangees : aretes reprises sans lire le fichier (son checksum sera
+        // repris de deps.stat par la mise a jour du ZLC)
+        ClassEdgeStore.Entry entry = store == null || stat == null ? null : store.get(location, stat);
+        if (entry != null) {
+            addDeps(entry);
+            return;
+        }
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(classFile.file);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        if (session != null && stat != null) {
+            record(classFile.file.toUri().toString(), stat, bytes);
+        }
+        if (store == null) {
+            addClass(bytes, location);
+            return;
+        }
+        long checksum = ClassEdgeStore.checksum(bytes);
+        entry = store.get(location, checksum, stat);
+        if (entry != null) {
+            addDeps(entry);
+            return;
+        }
+        Set<String> classDeps = new HashSet<>();
+        String className = scan(bytes, location, classDeps);
+        if (className != null) {
+            store.put(location, checksum, stat, className, classDeps);
+            addDeps(className, classDeps);
+        } else {
+            store.putNoClass(location, checksum, stat);
+        }
+    }
+
+    private void addDeps(ClassEdgeStore.Entry entry) {
+        if (entry.hasClass()) {
+            addDeps(entry.getClassName(), entry.getDeps());
+        }
+    }
+
+    /** Checksum des octets deja lus, sauf si la session l'a deja pour ce fichier inchange. */
+    private void record(String url, StatIndex.FileStat stat, byte[] bytes) {
+        if (session.lookup(url, stat) == null) {
+            session.record(url, stat, hashers.get().hash(bytes));
+            hashed.increment();
+        }
+    }
+
+    private void scanJar(String jarPath) {
+        try (JarFile jar = new JarFile(jarPath)) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                // jdeps n'analyse que la version de base des jars multi-release
+                if (!name.endsWith(CLASS_EXTENSION) || name.startsWith(META_INF)) {
+                    continue;
+                }
+                try (InputStream in = jar.getInputStream(entry)) {
+                    addClass(in.readAllBytes(), jarPath + "!/" + name);
+                }
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private void addClass(byte[] bytes, String location) {
+        Set<String> classDeps = new HashSet<>();
+        String className = scan(bytes, location, classDeps);
+        if (className != null) {
+            addDeps(className, classDeps);
+        }
+    }
+
+    /**
+     * @return nom de la classe, ou null pour un module-info ou un fichier illisible
+     */
+    private static String scan(byte[] bytes, String location, Set<String> classDeps) {
+        try {
+            return ClassFileScanner.scan(bytes, classDeps);
+        } catch (RuntimeException re) {
+            LOGGER.log(Level.WARNING, "Unreadable class file, skipped: " + location + " (" + re + ")");
+            return null;
+        }
+    }
+
+    private void addDeps(String className, Collection<String> classDeps) {
+        Set<String> kept = new HashSet<>(classDeps.size());
+        for (String dep : classDeps) {
+            if (filter == null || !filter.matcher(dep).matches()) {
+                kept.add(names.computeIfAbsent(dep, k -> k));
+            }
+        }
+        if (kept.isEmpty()) {
+            return;
+        }
+        deps.merge(names.computeIfAbsent(className, k -> k), kept, (a, b) -> {
+            a.addAll(b);
+            return a;
+        });
+    }
+
+    /** .class d'un repertoire analyse. */
+    private static final class ClassFile {
+        private final Path file;
+        private final String resourceName;
+        private final int order;
+
+        ClassFile(Path file, String resourceName, int order) {
+            this.file = file;
+            this.resourceName = resourceName;
+            this.order = order;
+        }
+    }
+}
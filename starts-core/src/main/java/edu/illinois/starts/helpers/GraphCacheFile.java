@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+import edu.illinois.starts.util.Logger;
+import edu.illinois.starts.util.SymbolTable;
+
+/**
+ * Graphe d'un JAR dans le cache jdeps (fichier .graph), au format binaire.
+ *
+ * <pre>
+ * "STGB" version
+ * noms   : n (int), puis n x (taille varint, UTF-8)
+ * aretes : n (int), puis n x (source : int, cible : int)  (index dans les noms)
+ * </pre>
+ *
+ * <p>Le fichier est projete en memoire : chaque nom est resolu une fois dans la table de
+ * {@link CachedEdges}, puis les aretes sont recopiees comme paires d'entiers. Les anciens
+ * fichiers texte ("source cible" par ligne) sont convertis a leur premiere lecture.
+ */
+public final class GraphCacheFile {
+    private static final Logger LOGGER = Logger.getGlobal();
+    private static final byte[] MAGIC = {'S', 'T', 'G', 'B'};
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private GraphCacheFile() {
+    }
+
+    /** Vrai si {@code file} commence par l'en-tete du format binaire. */
+    public static boolean isBinary(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            byte[] start = new byte[MAGIC.length];
+            return in.read(start) == MAGIC.length && Arrays.equals(start, MAGIC);
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    /** Ecrit le graphe {@code classe -> dependances} d'un JAR ; les classes sans dependance sont omises. */
+    public static void write(File target, Map<String, Set<String>> deps) throws IOException {
+        SymbolTable names = new SymbolTable();
+        int edgeCount = 0;
+        for (Map.Entry<String, Set<String>> entry : deps.entrySet()) {
+            for (String dep : entry.getValue()) {
+                names.intern(entry.getKey());
+                names.intern(dep);
+                edgeCount++;
+            }
+        }
+        Path path = target.toPath();
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Path tmp = tmpFile(path);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), BUFFER_SIZE))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(names.size());
+            for (int id = 0; id < names.size(); id++) {
+                ZLCBinaryFile.writeString(out, names.name(id));
+            }
+            out.writeInt(edgeCount);
+            for (Map.Entry<String, Set<String>> entry : deps.entrySet()) {
+                int source = names.find(entry.getKey());
+                for (String dep : entry.getValue()) {
+                    out.writeInt(source);
+                    out.writeInt(names.find(dep));
+                }
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Fichier temporaire propre au processus et au thread, a renommer en {@code target} :
+     * deux ecrivains de la meme entree ne melangent jamais leurs octets, et un lecteur ne
+     * voit que des fichiers complets.
+     */
+    static Path tmpFile(Path target) {
+        return target.resolveSibling(target.getFileName() + "." + ProcessHandle.current().pid() + "-"
+                + Thread.currentThread().getId() + ".tmp");
+    }
+
+    /**
+     * Ajoute les aretes de {@code file} a {@code edges}. Un fichier au format texte est
+     * reecrit au format binaire ; si la reecriture echoue, ses aretes sont quand meme lues.
+     *
+     * <p>Le format est detecte et le contenu lu sur la meme projection : si un autre processus
+     * remplace le fichier entre-temps, la lecture reste celle de l'ancien fichier, complet.
+     *
+     * @throws CorruptGraphException si le fichier binaire est illisible ; rien n'est alors ajoute
+     */
+    public static void read(File file, CachedEdges edges) throws IOException {
+        Map<String, Set<String>> deps;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (isBinary(buffer)) {
+                load(buffer, edges, file);
+                return;
+            }
+            deps = readText(buffer);
+        }
+        try {
+            write(file, deps);
+            LOGGER.log(Level.FINEST, "@@MigratedGraphCache: " + file.getAbsolutePath());
+        } catch (IOException ioe) {
+            LOGGER.log(Level.FINE, "Graph cache kept as text (" + ioe + "): " + file.getAbsolutePath());
+        }
+        addAll(deps, edges);
+    }
+
+    private static boolean isBinary(ByteBuffer buffer) {
+        if (buffer.remaining() < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Toutes les tailles sont verifiees avant d'etre utilisees, et les aretes ne sont ajoutees
+     * qu'une fois toutes validees : un fichier tronque ou corrompu ne laisse rien dans
+     * {@code edges}.
+     */
+    private static void load(ByteBuffer buffer, CachedEdges edges, File file) throws IOException {
+        buffer.position(MAGIC.length);
+        if (buffer.remaining() < 2 * Integer.BYTES) {
+            throw new CorruptGraphException("Truncated graph cache: " + file);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new CorruptGraphException("Unsupported graph cache version " + version + ": " + file);
+        }
+        // Noms du fichier -> identifiants dans la table commune a tous les JARs
+        SymbolTable symbols = edges.getSymbols();
+        int nameCount = buffer.getInt();
+        // Chaque nom occupe au moins l'octet de sa taille
+        if (nameCount < 0 || nameCount > buffer.remaining()) {
+            throw new CorruptGraphException("Corrupted graph cache (" + nameCount + " names): " + file);
+        }
+        int[] ids = new int[nameCount];
+        char[] chars = new char[256];
+        for (int i = 0; i < ids.length; i++) {
+            int length = readLength(buffer, file);
+            if (length > chars.length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+            }
+            int start = buffer.position();
+            int ascii = 0;
+            while (ascii < length && buffer.get(start + ascii) >= 0) {
+                chars[ascii] = (char) buffer.get(start + ascii);
+                ascii++;
+            }
+            if (ascii == length) {
+                ids[i] = symbols.intern(chars, 0, length);
+                buffer.position(start + length);
+            } else {
+                byte[] utf = new byte[length];
+                buffer.get(utf);
+                ids[i] = symbols.intern(new String(utf, StandardCharsets.UTF_8));
+            }
+        }
+        if (buffer.remaining() < Integer.BYTES) {
+            throw new CorruptGraphException("Truncated graph cache: " + file);
+        }
+        int edgeCount = buffer.getInt();
+        if (edgeCount < 0 || buffer.remaining() < 8L * edgeCount) {
+            throw new CorruptGraphException("Truncated graph cache: " + file);
+        }
+        IntBuffer pairs = buffer.slice().asIntBuffer();
+        for (int i = 0; i < 2 * edgeCount; i++) {
+            int id = pairs.get(i);
+            if (id < 0 || id >= ids.length) {
+                throw new CorruptGraphException("Corrupted graph cache: " + file);
+            }
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            edges.add(ids[pairs.get()], ids[pairs.get()]);
+        }
+    }
+
+    /** Taille varint d'un nom, verifiee contre ce qui reste du fichier. */
+    private static int readLength(ByteBuffer buffer, File file) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                break;
+            }
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (value < 0 || value > buffer.remaining()) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new CorruptGraphException("Corrupted graph cache (name length): " + file);
+    }
+
+    /** Ancien format : une arete "source cible" par ligne. */
+    private static Map<String, Set<String>> readText(ByteBuffer buffer) throws IOException {
+        Map<String, Set<String>> deps = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new StringReader(Charset.defaultCharset().decode(buffer).toString()))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                int space = line.indexOf(' ');
+                if (space <= 0 || space == line.length() - 1 || line.indexOf(' ', space + 1) >= 0) {
+                    LOGGER.log(Level.SEVERE, "@@BrokenEdge: " + line);
+                    continue;
+                }
+                deps.computeIfAbsent(line.substring(0, space), k -> new LinkedHashSet<>())
+                        .add(line.substring(space + 1));
+            }
+        }
+        return deps;
+    }
+
+    private static void addAll(Map<String, Set<String>> deps, CachedEdges edges) {
+        SymbolTable symbols = edges.getSymbols();
+        for (Map.Entry<String, Set<String>> entry : deps.entrySet()) {
+            int source = symbols.intern(entry.getKey());
+            for (String dep : entry.getValue()) {
+                edges.add(source, symbols.intern(dep));
+            }
+        }
+    }
+
+    /** Graphe illisible (tronque, corrompu ou d'une version inconnue) : a recalculer. */
+    public static final class CorruptGraphException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        CorruptGraphException(String message) {
+            super(message);
+        }
+    }
+}
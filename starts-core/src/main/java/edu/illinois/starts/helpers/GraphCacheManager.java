@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.util.JarDigestIndex;
+import edu.illinois.starts.util.Logger;
+
+/**
+ * Budget du cache jdeps : date du dernier acces de chaque graphe et compteurs de hits et de
+ * misses dans {@code access.idx} (a la racine du cache), eviction des graphes les moins
+ * recemment utilises au-dela d'une taille ou d'un age.
+ *
+ * <p>Chaque module note ses acces dans un petit fichier a part ({@code access.d/*.acc}),
+ * sans verrou : les modules d'un {@code mvn -T} ne s'attendent pas les uns les autres. Ces
+ * fichiers sont fusionnes dans l'index sous le verrou {@link CacheEntryLock} de
+ * {@code access.idx}, par le gc ou quand ils deviennent trop nombreux. Un graphe absent de
+ * l'index (cache anterieur, index perdu) prend la date de son fichier.
+ */
+public class GraphCacheManager implements StartsConstants {
+    private static final Logger LOGGER = Logger.getGlobal();
+    static final String ACCESS_INDEX = "access.idx";
+    /** Acces notes par les modules, pas encore fusionnes dans l'index. */
+    static final String ACCESS_JOURNAL = "access.d";
+    private static final String JOURNAL_EXTENSION = ".acc";
+    /** Au-dela, le module qui note ses acces fusionne les fichiers en attente. */
+    private static final int MAX_JOURNALS = 1000;
+    private static final String TMP_EXTENSION = ".tmp";
+    private static final int MAGIC = 0x4A434158; // "JCAX"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Un fichier temporaire plus ancien appartient a un ecrivain interrompu. */
+    private static final long STALE_TMP_MS = 60 * 60 * 1000L;
+
+    private final File jdepsCache;
+    private final File indexFile;
+    private final File journalDir;
+
+    public GraphCacheManager(File jdepsCache) {
+        this.jdepsCache = jdepsCache;
+        this.indexFile = new File(jdepsCache, ACCESS_INDEX);
+        this.journalDir = new File(jdepsCache, ACCESS_JOURNAL);
+    }
+
+    /**
+     * Note l'utilisation de graphes par un module. Meilleur effort : un echec ne fait que
+     * vieillir les graphes concernes.
+     *
+     * @param hits    graphes trouves dans le cache
+     * @param created graphes calcules faute d'etre dans le cache
+     */
+    public void recordAccess(Collection<File> hits, Collection<File> created) {
+        long now = System.currentTimeMillis();
+        AccessIndex record = new AccessIndex();
+        for (File graph : hits) {
+            record.times.put(key(graph), now);
+        }
+        for (File graph : created) {
+            record.times.put(key(graph), now);
+        }
+        record.hits = hits.size();
+        record.misses = created.size();
+        try {
+            record.write(new File(journalDir, UUID.randomUUID() + JOURNAL_EXTENSION));
+            List<Path> journals = listJournals();
+            if (journals.size() > MAX_JOURNALS) {
+                try (CacheEntryLock lock = CacheEntryLock.acquire(indexFile)) {
+                    journals = listJournals();
+                    readIndex(journals).write(indexFile);
+                    deleteJournals(journals);
+                }
+            }
+        } catch (IOException ioe) {
+            LOGGER.log(Level.FINE, "Cannot record jdeps cache accesses in " + journalDir + ": " + ioe);
+        }
+    }
+
+    /** @return le nombre et la taille des graphes du cache, et les hits et misses cumules */
+    public Stats stats() throws IOException {
+        AccessIndex index = readIndex(listJournals());
+        long bytes = 0;
+        List<Path> graphs = listGraphs();
+        for (Path graph : graphs) {
+            bytes += sizeOf(graph);
+        }
+        return new Stats(graphs.size(), bytes, index.hits, index.misses);
+    }
+
+    /**
+     * Supprime les graphes non utilises depuis plus de {@code maxAgeMs}, puis les moins
+     * recemment utilises tant que le cache depasse {@code maxBytes}. Les fichiers temporaires
+     * laisses par des ecrivains interrompus sont supprimes aussi, ainsi que les empreintes des
+     * JARs qui n'existent plus.
+     *
+     * @param maxBytes taille maximale du cache, 0 pour ne pas limiter la taille
+     * @param maxAgeMs anciennete maximale du dernier acces, 0 pour ne pas limiter l'age
+     * @return les graphes supprimes (nombre et taille)
+     */
+    public Stats gc(long maxBytes, long maxAgeMs) throws IOException {
+        long now = System.currentTimeMillis();
+        deleteStaleTmpFiles(now);
+        try (CacheEntryLock lock = CacheEntryLock.acquire(indexFile)) {
+            List<Path> journals = listJournals();
+            AccessIndex index = readIndex(journals);
+            List<Entry> entries = new ArrayList<>();
+            long total = 0;
+            for (Path graph : listGraphs()) {
+                String key = key(graph.toFile());
+                Long access = index.times.get(key);
+                Entry entry = new Entry(graph, key, sizeOf(graph),
+                        access != null ? access : graph.toFile().lastModified());
+                entries.add(entry);
+                total += entry.size;
+            }
+            // Les moins recemment utilises d'abord
+            entries.sort((a, b) -> Long.compare(a.lastAccess, b.lastAccess));
+            int evicted = 0;
+            long freed = 0;
+            for (Entry entry : entries) {
+                boolean tooOld = maxAgeMs > 0 && now - entry.lastAccess > maxAgeMs;
+                boolean tooBig = maxBytes > 0 && total > maxBytes;
+                if (!tooOld && !tooBig) {
+                    break;
+                }
+                if (delete(entry.graph)) {
+                    index.times.remove(entry.key);
+                    total -= entry.size;
+                    freed += entry.size;
+                    evicted++;
+                }
+            }
+            // Graphes supprimes hors de ce gc
+            index.times.keySet().retainAll(entries.stream().map(e -> e.key).collect(Collectors.toSet()));
+            index.write(indexFile);
+            deleteJournals(journals);
+            int forgotten = JarDigestIndex.in(new File(jdepsCache, Cache.DIGEST_INDEX)).removeMissing();
+            LOGGER.log(Level.INFO, "jdeps cache: evicted " + evicted + " graphs (" + freed + " bytes), "
+                    + (entries.size() - evicted) + " graphs (" + total + " bytes) kept, "
+                    + forgotten + " deleted jars forgotten");
+            return new Stats(evicted, freed, 0, 0);
+        }
+    }
+
+    /** Attend que personne ne soit en train de calculer le graphe, puis le supprime avec son verrou. */
+    private static boolean delete(Path graph) {
+        try (CacheEntryLock lock = CacheEntryLock.acquire(graph.toFile())) {
+            boolean deleted = Files.deleteIfExists(graph);
+            Files.deleteIfExists(graph.resolveSibling(graph.getFileName() + CacheEntryLock.LOCK_EXTENSION));
+            return deleted;
+        } catch (IOException ioe) {
+            // Ex : graphe projete en memoire par un autre processus sous Windows
+            LOGGER.log(Level.FINE, "Cannot evict " + graph + ": " + ioe);
+            return false;
+        }
+    }
+
+    /** @return access.idx complete des acces de {@code journals} */
+    private AccessIndex readIndex(List<Path> journals) {
+        AccessIndex index = AccessIndex.read(indexFile);
+        for (Path journal : journals) {
+            index.add(AccessIndex.read(journal.toFile()));
+        }
+        return index;
+    }
+
+    private List<Path> listJournals() throws IOException {
+        if (!journalDir.isDirectory()) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(journalDir.toPath())) {
+            return files.filter(p -> p.toString().endsWith(JOURNAL_EXTENSION)).collect(Collectors.toList());
+        }
+    }
+
+    /** A appeler sous le verrou de l'index, une fois leurs acces ecrits dans access.idx. */
+    private static void deleteJournals(List<Path> journals) throws IOException {
+        for (Path journal : journals) {
+            Files.deleteIfExists(journal);
+        }
+    }
+
+    private void deleteStaleTmpFiles(long now) throws IOException {
+        if (!jdepsCache.isDirectory()) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(jdepsCache.toPath())) {
+            for (Path tmp : files.filter(p -> p.toString().endsWith(TMP_EXTENSION)).collect(Collectors.toList())) {
+                if (now - tmp.toFile().lastModified() > STALE_TMP_MS) {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+        }
+    }
+
+    private List<Path> listGraphs() throws IOException {
+        if (!jdepsCache.isDirectory()) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.walk(jdepsCache.toPath())) {
+            return files.filter(p -> p.toString().endsWith(Cache.GRAPH_EXTENSION) && Files.isRegularFile(p))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        return file.toFile().length();
+    }
+
+    /** Chemin du graphe relatif au cache, independant du systeme. */
+    private String key(File graph) {
+        return jdepsCache.toPath().toAbsolutePath().relativize(graph.toPath().toAbsolutePath()).toString()
+                .replace(File.separatorChar, '/');
+    }
+
+    /** Taille du cache (ou de ce qui a ete supprime) et compteurs d'acces. */
+    public static final class Stats {
+        private final int entries;
+        private final long bytes;
+        private final long hits;
+        private final long misses;
+
+        Stats(int entries, long bytes, long hits, long misses) {
+            this.entries = entries;
+            this.bytes = bytes;
+            this.hits = hits;
+            this.misses = misses;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        /** @return la part des graphes trouves dans le cache, 0 sans acces */
+        public double getHitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        @Override
+        public String toString() {
+            return "entries=" + entries + ", bytes=" + bytes + ", hits=" + hits + ", misses=" + misses
+                    + ", hitRate=" + String.format("%.1f%%", 100 * getHitRate());
+        }
+    }
+
+    private static final class Entry {
+        private final Path graph;
+        private final String key;
+        private final long size;
+        private final long lastAccess;
+
+        Entry(Path graph, String key, long size, long lastAccess) {
+            this.graph = graph;
+            this.key = key;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /** Contenu de access.idx, ou des acces d'un module. */
+    private static final class AccessIndex {
+        private final Map<String, Long> times = new HashMap<>();
+        private long hits;
+        private long misses;
+
+        /** @return l'index de {@code file}, vide s'il est absent ou illisible */
+        static AccessIndex read(File file) {
+            AccessIndex index = new AccessIndex();
+            if (!file.exists()) {
+                return index;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(file.toPath()), BUFFER_SIZE))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    return index;
+                }
+                index.hits = in.readLong();
+                index.misses = in.readLong();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    index.times.put(in.readUTF(), in.readLong());
+                }
+            } catch (IOException ioe) {
+                LOGGER.log(Level.WARNING, "Ignoring corrupt jdeps cache access index " + file + ": " + ioe);
+                return new AccessIndex();
+            }
+            return index;
+        }
+
+        void add(AccessIndex other) {
+            other.times.forEach((key, time) -> times.merge(key, time, Math::max));
+            hits += other.hits;
+            misses += other.misses;
+        }
+
+        /** Fichier temporaire puis renommage ; access.idx ne s'ecrit que sous son verrou. */
+        void write(File file) throws IOException {
+            Path target = file.toPath();
+            Path tmp = GraphCacheFile.tmpFile(target);
+            Files.createDirectories(target.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(tmp), BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(hits);
+                out.writeLong(misses);
+                out.writeInt(times.size());
+                for (Map.Entry<String, Long> entry : times.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue());
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
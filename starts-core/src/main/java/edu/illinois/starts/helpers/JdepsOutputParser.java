@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.util.SymbolTable;
+
+/**
+ * Sortie de jdeps -v analysee au fil de l'eau : chaque ligne
+ * {@code "   a.B   -> c.D   archive"} est decoupee des qu'elle est complete et
+ * l'arete ajoutee a la Map de dependances. Seule la ligne courante est gardee
+ * en memoire, au lieu de tout le texte dans un StringWriter.
+ *
+ * <p>Memes regles que l'ancien parsing par split : lignes sans "->" ignorees,
+ * ainsi que les lignes de resume ("classes -> java.base", "x.jar -> ...").
+ */
+public class JdepsOutputParser extends java.io.Writer implements StartsConstants {
+    private final Map<String, Set<String>> deps;
+    private final SymbolTable symbols;
+    private char[] line = new char[256];
+    private int length;
+
+    public JdepsOutputParser(SymbolTable symbols) {
+        this(new HashMap<>(), symbols);
+    }
+
+    public JdepsOutputParser(Map<String, Set<String>> deps, SymbolTable symbols) {
+        this.deps = deps;
+        this.symbols = symbols;
+    }
+
+    public Map<String, Set<String>> getDeps() {
+        return deps;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            accept(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            accept(str.charAt(i));
+        }
+    }
+
+    @Override
+    public void write(int c) {
+        accept((char) c);
+    }
+
+    private void accept(char c) {
+        if (c == '\n') {
+            parseLine();
+            length = 0;
+        } else if (c != '\r') {
+            if (length == line.length) {
+                line = Arrays.copyOf(line, length * 2);
+            }
+            line[length++] = c;
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /** Traite une eventuelle derniere ligne sans fin de ligne. */
+    @Override
+    public void close() {
+        if (length > 0) {
+            parseLine();
+            length = 0;
+        }
+    }
+
+    private void parseLine() {
+        int arrow = -1;
+        for (int i = 0; i + 1 < length; i++) {
+            if (line[i] == '-' && line[i + 1] == '>') {
+                arrow = i;
+                break;
+            }
+        }
+        if (arrow < 0) {
+            return;
+        }
+        int leftStart = skipSpaces(0, arrow);
+        int leftEnd = arrow;
+        while (leftEnd > leftStart && Character.isWhitespace(line[leftEnd - 1])) {
+            leftEnd--;
+        }
+        if (startsWith(leftStart, leftEnd, CLASSES) || startsWith(leftStart, leftEnd, TEST_CLASSES)
+                || endsWith(leftStart, leftEnd, JAR_EXTENSION)) {
+            return;
+        }
+        int rightStart = skipSpaces(arrow + 2, length);
+        int rightEnd = rightStart;
+        while (rightEnd < length && !Character.isWhitespace(line[rightEnd])) {
+            rightEnd++;
+        }
+        if (rightEnd == rightStart) {
+            return;
+        }
+        String left = symbols.name(symbols.intern(line, leftStart, leftEnd - leftStart));
+        String right = symbols.name(symbols.intern(line, rightStart, rightEnd - rightStart));
+        deps.computeIfAbsent(left, k -> new HashSet<>()).add(right);
+    }
+
+    private int skipSpaces(int from, int to) {
+        while (from < to && Character.isWhitespace(line[from])) {
+            from++;
+        }
+        return from;
+    }
+
+    private boolean startsWith(int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean endsWith(int start, int end, String suffix) {
+        return end - start >= suffix.length() && startsWith(end - suffix.length(), end, suffix);
+    }
+}
@@ -5,11 +5,8 @@
 package edu.illinois.starts.helpers;
 
 import java.io.File;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -20,10 +17,10 @@ import java.util.logging.Level;
 import org.apache.maven.surefire.booter.Classpath;
 
 import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.data.CsrGraph;
 import edu.illinois.starts.util.ChecksumUtil;
 import edu.illinois.starts.util.Logger;
-import edu.illinois.yasgl.DirectedGraph;
-import edu.illinois.yasgl.DirectedGraphBuilder;
+import edu.illinois.starts.util.SymbolTable;
 import org.ekstazi.util.Types;
 
 /**
@@ -33,17 +30,22 @@ public class Loadables implements StartsConstants {
     private static final Logger LOGGER = Logger.getGlobal();
 
     Map<String, Set<String>> deps;
-    List<String> extraEdges;
+    CachedEdges extraEdges;
     private List<String> classesToAnalyze;
     private File cache;
     private String sfPathString;
-    private DirectedGraph<String> graph;
-    private Map<String, Set<String>> transitiveClosure;
+    private CsrGraph graph;
+    private TestDependencyMatrix testDependencies;
     private Set<String> unreached;
     private boolean filterLib;
     private boolean useThirdParty;
     private Classpath surefireClasspath;
     private String artifactsDir;
+    private boolean useJdeps;
+    private int closureParallelism = 1;
+    private ScannedClasses scannedClasses;
+    /** Noms des sommets, partages entre le parsing jdeps et le graphe. */
+    private final SymbolTable symbols = new SymbolTable();
 
     public Loadables(List<String> classesToAnalyze, String artifactsDir, String sfPathString,
                      boolean useThirdParty, boolean filterLib, File cache) {
@@ -55,18 +57,44 @@ public class Loadables implements StartsConstants {
         this.useThirdParty = useThirdParty;
     }
 
-    public DirectedGraph<String> getGraph() {
+    /**
+     * Force l'utilisation de jdeps (ToolProvider) au lieu de la lecture directe
+     * des .class par {@link DepsExtractor}.
+     */
+    public void setUseJdeps(boolean useJdeps) {
+        this.useJdeps = useJdeps;
+    }
+
+    /**
+     * Nombre de threads pour le calcul des fermetures transitives (1 = sequentiel,
+     * 0 = nombre de processeurs). Le resultat ne depend pas de cette valeur.
+     */
+    public void setClosureParallelism(int closureParallelism) {
+        this.closureParallelism = closureParallelism;
+    }
+
+    public CsrGraph getGraph() {
         return graph;
     }
 
+    /** Vue {@code classe analysee -> fermeture} sur {@link #getTestDependencies()}. */
     public Map<String, Set<String>> getTransitiveClosure() {
-        return transitiveClosure;
+        return testDependencies.asMap();
+    }
+
+    public TestDependencyMatrix getTestDependencies() {
+        return testDependencies;
     }
 
     public Set<String> getUnreached() {
         return unreached;
     }
 
+    /** @return les .class lus pour le graphe, null s'ils ont ete analyses par jdeps */
+    public ScannedClasses getScannedClasses() {
+        return scannedClasses;
+    }
+
     public List<String> getClasspathWithNoJars() {
         // There is a cache of all third party libraries, remove third-party jars from jdeps classpath
         // ASSUMPTION: local dependencies (modules in the same mvn project) are directories, not jars
@@ -81,7 +109,7 @@ public class Loadables implements StartsConstants {
         return localPaths;
     }
 
-    public Loadables create(List<String> moreEdges, Classpath sfClassPath,
+    public Loadables create(CachedEdges moreEdges, Classpath sfClassPath,
                             boolean computeUnreached, boolean exclureArchiDep) {
         setSurefireClasspath(sfClassPath);
         LOGGER.log(Level.FINEST, "More: " + moreEdges.size());
@@ -91,13 +119,12 @@ public class Loadables implements StartsConstants {
         long jdepsTime = System.currentTimeMillis();
         graph = makeGraph(deps, extraEdges);
         long graphBuildingTime = System.currentTimeMillis();
-        transitiveClosure = getTransitiveClosurePerClass(graph, classesToAnalyze);
+        testDependencies = computeTestDependencies(graph, classesToAnalyze, closureParallelism);
         long transitiveClosureTime = System.currentTimeMillis();
         if (computeUnreached) {
-            unreached = findUnreached(deps, transitiveClosure);
+            unreached = findUnreached(deps, testDependencies);
             LOGGER.log(Level.INFO, "Classes inaccessible (count): " + unreached.size());
         }
-        long findUnreachedTime = System.currentTimeMillis();
         long endTime = System.currentTimeMillis();
         LOGGER.log(Level.INFO, "[PROFILE] createLoadable(runJDeps): " + Writer.millsToLog(jdepsTime - startTime));
         LOGGER.log(Level.INFO, "[PROFILE] createLoadable(buildGraph): "
@@ -105,10 +132,10 @@ public class Loadables implements StartsConstants {
         LOGGER.log(Level.INFO, "[PROFILE] createLoadable(transitiveClosure): "
                 + Writer.millsToLog(transitiveClosureTime - graphBuildingTime));
         LOGGER.log(Level.INFO, "[PROFILE] createLoadable(findUnreached): "
-                + Writer.millsToLog(endTime - findUnreachedTime));
+                + Writer.millsToLog(endTime - transitiveClosureTime));
         LOGGER.log(Level.INFO, "[PROFILE] createLoadable(TOTAL): " + Writer.millsToLog(endTime - startTime));
-        LOGGER.log(Level.INFO, "STARTS:Nodes: " + graph.getVertices().size());
-        LOGGER.log(Level.INFO, "STARTS:Edges: " + graph.getEdges().size());
+        LOGGER.log(Level.INFO, "STARTS:Nodes: " + graph.getVertexCount());
+        LOGGER.log(Level.INFO, "STARTS:Edges: " + graph.getEdgeCount());
         return this;
     }
 
@@ -116,11 +143,11 @@ public class Loadables implements StartsConstants {
      * This method takes (i) the dependencies that jdeps found and (i) the map from tests to reachable
      * types in the graph, and uses these to find types jdeps found but which are not reachable by any test.
      * @param deps      The dependencies that jdeps found.
-     * @param testDeps  The map from test to types that can be reached in the graph.
+     * @param testDeps  The test x type matrix of types that can be reached in the graph.
      * @return          The set of types that are not reachable by any test in the graph.
      */
     private Set<String> findUnreached(Map<String, Set<String>> deps,
-                                      Map<String, Set<String>> testDeps) {
+                                      TestDependencyMatrix testDeps) {
         Set<String> allClasses = new HashSet<>();
         for (String loc : deps.keySet()) {
             // 1. jdeps finds no dependencies for a class if the class' dependencies were not analyzed (e.g., no -R)
@@ -137,47 +164,32 @@ public class Loadables implements StartsConstants {
             }
         }
         LOGGER.log(Level.INFO, "ALL classes(count): " + allClasses.size());
-        Set<String> reached = new HashSet<>(testDeps.keySet());
-        for (String test : testDeps.keySet()) {
-            reached.addAll(testDeps.get(test));
-        }
-        // remove the reached classes from allClasses to get the unreached classes.
-        allClasses.removeAll(reached);
-        return allClasses;
+        // remove the reached classes (union of the closure bitmaps) from allClasses to get the unreached classes.
+        return testDeps.findUnreached(allClasses);
     }
 
-    private DirectedGraph<String> makeGraph(Map<String, Set<String>> deps,
-                                            List<String> moreEdges) {
-        DirectedGraphBuilder<String> builder = getBuilderFromDeps(deps);
+    private CsrGraph makeGraph(Map<String, Set<String>> deps,
+                               CachedEdges moreEdges) {
+        CsrGraph.Builder builder = getBuilderFromDeps(deps);
         addEdgesToGraphBuilder(builder, moreEdges);
         return builder.build();
     }
 
-    public DirectedGraphBuilder<String> getBuilderFromDeps(
-            Map<String, Set<String>> deps
-    ) {
-        // Copie défensive
-        Map<String, Set<String>> graph = new HashMap<>(deps.size());
+    public CsrGraph.Builder getBuilderFromDeps(Map<String, Set<String>> deps) {
+        // Les aretes sont lues directement dans le builder (paires d'entiers) :
+        // plus de copie defensive de la Map, le builder ne la modifie pas.
+        CsrGraph.Builder builder = new CsrGraph.Builder();
         for (Map.Entry<String, Set<String>> e : deps.entrySet()) {
-            graph.put(e.getKey(), e.getValue() == null ? new HashSet<>() : new HashSet<>(e.getValue()));
-        }
-
-        // 3) Construction du graphe
-        DirectedGraphBuilder<String> builder = new DirectedGraphBuilder<>();
-        for (Map.Entry<String, Set<String>> e : graph.entrySet()) {
-            String source = e.getKey();
+            // important: conserver les sommets isolés
+            int source = builder.addVertex(e.getKey());
             Set<String> targets = e.getValue();
-
-            if (targets == null || targets.isEmpty()) {
-                // important: conserver les sommets isolés
-                builder.addVertex(source);
+            if (targets == null) {
                 continue;
             }
             for (String target : targets) {
-                builder.addEdge(source, target);
+                builder.addEdge(source, builder.addVertex(target));
             }
         }
-
         return builder;
     }
 
@@ -188,9 +200,9 @@ public class Loadables implements StartsConstants {
             //There are no test classes, no need to waste time with jdeps
             return null;
         }
-        List<String> args = new ArrayList<>(Arrays.asList("-v"));
+        String filtre = null;
         if (filterLib) {
-            String filtre = "";
+            filtre = "";
             if ( exclureArchiDep ) {
                 filtre = "com.imrglobal.framework.*|" +
                         "com.hermes.arc.critere.*|" +
@@ -220,14 +232,40 @@ public class Loadables implements StartsConstants {
                     "org.apache.logging.*|" +
                     "com.fasterxml.*";
             // TODO: We need a cleaner/generic way to add filters
-            args.addAll( Arrays.asList( "-filter", filtre) );
         }
         List<String> localPaths = getClasspathWithNoJars();
         if (localPaths.isEmpty()) {
             throw new IllegalArgumentException("JDEPS cannot run with an empty classpath.");
         }
+        boolean recursive = (!cache.exists() || (cache.isDirectory() && cache.list().length == 0)) && useThirdParty;
+        Map<String, Set<String>> depMap;
+        if (useJdeps || recursive) {
+            // Le mode recursif (-R) suit les jars atteints : on le laisse a jdeps
+            depMap = runJdeps(pathToUse, localPaths, filtre, recursive);
+        } else {
+            // Seules les classes modifiees depuis le run precedent sont relues
+            ClassEdgeStore store = artifactsDir == null ? null
+                    : ClassEdgeStore.load(new File(artifactsDir, CLASS_EDGES));
+            scannedClasses = new ScannedClasses();
+            depMap = DepsExtractor.extract(localPaths, filtre, store, scannedClasses);
+        }
+
+        exclusions( depMap );
+
+        if (LOGGER.getLoggingLevel().intValue() == Level.FINEST.intValue()) {
+            Writer.writeMapToFile(depMap, artifactsDir + File.separator + "jdeps-out");
+        }
+        return depMap;
+    }
+
+    private Map<String, Set<String>> runJdeps(String pathToUse, List<String> localPaths,
+                                              String filtre, boolean recursive) {
+        List<String> args = new ArrayList<>(Arrays.asList("-v"));
+        if (filtre != null) {
+            args.addAll( Arrays.asList( "-filter", filtre) );
+        }
         String jdepsClassPath;
-        if ((!cache.exists() || (cache.isDirectory() && cache.list().length == 0)) && useThirdParty) {
+        if (recursive) {
             //There is no cache of jdeps graphs, so we want to run jdeps recursively with the entire surefire classpath
             LOGGER.log(Level.WARNING, "Should jdeps cache really be empty? Running in recursive mode.");
             args.add("-R");
@@ -238,14 +276,7 @@ public class Loadables implements StartsConstants {
         args.addAll(Arrays.asList("-cp", jdepsClassPath));
         args.addAll(localPaths);
         LOGGER.log(Level.FINEST, "JDEPS CMD: " + args);
-        Map<String, Set<String>> depMap = RTSUtil.runJdeps(args);
-
-        exclusions( depMap );
-
-        if (LOGGER.getLoggingLevel().intValue() == Level.FINEST.intValue()) {
-            Writer.writeMapToFile(depMap, artifactsDir + File.separator + "jdeps-out");
-        }
-        return depMap;
+        return RTSUtil.runJdeps(args, symbols);
     }
 
     /**
@@ -320,147 +351,74 @@ public class Loadables implements StartsConstants {
         return topA.equals(topB);
     }
 
-    private void addEdgesToGraphBuilder(DirectedGraphBuilder<String> builder, List<String> edges) {
-        for (String edge : edges) {
-            String[] parts = edge.split(WHITE_SPACE);
-            if (parts.length != 2) {
-                LOGGER.log(Level.SEVERE, "@@BrokenEdge: " + edge);
-                continue;
-            }
-            String src = parts[0].intern();
-            String dest = parts[1].intern();
+    private void addEdgesToGraphBuilder(CsrGraph.Builder builder, CachedEdges edges) {
+        // Chaque nom du cache n'est resolu dans le builder qu'a sa premiere arete retenue
+        SymbolTable names = edges.getSymbols();
+        int[] ids = new int[names.size()];
+        Arrays.fill(ids, -1);
+        for (int edge = 0; edge < edges.size(); edge++) {
+            int src = edges.source(edge);
+            int dest = edges.target(edge);
             // Appliquer les memes exclusions que sur depMap : les aretes
             // inter-modules (JARs) passent par ici et doivent aussi etre filtrees.
-            if (shouldExcludeEdge(src, dest)) {
+            if (shouldExcludeEdge(names.name(src), names.name(dest))) {
                 continue;
             }
-            builder.addEdge(src, dest);
+            if (ids[src] < 0) {
+                ids[src] = builder.addVertex(names.name(src));
+            }
+            if (ids[dest] < 0) {
+                ids[dest] = builder.addVertex(names.name(dest));
+            }
+            builder.addEdge(ids[src], ids[dest]);
         }
     }
 
     public static Map<String, Set<String>> getTransitiveClosurePerClass(
-            DirectedGraph<String> graph,
+            CsrGraph graph,
             List<String> classesToAnalyze
     ) {
-        // 1) Indexer les sommets
-        List<String> allVertices = new ArrayList<>(graph.getVertices());
-        Map<String, Integer> nodeToId = new HashMap<>(allVertices.size());
-        for (int nodeIndex = 0; nodeIndex < allVertices.size(); nodeIndex++) {
-            nodeToId.put(allVertices.get(nodeIndex), nodeIndex);
-        }
-        final int vertexCount = allVertices.size();
-
-        // 2) Construire et cacher l’adjacence en ids (une seule fois)
-        int[][] successorsById = new int[vertexCount][];
-        for (int nodeIndex = 0; nodeIndex < vertexCount; nodeIndex++) {
-            String nodeName = allVertices.get(nodeIndex);
-            Collection<String> successors = graph.getSuccessors(nodeName);
-            int[] succIds = new int[successors.size()];
-            int writePos = 0;
-            for (String succName : successors) {
-                Integer succId = nodeToId.get(succName);
-                if (succId != null) {
-                    succIds[writePos++] = succId;
-                }
-            }
-            if (writePos != succIds.length) {
-                succIds = Arrays.copyOf(succIds, writePos);
-            }
-            successorsById[nodeIndex] = succIds;
-        }
-
-        // 3) Mémoisation des fermetures
-        BitSet[] memoClosure = new BitSet[vertexCount];
-        boolean[] computed = new boolean[vertexCount];
+        return getTransitiveClosurePerClass(graph, classesToAnalyze, 1);
+    }
 
-        // 4) Résolution itérative en post-ordre (pas de récursion), avec mémo
-        class Solver {
-            BitSet solve(int startId) {
-                if (computed[startId]) {
-                    return memoClosure[startId];
-                }
-                // Pile pour DFS explicite : (nodeId, nextChildIdx)
-                ArrayDeque<int[]> stack = new ArrayDeque<>();
-                ArrayDeque<Integer> postOrder = new ArrayDeque<>();
-                boolean[] onStack = new boolean[vertexCount];
-
-                stack.push(new int[]{startId, 0});
-                onStack[startId] = true;
-
-                while (!stack.isEmpty()) {
-                    int[] frame = stack.peek();
-                    int nodeId = frame[0];
-                    int nextChildIdx = frame[1];
-
-                    if (computed[nodeId]) {
-                        stack.pop();
-                        continue;
-                    }
-
-                    int[] succIds = successorsById[nodeId];
-                    if (nextChildIdx < succIds.length) {
-                        int childId = succIds[nextChildIdx];
-                        frame[1] = nextChildIdx + 1;
-
-                        if (!computed[childId] && !onStack[childId]) {
-                            stack.push(new int[]{childId, 0});
-                            onStack[childId] = true;
-                        }
-                        // Si le child est déjà computed ou en cours, on avance.
-                    } else {
-                        // Tous les enfants sont traités => post-traitement du nœud
-                        postOrder.push(nodeId);
-                        stack.pop();
-                    }
-                }
+    /**
+     * @param parallelism threads pour les unions de fermetures, niveau par niveau du
+     *                    graphe condense (1 = sequentiel, 0 = nombre de processeurs)
+     * @return pour chaque classe, sa fermeture (elle-meme incluse), en lecture seule
+     */
+    public static Map<String, Set<String>> getTransitiveClosurePerClass(
+            CsrGraph graph,
+            List<String> classesToAnalyze,
+            int parallelism
+    ) {
+        return computeTestDependencies(graph, classesToAnalyze, parallelism).asMap();
+    }
 
-                // Post-ordre : on construit les closures une seule fois par nœud
-                while (!postOrder.isEmpty()) {
-                    int nodeId = postOrder.pop();
-                    BitSet closure = new BitSet(vertexCount);
-                    // S’inclure soi-même
-                    closure.set(nodeId);
-                    // Union des closures enfants
-                    for (int childId : successorsById[nodeId]) {
-                        BitSet childClosure = memoClosure[childId];
-                        if (childClosure != null) {
-                            closure.or(childClosure);
-                        } else {
-                            // Cas cycle en cours de résolution : à ce stade, les enfants
-                            // devraient être construits, mais par sécurité on ajoute le child.
-                            closure.set(childId);
-                        }
-                    }
-                    memoClosure[nodeId] = closure;
-                    computed[nodeId] = true;
-                }
-                return memoClosure[startId];
+    /**
+     * Fermetures des classes a analyser, gardees sous forme de bitmaps (une ligne par classe).
+     *
+     * @param parallelism voir {@link #getTransitiveClosurePerClass(CsrGraph, List, int)}
+     */
+    public static TestDependencyMatrix computeTestDependencies(
+            CsrGraph graph,
+            List<String> classesToAnalyze,
+            int parallelism
+    ) {
+        // 1) Sommets de depart : seule la partie atteignable du graphe est condensee
+        int[] startIds = new int[classesToAnalyze.size()];
+        int count = 0;
+        for (String className : classesToAnalyze) {
+            int id = graph.getId(className);
+            if (id >= 0) {
+                startIds[count++] = id;
             }
         }
 
-        Solver solver = new Solver();
+        // 2) Composantes fortement connexes et une fermeture par composante
+        ClosureEngine engine = new ClosureEngine(graph).compute(Arrays.copyOf(startIds, count), parallelism);
 
-        // 5) Construire le résultat uniquement pour classesToAnalyze
-        Map<String, Set<String>> result = new HashMap<>(classesToAnalyze.size());
-        for (String className : classesToAnalyze) {
-            Integer startId = nodeToId.get(className);
-            if (startId == null) {
-                // Classe absente du graphe : retourne au moins elle-même
-                result.put(className, Set.of(className));
-                continue;
-            }
-            BitSet closureBits = solver.solve(startId);
-            // Matérialiser en Set<String> (si nécessaire)
-            int expected = closureBits.cardinality();
-            Set<String> deps = new HashSet<>((int) (expected / 0.75f) + 1);
-            for (int bit = closureBits.nextSetBit(0); bit >= 0; bit = closureBits.nextSetBit(bit + 1)) {
-                deps.add(allVertices.get(bit));
-            }
-            // Conforme à ton code : on s’assure d’ajouter la classe d’origine
-            deps.add(className);
-            result.put(className, deps);
-        }
-        return result;
+        // 3) Une ligne par classe a analyser ; une classe absente du graphe ne depend que d'elle-meme
+        return new TestDependencyMatrix(graph, engine, classesToAnalyze);
     }
 
 
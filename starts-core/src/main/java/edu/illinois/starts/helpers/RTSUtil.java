@@ -16,10 +16,11 @@ import java.util.Set;
 import java.util.logging.Level;
 
 import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.data.CsrGraph;
 import edu.illinois.starts.maven.AgentLoader;
 import edu.illinois.starts.util.ChecksumUtil;
 import edu.illinois.starts.util.Logger;
-import edu.illinois.yasgl.DirectedGraph;
+import edu.illinois.starts.util.SymbolTable;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.ekstazi.data.RegData;
 
@@ -33,7 +34,7 @@ public class RTSUtil implements StartsConstants {
     // Name of tools.jar on Mac in JDK
     private static final String CLASSES_JAR_NAME = "classes.jar";
 
-    public static void saveForNextRun(String artifactsDir, DirectedGraph<String> graph,
+    public static void saveForNextRun(String artifactsDir, CsrGraph graph,
                                       boolean printGraph, String graphFile) {
         long start = System.currentTimeMillis();
         Writer.writeGraph(graph, artifactsDir, printGraph, graphFile);
@@ -77,35 +78,28 @@ public class RTSUtil implements StartsConstants {
     }
 
     public static Map<String, Set<String>> runJdeps(List<String> args) {
-        LOGGER.log(Level.FINE, "JDEPS ARGS:" + args);
+        return runJdeps(args, new SymbolTable());
+    }
 
-        StringWriter output = AgentLoader.loadAndRunJdeps(args);
-        // jdeps can return an empty output when run on .jar files with no .class files
-        return output.getBuffer().length() != 0 ? getDepsFromJdepsOutput(output) : new HashMap<String, Set<String>>();
+    /**
+     * Runs jdeps and parses its output while it is produced; class names are interned in {@code symbols}.
+     * jdeps can return an empty output when run on .jar files with no .class files: the map is then empty.
+     */
+    public static Map<String, Set<String>> runJdeps(List<String> args, SymbolTable symbols) {
+        LOGGER.log(Level.FINE, "JDEPS ARGS:" + args);
+        JdepsOutputParser parser = new JdepsOutputParser(symbols);
+        AgentLoader.loadAndRunJdeps(args, parser);
+        parser.close();
+        return parser.getDeps();
     }
 
     public static Map<String, Set<String>> getDepsFromJdepsOutput(StringWriter jdepsOutput) {
-        Map<String, Set<String>> deps = new HashMap<>();
-        List<String> lines = Arrays.asList(jdepsOutput.toString().split(System.lineSeparator()));
-        for (String line : lines) {
-            String[] parts = line.split("->");
-            // Ignorer les lignes sans "->" (en-tetes, lignes vides, resumes de
-            // jdeps sur les .jar quand useThirdParty=true) : sinon parts[1] leve
-            // ArrayIndexOutOfBoundsException.
-            if (parts.length < 2) {
-                continue;
-            }
-            String left = parts[0].trim();
-            if (left.startsWith(CLASSES) || left.startsWith(TEST_CLASSES) || left.endsWith(JAR_EXTENSION)) {
-                continue;
-            }
-            String right = parts[1].trim().split(WHITE_SPACE)[0];
-            if (deps.keySet().contains(left)) {
-                deps.get(left).add(right);
-            } else {
-                deps.put(left, new HashSet<>(Arrays.asList(right)));
-            }
+        JdepsOutputParser parser = new JdepsOutputParser(new SymbolTable());
+        StringBuffer buffer = jdepsOutput.getBuffer();
+        for (int i = 0; i < buffer.length(); i++) {
+            parser.write(buffer.charAt(i));
         }
-        return deps;
+        parser.close();
+        return parser.getDeps();
     }
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fichiers .class lus par {@link DepsExtractor}, par nom de ressource ("com/x/A.class") :
+ * la mise a jour du ZLC retrouve l'URL d'une classe locale sans la redemander au classloader.
+ *
+ * <p>Si une classe est presente dans plusieurs repertoires, le premier dans l'ordre du
+ * classpath l'emporte, comme pour le classloader. Les repertoires de classes sont supposes
+ * preceder les JARs qui contiendraient la meme classe (cas de surefire).
+ *
+ * <p>Utilisable depuis plusieurs threads pendant l'extraction.
+ */
+public final class ScannedClasses {
+    private final Map<String, Location> locations = new ConcurrentHashMap<>();
+
+    /**
+     * @param resourceName nom de ressource de la classe ("com/x/A.class")
+     * @param order        rang du repertoire dans le classpath
+     */
+    void add(String resourceName, Path file, int order) {
+        locations.merge(resourceName, new Location(file, order), (a, b) -> a.order <= b.order ? a : b);
+    }
+
+    /** @return l'URL {@code file:} de la classe, null si elle n'a pas ete lue */
+    public URL locate(String resourceName) {
+        Location location = locations.get(resourceName);
+        if (location == null) {
+            return null;
+        }
+        try {
+            return location.file.toUri().toURL();
+        } catch (MalformedURLException mue) {
+            return null;
+        }
+    }
+
+    public int size() {
+        return locations.size();
+    }
+
+    /**
+     * @return un classloader qui resout les classes lues sans interroger {@code parent},
+     *         et delegue a {@code parent} pour tout le reste
+     */
+    public ClassLoader over(ClassLoader parent) {
+        return new ClassLoader(parent) {
+            @Override
+            public URL getResource(String name) {
+                URL url = locate(name);
+                return url != null ? url : super.getResource(name);
+            }
+        };
+    }
+
+    private static final class Location {
+        private final Path file;
+        private final int order;
+
+        Location(Path file, int order) {
+            this.file = file;
+            this.order = order;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+
+import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.data.CsrGraph;
+import edu.illinois.starts.util.Logger;
+
+/**
+ * Graphe de dependances du dernier run, avec la liste des tests analyses,
+ * persiste dans .starts pour la selection par accessibilite inverse : les tests
+ * affectes sont ceux qui atteignent une classe modifiee, trouves par un seul
+ * BFS arriere multi-sources au lieu d'une fermeture par test.
+ *
+ * <p>Un test connu du run precedent et absent du resultat n'est pas affecte ;
+ * un test inconnu (nouveau) l'est toujours, comme avec le ZLC.
+ */
+public class SelectionGraph implements StartsConstants {
+    private static final Logger LOGGER = Logger.getGlobal();
+
+    private final CsrGraph graph;
+    private final List<String> tests;
+
+    public SelectionGraph(CsrGraph graph, List<String> tests) {
+        this.graph = graph;
+        this.tests = tests;
+    }
+
+    public CsrGraph getGraph() {
+        return graph;
+    }
+
+    /** Tests analyses lors de l'ecriture du graphe. */
+    public List<String> getTests() {
+        return tests;
+    }
+
+    /**
+     * @param changedClasses FQN des classes modifiees
+     * @return les tests connus qui dependent (transitivement) d'une classe modifiee, ou qui ont eux-memes change
+     */
+    public Set<String> selectAffectedTests(Collection<String> changedClasses) {
+        long start = System.currentTimeMillis();
+        Set<String> changed = changedClasses instanceof Set
+                ? (Set<String>) changedClasses : new HashSet<>(changedClasses);
+        Set<String> affected = new HashSet<>();
+        if (changed.isEmpty()) {
+            return affected;
+        }
+        Set<String> reached = graph.acceptBackward(changed);
+        for (String test : tests) {
+            if (reached.contains(test) || changed.contains(test)) {
+                affected.add(test);
+            }
+        }
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "[PROFILE] selectAffectedTests(changed=" + changed.size() + ", reached="
+                + reached.size() + "): " + Writer.millsToLog(end - start));
+        return affected;
+    }
+
+    /**
+     * @return le graphe persiste, ou null s'il n'existe pas ou est illisible (la selection
+     *         passe alors par le ZLC)
+     */
+    public static SelectionGraph load(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()),
+                1 << 16))) {
+            int count = in.readInt();
+            List<String> tests = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                tests.add(in.readUTF());
+            }
+            CsrGraph graph = CsrGraph.readFrom(in);
+            long end = System.currentTimeMillis();
+            LOGGER.log(Level.FINE, "[PROFILE] loadSelectionGraph(nodes=" + graph.getVertexCount() + ", edges="
+                    + graph.getEdgeCount() + "): " + Writer.millsToLog(end - start));
+            return new SelectionGraph(graph, Collections.unmodifiableList(tests));
+        } catch (IOException ioe) {
+            LOGGER.log(Level.WARNING, "Ignoring corrupt selection graph " + file + ": " + ioe);
+            return null;
+        }
+    }
+
+    /** Ecrit dans un fichier temporaire puis renomme, pour ne jamais laisser un graphe tronque. */
+    public static void save(File file, CsrGraph graph, Collection<String> tests) {
+        long start = System.currentTimeMillis();
+        Path target = file.toPath();
+        Path tmp = target.resolveSibling(file.getName() + ".tmp");
+        try {
+            Files.createDirectories(target.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp),
+                    1 << 16))) {
+                out.writeInt(tests.size());
+                for (String test : tests) {
+                    out.writeUTF(test);
+                }
+                graph.writeTo(out);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "[PROFILE] saveSelectionGraph(nodes=" + graph.getVertexCount() + "): "
+                + Writer.millsToLog(end - start));
+    }
+}
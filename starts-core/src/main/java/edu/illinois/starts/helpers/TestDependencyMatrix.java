@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import edu.illinois.starts.data.CsrGraph;
+import edu.illinois.starts.util.CompressedBitmap;
+
+/**
+ * Matrice test x dependance issue de {@link ClosureEngine} : une ligne par test
+ * (sa fermeture compressee, en positions du moteur). Le ZLC a besoin de la
+ * transposee (dependance -> tests), calculee en un seul passage sur les lignes ;
+ * les noms de classes ne sont produits qu'au moment d'ecrire chaque colonne.
+ *
+ * <p>Un test absent du graphe ne depend que de lui-meme.
+ */
+public class TestDependencyMatrix {
+    private final CsrGraph graph;
+    private final ClosureEngine engine;
+    private final List<String> tests;
+    /** Fermeture du test i, null si le test n'est pas dans le graphe. */
+    private final CompressedBitmap[] rows;
+    private Map<String, Set<String>> map;
+
+    TestDependencyMatrix(CsrGraph graph, ClosureEngine engine, List<String> tests) {
+        this.graph = graph;
+        this.engine = engine;
+        this.tests = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(tests)));
+        this.rows = new CompressedBitmap[this.tests.size()];
+        for (int i = 0; i < rows.length; i++) {
+            int id = graph.getId(this.tests.get(i));
+            rows[i] = id < 0 ? null : engine.closureOf(id);
+        }
+    }
+
+    /** Tests, dans l'ordre des lignes (et des index des colonnes). */
+    public List<String> getTests() {
+        return tests;
+    }
+
+    /**
+     * Transposee : appelle {@code consumer} une fois par dependance atteinte par au moins un
+     * test, avec l'ensemble des index de tests qui l'atteignent. Le BitSet n'est plus utilise
+     * par la matrice apres l'appel.
+     */
+    public void forEachColumn(BiConsumer<String, BitSet> consumer) {
+        int testCount = tests.size();
+        BitSet[] columns = new BitSet[graph.getVertexCount()];
+        Map<String, BitSet> outsideGraph = new HashMap<>();
+        for (int i = 0; i < testCount; i++) {
+            int test = i;
+            if (rows[i] == null) {
+                outsideGraph.computeIfAbsent(tests.get(i), k -> new BitSet(testCount)).set(test);
+                continue;
+            }
+            rows[i].forEach(position -> {
+                BitSet column = columns[position];
+                if (column == null) {
+                    column = new BitSet(testCount);
+                    columns[position] = column;
+                }
+                column.set(test);
+            });
+        }
+        for (int position = 0; position < columns.length; position++) {
+            if (columns[position] != null) {
+                consumer.accept(graph.getName(engine.vertexAt(position)), columns[position]);
+                columns[position] = null;
+            }
+        }
+        outsideGraph.forEach(consumer);
+    }
+
+    /**
+     * @return les classes de {@code classes} qui ne sont dans la fermeture d'aucun test (ni un test)
+     */
+    public Set<String> findUnreached(Collection<String> classes) {
+        // Le moteur ne parcourt que ce qui est atteignable depuis les tests : l'union des
+        // lignes est exactement l'ensemble des sommets qu'il a visites.
+        Set<String> testSet = new HashSet<>(tests);
+        Set<String> unreached = new HashSet<>();
+        for (String className : classes) {
+            int id = graph.getId(className);
+            boolean isReached = id >= 0 && engine.closureOf(id) != null;
+            if (!isReached && !testSet.contains(className)) {
+                unreached.add(className);
+            }
+        }
+        return unreached;
+    }
+
+    /**
+     * Vue {@code test -> fermeture} pour le code qui attend une Map (format CLZ, ecriture
+     * du graphe de fermetures) : les valeurs sont des vues en lecture seule, rien n'est copie.
+     */
+    public Map<String, Set<String>> asMap() {
+        if (map == null) {
+            Map<String, Set<String>> views = new HashMap<>(tests.size() * 4 / 3 + 1);
+            for (int i = 0; i < rows.length; i++) {
+                String test = tests.get(i);
+                views.put(test, rows[i] == null ? Set.of(test) : new ClosureSet(graph, engine, rows[i]));
+            }
+            map = Collections.unmodifiableMap(views);
+        }
+        return map;
+    }
+}
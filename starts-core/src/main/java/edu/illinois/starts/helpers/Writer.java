@@ -8,6 +8,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -17,16 +18,18 @@ import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import edu.illinois.starts.constants.StartsConstants;
-import edu.illinois.starts.data.ZLCData;
+import edu.illinois.starts.data.CsrGraph;
 import edu.illinois.starts.data.ZLCFileContent;
-import edu.illinois.starts.data.ZLCFormat;
 import edu.illinois.starts.util.Logger;
 import edu.illinois.starts.util.Pair;
 import edu.illinois.yasgl.DirectedGraph;
@@ -65,17 +68,9 @@ public class Writer implements StartsConstants {
     }
 
     public static void writeToFile(ZLCFileContent zlcFileContent, String filename) {
-        try (BufferedWriter writer = getWriter(filename)) {
-            writer.write(zlcFileContent.getFormat() + System.lineSeparator());
-            if (zlcFileContent.getFormat() == ZLCFormat.INDEXED) {
-                writer.write(zlcFileContent.getTestsCount() + System.lineSeparator());
-                for (String test: zlcFileContent.getTests()) {
-                    writer.write(test + System.lineSeparator());
-                }
-            }
-            for (ZLCData zlcData: zlcFileContent.getZlcData()) {
-                writer.write(zlcData + System.lineSeparator());
-            }
+        try {
+            ZLCWriter.write(new File(filename), zlcFileContent.getFormat(), zlcFileContent.getHashAlgorithm(),
+                    zlcFileContent.getTests(), ZLCWriter.of(zlcFileContent.getZlcData()));
         } catch (IOException ioe) {
             ioe.printStackTrace();
         }
@@ -154,6 +149,34 @@ public class Writer implements StartsConstants {
         }
     }
 
+    /**
+     * Same as {@link #writeGraph(DirectedGraph, String, boolean, String)} for the CSR graph.
+     */
+    public static void writeGraph(CsrGraph graph, String artifactsDir, boolean print, String graphFile) {
+        if (print) {
+            String outFilename = artifactsDir + File.separator + graphFile;
+            try (BufferedWriter writer = getWriter(outFilename)) {
+                if (graph == null) {
+                    writer.write(EMPTY);
+                    return;
+                }
+                int[] offsets = graph.getForwardOffsets();
+                int[] targets = graph.getForwardTargets();
+                for (int v = 0; v < graph.getVertexCount(); v++) {
+                    String source = graph.getName(v);
+                    for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                        writer.write(source);
+                        writer.write(WHITE_SPACE);
+                        writer.write(graph.getName(targets[i]));
+                        writer.write(System.lineSeparator());
+                    }
+                }
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+        }
+    }
+
     public static void writeDepsToFile(Map<String, Set<String>> deps, String fileName) {
         try (BufferedWriter writer = getWriter(fileName)) {
             for (String key : deps.keySet()) {
@@ -267,23 +290,28 @@ public class Writer implements StartsConstants {
     }
 
     /**
-     * Compute the checksum for the given map and return the jar
-     * and the checksum as a string.
+     * Compute the checksum for the given jar and return the jar and the checksum as a string.
+     * For a jar, only the central directory is read: the checksum covers the name, CRC-32
+     * and size of every entry, so a re-packaged jar with the same content keeps its checksum.
+     * Other files are hashed in full.
      *
      * @param jar  The jar whose checksum we need to compute.
      */
     public static Pair<String, String> getJarToChecksumMapping(String jar) {
         Pair<String, String> pair = new Pair<>(jar, "-1");
-        byte[] bytes;
-        int bufSize = 65536 * 2;
         try {
             MessageDigest md = MessageDigest.getInstance("MD5");
-            InputStream is = Files.newInputStream(Paths.get(jar));
-            bytes = new byte[bufSize];
-            int size = is.read(bytes, 0, bufSize);
-            while (size >= 0) {
-                md.update(bytes, 0, size);
-                size = is.read(bytes, 0, bufSize);
+            if (!updateWithCentralDirectory(md, jar)) {
+                byte[] bytes;
+                int bufSize = 65536 * 2;
+                try (InputStream is = Files.newInputStream(Paths.get(jar))) {
+                    bytes = new byte[bufSize];
+                    int size = is.read(bytes, 0, bufSize);
+                    while (size >= 0) {
+                        md.update(bytes, 0, size);
+                        size = is.read(bytes, 0, bufSize);
+                    }
+                }
             }
             pair.setValue(Hex.encodeHexString(md.digest()));
         } catch (IOException ioe) {
@@ -294,6 +322,28 @@ public class Writer implements StartsConstants {
         return pair;
     }
 
+    /** @return false if {@code jar} is not a readable zip archive */
+    private static boolean updateWithCentralDirectory(MessageDigest md, String jar) {
+        if (!Files.isRegularFile(Paths.get(jar))) {
+            return false;
+        }
+        try (ZipFile zip = new ZipFile(jar)) {
+            ByteBuffer numbers = ByteBuffer.allocate(2 * Long.BYTES);
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                md.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+                numbers.clear();
+                numbers.putLong(entry.getCrc()).putLong(entry.getSize());
+                md.update(numbers.array());
+            }
+            return true;
+        } catch (IOException ioe) {
+            md.reset();
+            return false;
+        }
+    }
+
     /**
      * Convert the result of URL.toExternalForm() on classes in the program to a fully-qualified name.
      * @param url External form of the URL to convert
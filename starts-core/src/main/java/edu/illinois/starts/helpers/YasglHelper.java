@@ -17,6 +17,7 @@ import java.util.Set;
 import java.util.zip.GZIPInputStream;
 
 import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.data.CsrGraph;
 import edu.illinois.yasgl.DirectedGraph;
 import edu.illinois.yasgl.DirectedGraphBuilder;
 import edu.illinois.yasgl.GraphVertexVisitor;
@@ -45,6 +46,14 @@ public class YasglHelper implements StartsConstants {
         return reachable;
     }
 
+    public static Set<String> computeReachabilityFromChangedClasses(Set<String> changed, CsrGraph graph) {
+        return graph.acceptForward(changed);
+    }
+
+    public static Set<String> reverseReachabilityFromChangedClasses(Set<String> changed, CsrGraph graph) {
+        return graph.acceptBackward(changed);
+    }
+
     public static void readZipToBuilder(File graphFile, DirectedGraphBuilder<String> builder) throws IOException {
         FileInputStream fis = new FileInputStream(graphFile);
         GZIPInputStream gzis = new GZIPInputStream(fis);
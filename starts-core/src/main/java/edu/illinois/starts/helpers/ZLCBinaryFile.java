@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.illinois.starts.data.ZLCFileContent;
+import edu.illinois.starts.enums.HashAlgorithm;
+
+/**
+ * deps.zlc au format binaire (ZLCFormat.BINARY).
+ *
+ * <pre>
+ * "ZLCB" version algorithme (taille varint, UTF-8 ; absent en version 1 : LEGACY)
+ * chaines   : n, puis n x (taille varint, UTF-8)  (prefixes d'URL, chemins de classes, noms de tests)
+ * tests     : n, puis n x varint (index de chaine)
+ * checksums : 0 = long sur 8 octets, 1 = chaine
+ * lignes    : n
+ * index     : n x (cle : int, offset : int), trie par cle (chemin de la classe)
+ * donnees   : par ligne, prefixe varint, cle varint, checksum, taille varint de la
+ *             liste de tests, puis les index de tests en deltas varint
+ * </pre>
+ *
+ * <p>Une URL est decoupee en prefixe (repertoire de classes ou JAR) et chemin de
+ * la classe : les prefixes sont partages par toutes les classes d'un module.
+ * L'index trie permet de retrouver la ligne d'une classe par recherche
+ * dichotomique, et la taille de la liste de tests permet de sauter celles des
+ * lignes dont le checksum n'a pas change.
+ */
+public class ZLCBinaryFile {
+    private static final byte[] MAGIC = {'Z', 'L', 'C', 'B'};
+    private static final int VERSION = 2;
+    private static final int LEGACY_VERSION = 1;
+    private static final int LONG_CHECKSUMS = 0;
+    private static final int STRING_CHECKSUMS = 1;
+    private static final int INDEX_ENTRY_SIZE = 8;
+
+    private final ByteBuffer buffer;
+    private final HashAlgorithm hashAlgorithm;
+    private final String[] strings;
+    private final String[] tests;
+    private final boolean longChecksums;
+    private final int rowCount;
+    private final int indexStart;
+
+    private ZLCBinaryFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        for (byte b : MAGIC) {
+            if (buffer.get() != b) {
+                throw new IOException("Not a binary ZLC file");
+            }
+        }
+        int version = buffer.getInt();
+        if (version == LEGACY_VERSION) {
+            hashAlgorithm = HashAlgorithm.LEGACY;
+        } else if (version == VERSION) {
+            try {
+                hashAlgorithm = HashAlgorithm.valueOf(readString(buffer));
+            } catch (IllegalArgumentException iae) {
+                throw new IOException("Unknown hash algorithm in binary ZLC", iae);
+            }
+        } else {
+            throw new IOException("Unsupported binary ZLC version: " + version);
+        }
+        strings = new String[readVarint(buffer)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(buffer);
+        }
+        tests = new String[readVarint(buffer)];
+        for (int i = 0; i < tests.length; i++) {
+            tests[i] = strings[readVarint(buffer)];
+        }
+        longChecksums = buffer.get() == LONG_CHECKSUMS;
+        rowCount = readVarint(buffer);
+        indexStart = buffer.position();
+    }
+
+    /** Vrai si {@code file} commence par l'en-tete du format binaire. */
+    public static boolean isBinary(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            byte[] start = new byte[MAGIC.length];
+            return in.read(start) == MAGIC.length && Arrays.equals(start, MAGIC);
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    /** Projette le fichier en memoire ; seuls la table de chaines et les tests sont decodes. */
+    public static ZLCBinaryFile open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new ZLCBinaryFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public String[] getTests() {
+        return tests;
+    }
+
+    /** Algorithme des checksums du fichier. */
+    public HashAlgorithm getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /** URL de la ligne {@code row} (dans l'ordre de l'index). */
+    public String getUrl(int row) {
+        ByteBuffer data = rowData(row);
+        String prefix = strings[readVarint(data)];
+        return prefix + strings[readVarint(data)];
+    }
+
+    public String getChecksum(int row) {
+        ByteBuffer data = rowData(row);
+        readVarint(data);
+        readVarint(data);
+        return readChecksum(data);
+    }
+
+    /** Index des tests de la ligne {@code row} ; decode seulement a la demande. */
+    public BitSet getTests(int row) {
+        ByteBuffer data = rowData(row);
+        readVarint(data);
+        readVarint(data);
+        readChecksum(data);
+        int end = readVarint(data) + data.position();
+        BitSet bits = new BitSet(tests.length);
+        int index = -1;
+        while (data.position() < end) {
+            index += readVarint(data) + 1;
+            bits.set(index);
+        }
+        return bits;
+    }
+
+    /**
+     * @param classPath chemin de la classe dans l'URL, par ex. {@code a/b/C.class}
+     * @return la premiere ligne de cette classe (dans l'ordre de l'index), -1 si absente
+     */
+    public int find(String classPath) {
+        int low = 0;
+        int high = rowCount - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = strings[buffer.getInt(indexStart + mid * INDEX_ENTRY_SIZE)].compareTo(classPath);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                if (cmp == 0) {
+                    found = mid;
+                }
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private ByteBuffer rowData(int row) {
+        ByteBuffer data = buffer.duplicate();
+        data.position(buffer.getInt(indexStart + row * INDEX_ENTRY_SIZE + 4));
+        return data;
+    }
+
+    private String readChecksum(ByteBuffer data) {
+        if (longChecksums) {
+            return Long.toString(data.getLong());
+        }
+        return readString(data);
+    }
+
+    /**
+     * Ecrit {@code content} dans {@code filename} (fichier temporaire puis renommage).
+     */
+    public static void write(ZLCFileContent content, String filename) throws IOException {
+        write(new File(filename), content.getHashAlgorithm(), content.getTests(),
+                ZLCWriter.of(content.getZlcData()));
+    }
+
+    /**
+     * Ecrit les lignes au fil de l'eau, sans garder leurs donnees en memoire : la place de
+     * l'index est reservee apres l'en-tete, et l'index (trie par cle) n'y est ecrit qu'a la fin,
+     * avec les offsets des lignes. Fichier temporaire puis renommage.
+     */
+    static void write(File target, HashAlgorithm algorithm, List<String> tests, ZLCWriter.Rows rows)
+            throws IOException {
+        int rowCount = rows.size();
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int[] prefixes = new int[rowCount];
+        int[] keys = new int[rowCount];
+        boolean longChecksums = true;
+        for (int i = 0; i < rowCount; i++) {
+            String url = rows.url(i);
+            int split = splitUrl(url);
+            prefixes[i] = intern(url.substring(0, split), ids, strings);
+            keys[i] = intern(url.substring(split), ids, strings);
+            longChecksums &= isLong(rows.checksum(i));
+        }
+        int[] testIds = new int[tests.size()];
+        for (int i = 0; i < testIds.length; i++) {
+            testIds[i] = intern(tests.get(i), ids, strings);
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, algorithm.name());
+        writeVarint(out, strings.size());
+        for (String s : strings) {
+            writeString(out, s);
+        }
+        writeVarint(out, testIds.length);
+        for (int id : testIds) {
+            writeVarint(out, id);
+        }
+        out.writeByte(longChecksums ? LONG_CHECKSUMS : STRING_CHECKSUMS);
+        writeVarint(out, rowCount);
+        int dataStart = header.size() + rowCount * INDEX_ENTRY_SIZE;
+
+        Path path = target.toPath();
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Path tmp = path.resolveSibling(target.getName() + ".tmp");
+        int[] offsets = new int[rowCount];
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(channel, ByteBuffer.wrap(header.toByteArray()), 0);
+                channel.position(dataStart);
+                DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(
+                        Channels.newOutputStream(channel), 1 << 16));
+                ByteArrayOutputStream testList = new ByteArrayOutputStream();
+                DataOutputStream testOut = new DataOutputStream(testList);
+                for (int row = 0; row < rowCount; row++) {
+                    offsets[row] = dataStart + dataOut.size();
+                    writeVarint(dataOut, prefixes[row]);
+                    writeVarint(dataOut, keys[row]);
+                    if (longChecksums) {
+                        dataOut.writeLong(Long.parseLong(rows.checksum(row)));
+                    } else {
+                        writeString(dataOut, rows.checksum(row));
+                    }
+                    testList.reset();
+                    BitSet bits = rows.tests(row);
+                    int previous = -1;
+                    for (int idx = bits.nextSetBit(0); idx >= 0; idx = bits.nextSetBit(idx + 1)) {
+                        writeVarint(testOut, idx - previous - 1);
+                        previous = idx;
+                    }
+                    writeVarint(dataOut, testList.size());
+                    testList.writeTo(dataOut);
+                }
+                dataOut.flush();
+                writeFully(channel, index(keys, offsets, strings), header.size());
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+    }
+
+    /** Ecrit tout {@code buffer} a partir de {@code position} : un write peut en ecrire moins. */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /** Entrees (cle, offset) triees par chemin de classe, sans boxer les numeros de lignes. */
+    private static ByteBuffer index(int[] keys, int[] offsets, List<String> strings) {
+        String[] sortedKeys = new String[keys.length];
+        for (int row = 0; row < keys.length; row++) {
+            sortedKeys[row] = strings.get(keys[row]);
+        }
+        Arrays.sort(sortedKeys);
+        // rang de la cle (premiere occurrence parmi les cles triees) << 32 | ligne : l'ordre suit la cle
+        long[] order = new long[keys.length];
+        for (int row = 0; row < keys.length; row++) {
+            int rank = firstIndexOf(sortedKeys, strings.get(keys[row]));
+            order[row] = (long) rank << 32 | row;
+        }
+        Arrays.sort(order);
+        ByteBuffer index = ByteBuffer.allocate(keys.length * INDEX_ENTRY_SIZE);
+        for (long entry : order) {
+            int row = (int) entry;
+            index.putInt(keys[row]).putInt(offsets[row]);
+        }
+        index.flip();
+        return index;
+    }
+
+    private static int firstIndexOf(String[] sorted, String key) {
+        int low = 0;
+        int high = sorted.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Debut du chemin de la classe : apres "!/" (JAR), "/classes/" ou "/test-classes/", sinon le dernier '/'. */
+    static int splitUrl(String url) {
+        int jar = url.lastIndexOf("!/");
+        if (jar >= 0) {
+            return jar + 2;
+        }
+        int testClasses = url.lastIndexOf("/test-classes/");
+        if (testClasses >= 0) {
+            return testClasses + "/test-classes/".length();
+        }
+        int classes = url.lastIndexOf("/classes/");
+        if (classes >= 0) {
+            return classes + "/classes/".length();
+        }
+        return url.lastIndexOf('/') + 1;
+    }
+
+    private static int intern(String s, Map<String, Integer> ids, List<String> strings) {
+        Integer id = ids.get(s);
+        if (id == null) {
+            id = strings.size();
+            ids.put(s, id);
+            strings.add(s);
+        }
+        return id;
+    }
+
+    private static boolean isLong(String checksum) {
+        try {
+            // Seulement si la relecture redonne exactement la meme chaine
+            return Long.toString(Long.parseLong(checksum)).equals(checksum);
+        } catch (NumberFormatException nfe) {
+            return false;
+        }
+    }
+
+    static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] utf = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, utf.length);
+        out.write(utf);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] utf = new byte[readVarint(in)];
+        in.get(utf);
+        return new String(utf, StandardCharsets.UTF_8);
+    }
+}
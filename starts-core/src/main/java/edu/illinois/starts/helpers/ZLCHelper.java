@@ -4,16 +4,21 @@
 
 package edu.illinois.starts.helpers;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.net.URLDecoder;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -24,9 +29,13 @@ import edu.illinois.starts.constants.StartsConstants;
 import edu.illinois.starts.data.ZLCData;
 import edu.illinois.starts.data.ZLCFileContent;
 import edu.illinois.starts.data.ZLCFormat;
+import edu.illinois.starts.enums.HashAlgorithm;
+import edu.illinois.starts.util.ChecksumEngine;
 import edu.illinois.starts.util.ChecksumUtil;
+import edu.illinois.starts.util.ClassHasher;
 import edu.illinois.starts.util.Logger;
 import edu.illinois.starts.util.Pair;
+import edu.illinois.starts.util.StatIndex;
 import org.ekstazi.util.Types;
 
 /**
@@ -36,63 +45,204 @@ public class ZLCHelper implements StartsConstants {
     public static ArrayList<String> testsList;
     public static final String zlcFile = "deps.zlc";
     public static final String STAR_FILE = "file:*";
+    /** Taille et date des fichiers checksummes, voir {@link StatIndex}. */
+    public static final String STAT_INDEX_FILE = "deps.stat";
+    /**
+     * Place d'un test supprime dans la table des tests (INDEXED, BINARY) : les index des autres
+     * tests restent valides jusqu'au prochain compactage.
+     */
+    public static final String REMOVED_TEST = "";
+    /** La table des tests est compactee quand plus d'un index sur {@value} est celui d'un test supprime. */
+    private static final int COMPACT_RATIO = 4;
     private static final Logger LOGGER = Logger.getGlobal();
     private static final String NOEXISTING_ZLCFILE_FIRST_RUN = "@NoExistingZLCFile. First Run?";
 
     public ZLCHelper() {
     }
 
-// TODO: Uncomment and fix this method. The problem is that it does not track newly added tests correctly
-//    public static void updateZLCFile(Map<String, Set<String>> testDeps, ClassLoader loader,
-//                                     String artifactsDir, Set<String> changed) {
-//        long start = System.currentTimeMillis();
-//        File file = new File(artifactsDir, zlcFile);
-//        if (! file.exists()) {
-//            Set<ZLCData> zlc = createZLCData(testDeps, loader);
-//            Writer.writeToFile(zlc, zlcFile, artifactsDir);
-//        } else {
-//            Set<ZLCData> zlcData = new HashSet<>();
-//            if (zlcDataMap != null) {
-//                for (ZLCData data : zlcDataMap.values()) {
-//                    String extForm = data.getUrl().toExternalForm();
-//                    if (changed.contains(extForm)) {
-//                         we need to update tests for this zlcData before adding
-//                        String fqn = Writer.toFQN(extForm);
-//                        Set<String> tests = new HashSet<>();
-//                        if (testDeps.keySet().contains(fqn)) {
-//                             a test class changed, it affects on itself
-//                            tests.add(fqn);
-//                        }
-//                        for (String test : testDeps.keySet()) {
-//                            if (testDeps.get(test).contains(fqn)) tests.add(test);
-//                        }
-//                        if (tests.isEmpty()) {
-//                             this dep no longer has ant tests depending on it???
-//                            continue;
-//                        }
-//                        data.setTests(tests);
-//                    }
-//                    zlcData.add(data);
-//                }
-//            }
-//            Writer.writeToFile(zlcData, zlcFile, artifactsDir);
-//        }
-//        long end = System.currentTimeMillis();
-//        System.out.println(TIME_UPDATING_CHECKSUMS + (end - start) + MS);
-//    }
-
     public static void updateZLCFile(Map<String, Set<String>> testDeps, ClassLoader loader,
                                      String artifactsDir, Set<String> unreached, boolean useThirdParty,
                                      ZLCFormat format) {
-        // TODO: Optimize this by only recomputing the checksum+tests for changed classes and newly added tests
         long start = System.currentTimeMillis();
         LOGGER.log(Level.FINE, "ZLC format: " + format.toString());
-        ZLCFileContent zlc = createZLCData(testDeps, loader, useThirdParty, format);
-        Writer.writeToFile(zlc, zlcFile, artifactsDir);
+        writeZLC(trackedDeps(testDeps, loader, useThirdParty), format, new ChecksumEngine(true), artifactsDir);
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "[PROFILE] updateForNextRun(updateZLCFile): " + Writer.millsToSeconds(end - start));
+    }
+
+    /**
+     * Comme {@link #updateZLCFile(Map, ClassLoader, String, Set, boolean, ZLCFormat)}, directement depuis
+     * les fermetures en bitmaps (sans passer par une Map de Set de noms).
+     */
+    public static void updateZLCFile(TestDependencyMatrix testDeps, ClassLoader loader,
+                                     String artifactsDir, Set<String> unreached, boolean useThirdParty,
+                                     ZLCFormat format) {
+        updateZLCFile(testDeps, loader, artifactsDir, unreached, useThirdParty, format, false);
+    }
+
+    /**
+     * @param useStatIndex reprendre le checksum des fichiers dont la taille et la date n'ont pas change ;
+     *                     sinon tout est recalcule. Dans les deux cas l'index est mis a jour.
+     */
+    public static void updateZLCFile(TestDependencyMatrix testDeps, ClassLoader loader,
+                                     String artifactsDir, Set<String> unreached, boolean useThirdParty,
+                                     ZLCFormat format, boolean useStatIndex) {
+        long start = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "ZLC format: " + format.toString());
+        File statFile = new File(artifactsDir, STAT_INDEX_FILE);
+        StatIndex statIndex = useStatIndex ? StatIndex.load(statFile, true) : new StatIndex(true);
+        TrackedDeps tracked = trackedDeps(testDeps, loader, useThirdParty);
+        // Sans index, les checksums deja calcules dans le build ne sont pas repris non plus : tout
+        // est recalcule et enregistre dans le nouvel index
+        writeZLC(tracked, format, new ChecksumEngine(statIndex, useStatIndex), artifactsDir);
+        Set<String> urls = new HashSet<>();
+        for (URL url : tracked.urls) {
+            urls.add(url.toExternalForm());
+        }
+        statIndex.retainAll(urls);
+        statIndex.save(statFile);
         long end = System.currentTimeMillis();
         LOGGER.log(Level.FINE, "[PROFILE] updateForNextRun(updateZLCFile): " + Writer.millsToSeconds(end - start));
     }
 
+    /**
+     * @return true si deps.zlc peut etre mis a jour par
+     *         {@link #updateZLCFileIncrementally} : il existe, dans le format {@code format} et avec
+     *         l'algorithme de checksum courant
+     */
+    public static boolean canUpdateIncrementally(String artifactsDir, ZLCFormat format) {
+        File zlc = new File(artifactsDir, zlcFile);
+        if (!zlc.exists()) {
+            return false;
+        }
+        try {
+            if (ZLCBinaryFile.isBinary(zlc)) {
+                return format == ZLCFormat.BINARY
+                        && ZLCBinaryFile.open(zlc).getHashAlgorithm() == ClassHasher.getDefaultAlgorithm();
+            }
+            try (BufferedReader reader = Files.newBufferedReader(zlc.toPath(), Charset.defaultCharset())) {
+                TextHeader header = readTextHeader(reader);
+                return header.format == format && header.hashAlgorithm == ClassHasher.getDefaultAlgorithm();
+            }
+        } catch (IOException | RuntimeException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Met a jour deps.zlc a partir du precedent, sans le reconstruire.
+     *
+     * <p>La fermeture d'un test non affecte ne contient aucune classe modifiee : elle n'a pas change,
+     * et ses index dans les lignes sont conserves tels quels. Seuls changent :
+     * <ul>
+     *   <li>les index des tests de {@code testDeps} (affectes ou nouveaux), retires de toutes les
+     *       lignes puis remis d'apres leur nouvelle fermeture ; un nouveau test est ajoute en fin
+     *       de table ;</li>
+     *   <li>les tests qui n'existent plus, remplaces par {@link #REMOVED_TEST} (la table n'est
+     *       compactee que lorsque ces places deviennent trop nombreuses) ;</li>
+     *   <li>le checksum des lignes de {@code changed} et des nouvelles lignes, seuls recalcules ;
+     *       les lignes qui n'ont plus de test, ou dont la classe n'existe plus, disparaissent.</li>
+     * </ul>
+     *
+     * @param testDeps fermetures des tests affectes et des nouveaux tests uniquement
+     * @param allTests tous les tests du module
+     * @param changed  URLs des classes modifiees depuis l'ecriture du ZLC (resultat du diff)
+     * @return false si le ZLC precedent n'a pas pu etre relu : il faut le reconstruire
+     */
+    public static boolean updateZLCFileIncrementally(TestDependencyMatrix testDeps, List<String> allTests,
+                                                     Set<String> changed, ClassLoader loader, String artifactsDir,
+                                                     boolean useThirdParty, ZLCFormat format,
+                                                     boolean useStatIndex) {
+        long start = System.currentTimeMillis();
+        ZLCTable table;
+        try {
+            table = ZLCTable.load(new File(artifactsDir, zlcFile), format);
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "Cannot read " + zlcFile + " for an incremental update: " + ex);
+            return false;
+        }
+        if (table == null) {
+            return false;
+        }
+        // 1) Index des tests : supprimes -> REMOVED_TEST, nouveaux en fin de table
+        BitSet cleared = new BitSet(table.tests.size());
+        Set<String> current = new HashSet<>(allTests);
+        int removedTests = 0;
+        for (int i = 0; i < table.tests.size(); i++) {
+            String test = table.tests.get(i);
+            if (!test.equals(REMOVED_TEST) && !current.contains(test)) {
+                table.remove(i);
+                cleared.set(i);
+                removedTests++;
+            }
+        }
+        List<String> refreshed = testDeps.getTests();
+        int[] indexOf = new int[refreshed.size()];
+        for (int i = 0; i < refreshed.size(); i++) {
+            indexOf[i] = table.indexOf(refreshed.get(i));
+            cleared.set(indexOf[i]);
+        }
+        for (ZLCRow row : table.rows.values()) {
+            row.tests.andNot(cleared);
+        }
+
+        // 2) Nouvelles fermetures, dans les lignes existantes ou de nouvelles lignes
+        List<URL> urls = new ArrayList<>();
+        List<BitSet> testsOfUrls = new ArrayList<>();
+        testDeps.forEachColumn((dep, tests) -> addTrackedDep(urls, testsOfUrls, dep, tests, loader, useThirdParty));
+        Set<String> toHash = new HashSet<>();
+        for (int i = 0; i < urls.size(); i++) {
+            String url = urls.get(i).toExternalForm();
+            ZLCRow row = table.rows.computeIfAbsent(url, k -> new ZLCRow(null, new BitSet()));
+            if (row.checksum == null) {
+                toHash.add(url);
+            }
+            BitSet tests = testsOfUrls.get(i);
+            for (int idx = tests.nextSetBit(0); idx >= 0; idx = tests.nextSetBit(idx + 1)) {
+                row.tests.set(indexOf[idx]);
+            }
+        }
+        int newRows = toHash.size();
+
+        // 3) Checksums des seules classes modifiees ou nouvelles
+        for (String url : changed) {
+            if (table.rows.containsKey(url)) {
+                toHash.add(url);
+            }
+        }
+        File statFile = new File(artifactsDir, STAT_INDEX_FILE);
+        // Sans index, celui du dernier calcul complet reste en place (seules quelques lignes sont recalculees)
+        StatIndex statIndex = useStatIndex ? StatIndex.load(statFile, true) : null;
+        ChecksumEngine checksumEngine = statIndex == null ? new ChecksumEngine(true) : new ChecksumEngine(statIndex);
+        Map<String, String> checksums = checksumEngine.computeAll(toHash);
+        for (String url : toHash) {
+            table.rows.get(url).checksum = checksums.get(url);
+        }
+        table.rows.values().removeIf(row -> row.tests.isEmpty() || "-1".equals(row.checksum));
+        boolean compacted = table.removed > 0
+                && (format == ZLCFormat.PLAIN_TEXT || table.removed * COMPACT_RATIO > table.tests.size());
+        if (compacted) {
+            table.compact();
+        }
+
+        try {
+            ZLCWriter.write(new File(artifactsDir, zlcFile), format, checksumEngine.getAlgorithm(), table.tests,
+                    table.toRows());
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+        if (statIndex != null) {
+            statIndex.retainAll(table.rows.keySet());
+            statIndex.save(statFile);
+        }
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "[PROFILE] updateForNextRun(updateZLCFileIncrementally(tests=" + refreshed.size()
+                + ", removedTests=" + removedTests + ", newRows=" + newRows + ", checksums=" + toHash.size()
+                + ", rows=" + table.rows.size() + ", compacted=" + compacted + ")): "
+                + Writer.millsToSeconds(end - start));
+        return true;
+    }
+
     public static ZLCFileContent createZLCData(
             Map<String, Set<String>> testDeps,
             ClassLoader loader,
@@ -100,7 +250,15 @@ public class ZLCHelper implements StartsConstants {
             ZLCFormat format
     ) {
         long start = System.currentTimeMillis();
+        TrackedDeps tracked = trackedDeps(testDeps, loader, useJars);
+        List<ZLCData> zlcData = toZLCData(tracked.urls, tracked.testsOfUrls, tracked.tests, format, null);
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINEST, "[TIME]CREATING ZLC FILE: " + (end - start) + MILLISECOND);
+        return new ZLCFileContent(tracked.tests, zlcData, format, ClassHasher.getDefaultAlgorithm());
+    }
 
+    private static TrackedDeps trackedDeps(Map<String, Set<String>> testDeps, ClassLoader loader,
+                                           boolean useJars) {
         // 1) Liste stable des tests (ordre = indices)
         ArrayList<String> testList = new ArrayList<>(testDeps.keySet());
 
@@ -118,69 +276,139 @@ public class ZLCHelper implements StartsConstants {
             }
         }
 
-        // 3) Pour chaque dep connue, calculer (URL, checksum) et matérialiser selon le format
-        ChecksumUtil checksumUtil = new ChecksumUtil(true);
-        List<ZLCData> zlcData = new ArrayList<>(depToTests.size());
-
+        // 3) Pour chaque dep connue, son URL (les checksums sont calcules en un seul lot ensuite)
+        TrackedDeps tracked = new TrackedDeps(testList);
         for (Map.Entry<String, BitSet> e : depToTests.entrySet()) {
-            String dep = e.getKey();
-            String klas = ChecksumUtil.toClassName(dep);
-            if (Types.isIgnorableInternalName(klas)) {
-                continue;
+            tracked.add(e.getKey(), e.getValue(), loader, useJars);
+        }
+        return tracked;
+    }
+
+    /**
+     * Meme contenu que {@link #createZLCData(Map, ClassLoader, boolean, ZLCFormat)} : l'index inverse
+     * dep -> tests est la transposee de la matrice, obtenue en un seul passage sur les fermetures.
+     */
+    public static ZLCFileContent createZLCData(
+            TestDependencyMatrix testDeps,
+            ClassLoader loader,
+            boolean useJars,
+            ZLCFormat format
+    ) {
+        return createZLCData(testDeps, loader, useJars, format, null);
+    }
+
+    /** @param statIndex checksums des fichiers inchanges (mis a jour au passage), null pour tout recalculer */
+    public static ZLCFileContent createZLCData(
+            TestDependencyMatrix testDeps,
+            ClassLoader loader,
+            boolean useJars,
+            ZLCFormat format,
+            StatIndex statIndex
+    ) {
+        long start = System.currentTimeMillis();
+        TrackedDeps tracked = trackedDeps(testDeps, loader, useJars);
+        List<ZLCData> zlcData = toZLCData(tracked.urls, tracked.testsOfUrls, tracked.tests, format, statIndex);
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINEST, "[TIME]CREATING ZLC FILE: " + (end - start) + MILLISECOND);
+        return new ZLCFileContent(tracked.tests, zlcData, format,
+                statIndex == null ? ClassHasher.getDefaultAlgorithm() : statIndex.getAlgorithm());
+    }
+
+    private static TrackedDeps trackedDeps(TestDependencyMatrix testDeps, ClassLoader loader, boolean useJars) {
+        TrackedDeps tracked = new TrackedDeps(testDeps.getTests());
+        testDeps.forEachColumn((dep, tests) -> tracked.add(dep, tests, loader, useJars));
+        return tracked;
+    }
+
+    /**
+     * Calcule les checksums en un seul lot puis ecrit deps.zlc en flux : le BitSet d'une ligne
+     * est libere des qu'elle est ecrite.
+     */
+    private static void writeZLC(TrackedDeps tracked, ZLCFormat format, ChecksumEngine checksumEngine,
+                                 String artifactsDir) {
+        Map<String, String> checksums = checksumEngine.computeAllUrls(tracked.urls);
+        ZLCWriter.Rows rows = new ZLCWriter.Rows() {
+            @Override
+            public int size() {
+                return tracked.urls.size();
             }
 
-            URL url = loader.getResource(klas);
-            if (url == null) {
-                continue;
+            @Override
+            public String url(int row) {
+                return tracked.urls.get(row).toExternalForm();
             }
 
-            String extForm = url.toExternalForm();
-            if (ChecksumUtil.isWellKnownUrl(extForm) || (!useJars && extForm.startsWith("jar:"))) {
-                continue;
+            @Override
+            public String checksum(int row) {
+                return checksums.get(url(row));
             }
-            // Filtre inter-module : ne checksummer dans les JARs que NOS modules
-            // (com.efluid, com.hermes, com.imrglobal). Les libs tierces (Spring,
-            // Apache, Hibernate, Jackson, jakarta...) ne changent pas entre deux
-            // runs : les checksummer serait du temps perdu et risquerait des
-            // sur-selections lors d'une montee de version. Les classes locales
-            // (file:) ne sont jamais filtrees.
-            if (extForm.startsWith("jar:") && !isOwnModuleClass(extForm)) {
-                continue;
+
+            @Override
+            public BitSet tests(int row) {
+                return tracked.testsOfUrls.set(row, null);
             }
+        };
+        try {
+            ZLCWriter.write(new File(artifactsDir, zlcFile), format, checksumEngine.getAlgorithm(), tracked.tests,
+                    rows);
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    /** Ajoute l'URL de {@code dep} et ses tests si c'est une classe suivie. */
+    private static void addTrackedDep(List<URL> urls, List<BitSet> testsOfUrls, String dep, BitSet tests,
+                                      ClassLoader loader, boolean useJars) {
+        String klas = ChecksumUtil.toClassName(dep);
+        if (Types.isIgnorableInternalName(klas)) {
+            return;
+        }
+
+        URL url = loader.getResource(klas);
+        if (url == null) {
+            return;
+        }
 
-            String checksum = checksumUtil.computeSingleCheckSum(url);
-            BitSet bits = e.getValue();
-            int expected = bits.cardinality();
+        String extForm = url.toExternalForm();
+        if (ChecksumUtil.isWellKnownUrl(extForm) || (!useJars && extForm.startsWith("jar:"))) {
+            return;
+        }
+        // Filtre inter-module : ne checksummer dans les JARs que NOS modules
+        // (com.efluid, com.hermes, com.imrglobal). Les libs tierces (Spring,
+        // Apache, Hibernate, Jackson, jakarta...) ne changent pas entre deux
+        // runs : les checksummer serait du temps perdu et risquerait des
+        // sur-selections lors d'une montee de version. Les classes locales
+        // (file:) ne sont jamais filtrees.
+        if (extForm.startsWith("jar:") && !isOwnModuleClass(extForm)) {
+            return;
+        }
+        urls.add(url);
+        testsOfUrls.add(tests);
+    }
 
+    /** Lignes du ZLC, avec les checksums de toutes les URLs calcules en un seul lot. */
+    private static List<ZLCData> toZLCData(List<URL> urls, List<BitSet> testsOfUrls, List<String> testList,
+                                           ZLCFormat format, StatIndex statIndex) {
+        ChecksumEngine checksumEngine = statIndex == null ? new ChecksumEngine(true) : new ChecksumEngine(statIndex);
+        Map<String, String> checksums = checksumEngine.computeAllUrls(urls);
+        List<ZLCData> zlcData = new ArrayList<>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            URL url = urls.get(i);
+            String checksum = checksums.get(url.toExternalForm());
             switch (format) {
                 case PLAIN_TEXT:
-                    // Matérialiser uniquement les Strings nécessaires
-                    Set<String> testsStr = new HashSet<>((int) (expected / 0.75f) + 1);
-                    // Astuce perf: matérialiser en tableau pour get(idx) très rapide
-                    String[] arr = testList.toArray(String[]::new);
-                    for (int idx = bits.nextSetBit(0); idx >= 0; idx = bits.nextSetBit(idx + 1)) {
-                        testsStr.add(arr[idx]);
-                    }
-                    zlcData.add(new ZLCData(url, checksum, format, testsStr, null));
-                    break;
                 case INDEXED:
-                    Set<Integer> testsIdx = new HashSet<>((int) (expected / 0.75f) + 1);
-                    for (int idx = bits.nextSetBit(0); idx >= 0; idx = bits.nextSetBit(idx + 1)) {
-                        testsIdx.add(idx); // boxing, mais une seule fois et sans contains()
-                    }
-                    zlcData.add(new ZLCData(url, checksum, format, null, testsIdx));
+                case BINARY:
+                    // Les noms de tests (PLAIN_TEXT) ne sont produits qu'a l'ecriture de la ligne
+                    zlcData.add(new ZLCData(url, checksum, format, testsOfUrls.get(i), testList));
                     break;
                 default:
                     throw new RuntimeException("Unexpected ZLCFormat");
             }
         }
-
-        long end = System.currentTimeMillis();
-        LOGGER.log(Level.FINEST, "[TIME]CREATING ZLC FILE: " + (end - start) + MILLISECOND);
-        return new ZLCFileContent(testList, zlcData, format);
+        return zlcData;
     }
 
-
     /**
      * Indique si une URL jar: pointe vers une classe d'un module maison
      * (com.efluid, com.hermes, com.imrglobal) plutot qu'une lib tierce.
@@ -193,6 +421,15 @@ public class ZLCHelper implements StartsConstants {
     }
 
     public static Pair<Set<String>, Set<String>> getChangedData(String artifactsDir, boolean cleanBytes) {
+        return getChangedData(artifactsDir, cleanBytes, false);
+    }
+
+    /**
+     * @param useStatIndex ne pas relire les fichiers dont la taille et la date n'ont pas change
+     *                     depuis leur dernier checksum (voir {@link StatIndex})
+     */
+    public static Pair<Set<String>, Set<String>> getChangedData(String artifactsDir, boolean cleanBytes,
+                                                                boolean useStatIndex) {
         long start = System.currentTimeMillis();
         File zlc = new File(artifactsDir, zlcFile);
         if (!zlc.exists()) {
@@ -203,118 +440,309 @@ public class ZLCHelper implements StartsConstants {
         Set<String> nonAffected = new HashSet<>();
         Set<String> affected = new HashSet<>();
         List<String> starTests = new ArrayList<>();
-        ChecksumUtil checksumUtil = new ChecksumUtil(cleanBytes);
+        File statFile = new File(artifactsDir, STAT_INDEX_FILE);
+        StatIndex statIndex = useStatIndex ? StatIndex.load(statFile, cleanBytes) : null;
+        ChecksumEngine checksumEngine = statIndex == null ? new ChecksumEngine(cleanBytes)
+                : new ChecksumEngine(statIndex);
         try {
-            List<String> zlcLines = Files.readAllLines(zlc.toPath(), Charset.defaultCharset());
-            String firstLine = zlcLines.get(0);
-            String space = WHITE_SPACE;
-
-            // check whether the first line is for *
-            if (firstLine.startsWith(STAR_FILE)) {
-                String[] parts = firstLine.split(space);
-                starTests = fromCSV(parts[2]);
-                zlcLines.remove(0);
-            }
-
-            ZLCFormat format = ZLCFormat.PLAIN_TEXT;  // default to plain text
-            if (zlcLines.get(0).equals(ZLCFormat.PLAIN_TEXT.toString())) {
-                format = ZLCFormat.PLAIN_TEXT;
-                zlcLines.remove(0);
-            } else if (zlcLines.get(0).equals(ZLCFormat.INDEXED.toString())) {
-                format = ZLCFormat.INDEXED;
-                zlcLines.remove(0);
-            }
-
-            int testsCount = -1;  // on PLAIN_TEXT, testsCount+1 will starts from 0
-            if (format == ZLCFormat.INDEXED) {
-                try {
-                    testsCount = Integer.parseInt(zlcLines.get(0));
-                } catch (NumberFormatException nfe) {
-                    nfe.printStackTrace();
+            if (ZLCBinaryFile.isBinary(zlc)) {
+                ZLCBinaryFile binary = ZLCBinaryFile.open(zlc);
+                if (isOtherAlgorithm(binary.getHashAlgorithm())) {
+                    return null;
+                }
+                String[] tests = binary.getTests();
+                testsList = new ArrayList<>(Arrays.asList(tests));
+                nonAffected.addAll(testsList);
+                List<String> urls = new ArrayList<>(binary.getRowCount());
+                for (int row = 0; row < binary.getRowCount(); row++) {
+                    urls.add(binary.getUrl(row));
                 }
-                testsList = new ArrayList<>(zlcLines.subList(1, testsCount + 1));
-                nonAffected.addAll(testsList); // Comme la liste des tests est indexé dans le fichier on la récupère tel quel.
-            }
-
-            for (int i = testsCount + 1; i < zlcLines.size(); i++) {
-                String line = zlcLines.get(i);
-                String[] parts = line.split(space);
-                String stringURL = parts[0];
-                String oldCheckSum = parts[1];
-                List<String> tests = null;
-                if (format == ZLCFormat.INDEXED) {
-                    BitSet testsBits = (parts.length == 3)
-                            ? fromCSVToBitSet(parts[2], testsList.size())
-                            : new BitSet();
-                    int expected = testsBits.cardinality();
-                    List<String> out = new ArrayList<>((int)(expected / 0.75f) + 1);
-
-                    String[] arr = testsList.toArray(String[]::new);
-
-                    for (int idx = testsBits.nextSetBit(0); idx >= 0; idx = testsBits.nextSetBit(idx + 1)) {
-                        // optionnel: borne si tu n'as pas garanti la validité des indices
-                        if (idx < arr.length) {
-                            out.add(arr[idx]);
+                Map<String, String> checksums = checksumEngine.computeAll(urls);
+                for (int row = 0; row < binary.getRowCount(); row++) {
+                    String stringURL = urls.get(row);
+                    if (!checksums.get(stringURL).equals(binary.getChecksum(row))) {
+                        // Les tests ne sont decodes que pour les lignes modifiees
+                        BitSet testsBits = binary.getTests(row);
+                        for (int idx = testsBits.nextSetBit(0); idx >= 0; idx = testsBits.nextSetBit(idx + 1)) {
+                            affected.add(tests[idx]);
                         }
+                        changedClasses.add(stringURL);
                     }
-                    tests = out;
-                } else {
-                    tests = parts.length == 3 ? fromCSV(parts[2]) : new ArrayList<>();
                 }
-                URL url = new URL(stringURL);
-                String newCheckSum = checksumUtil.computeSingleCheckSum(url);
-                if (!newCheckSum.equals(oldCheckSum)) {
-                    affected.addAll(tests);
-                    changedClasses.add(stringURL);
+            } else {
+                TextHeader header;
+                List<String> rows;
+                try (BufferedReader reader = Files.newBufferedReader(zlc.toPath(), Charset.defaultCharset())) {
+                    header = readTextHeader(reader);
+                    if (isOtherAlgorithm(header.hashAlgorithm)) {
+                        return null;
+                    }
+                    rows = readTextRows(header, reader);
                 }
-                if (newCheckSum.equals("-1")) {
-                    // a class was deleted or auto-generated, no need to track it in zlc
-                    LOGGER.log(Level.FINEST, "Ignoring: " + url);
-                    continue;
+                starTests = header.starTests;
+                if (header.format == ZLCFormat.INDEXED) {
+                    // Comme la liste des tests est indexee dans le fichier on la recupere telle quelle.
+                    testsList = new ArrayList<>(Arrays.asList(header.tests));
+                    nonAffected.addAll(testsList);
+                }
+                Map<String, String> checksums = checksumEngine.computeAll(urlsOf(rows));
+                for (String line : rows) {
+                    // Seuls l'URL et le checksum sont lus ; les tests ne sont decodes que si la classe a change
+                    int urlEnd = line.indexOf(' ');
+                    int checksumEnd = line.indexOf(' ', urlEnd + 1);
+                    String stringURL = line.substring(0, urlEnd);
+                    String oldCheckSum = checksumEnd < 0 ? line.substring(urlEnd + 1)
+                            : line.substring(urlEnd + 1, checksumEnd);
+                    String newCheckSum = checksums.get(stringURL);
+                    if (!newCheckSum.equals(oldCheckSum)) {
+                        if (checksumEnd >= 0) {
+                            addTests(line, checksumEnd + 1, header, affected);
+                        }
+                        changedClasses.add(stringURL);
+                    }
+                    if (newCheckSum.equals("-1")) {
+                        // a class was deleted or auto-generated, no need to track it in zlc
+                        LOGGER.log(Level.FINEST, "Ignoring: " + stringURL);
+                    }
                 }
             }
-        } catch (IOException ioe) {
-            ioe.printStackTrace();
+        } catch (IOException | NumberFormatException ex) {
+            ex.printStackTrace();
+        }
+        if (statIndex != null) {
+            statIndex.save(statFile);
         }
         if (!changedClasses.isEmpty()) {
             // there was some change so we need to add all tests that reach star, if any
             affected.addAll(starTests);
         }
         nonAffected.removeAll(affected);
+        nonAffected.remove(REMOVED_TEST);
         long end = System.currentTimeMillis();
         LOGGER.log(Level.FINEST, TIME_COMPUTING_NON_AFFECTED + (end - start) + MILLISECOND);
         return new Pair<>(nonAffected, changedClasses);
     }
 
-    private static List<String> fromCSV(String tests) {
-        return Arrays.asList(tests.split(COMMA));
+    /**
+     * Comme {@link #getChangedData} mais sans materialiser les tests de chaque ligne : seuls
+     * l'URL et le checksum sont lus. Pour la selection par graphe inverse.
+     *
+     * @return (classes modifiees (URL), tests qui atteignent *), ou null au premier run
+     */
+    public static Pair<Set<String>, List<String>> getChangedClasses(String artifactsDir, boolean cleanBytes) {
+        return getChangedClasses(artifactsDir, cleanBytes, false);
+    }
+
+    /** @param useStatIndex voir {@link #getChangedData(String, boolean, boolean)} */
+    public static Pair<Set<String>, List<String>> getChangedClasses(String artifactsDir, boolean cleanBytes,
+                                                                    boolean useStatIndex) {
+        long start = System.currentTimeMillis();
+        File zlc = new File(artifactsDir, zlcFile);
+        if (!zlc.exists()) {
+            LOGGER.log(Level.FINEST, NOEXISTING_ZLCFILE_FIRST_RUN);
+            return null;
+        }
+        Set<String> changedClasses = new HashSet<>();
+        List<String> starTests = new ArrayList<>();
+        File statFile = new File(artifactsDir, STAT_INDEX_FILE);
+        StatIndex statIndex = useStatIndex ? StatIndex.load(statFile, cleanBytes) : null;
+        ChecksumEngine checksumEngine = statIndex == null ? new ChecksumEngine(cleanBytes)
+                : new ChecksumEngine(statIndex);
+        try {
+            List<String> urls = new ArrayList<>();
+            List<String> oldCheckSums = new ArrayList<>();
+            if (ZLCBinaryFile.isBinary(zlc)) {
+                ZLCBinaryFile binary = ZLCBinaryFile.open(zlc);
+                if (isOtherAlgorithm(binary.getHashAlgorithm())) {
+                    return null;
+                }
+                for (int row = 0; row < binary.getRowCount(); row++) {
+                    urls.add(binary.getUrl(row));
+                    oldCheckSums.add(binary.getChecksum(row));
+                }
+            } else {
+                try (BufferedReader reader = Files.newBufferedReader(zlc.toPath(), Charset.defaultCharset())) {
+                    TextHeader header = readTextHeader(reader);
+                    if (isOtherAlgorithm(header.hashAlgorithm)) {
+                        return null;
+                    }
+                    starTests = header.starTests;
+                    for (String line : readTextRows(header, reader)) {
+                        int urlEnd = line.indexOf(' ');
+                        int checksumEnd = line.indexOf(' ', urlEnd + 1);
+                        urls.add(line.substring(0, urlEnd));
+                        oldCheckSums.add(checksumEnd < 0 ? line.substring(urlEnd + 1)
+                                : line.substring(urlEnd + 1, checksumEnd));
+                    }
+                }
+            }
+            Map<String, String> checksums = checksumEngine.computeAll(urls);
+            for (int i = 0; i < urls.size(); i++) {
+                if (!checksums.get(urls.get(i)).equals(oldCheckSums.get(i))) {
+                    changedClasses.add(urls.get(i));
+                }
+            }
+        } catch (IOException | NumberFormatException ex) {
+            ex.printStackTrace();
+        }
+        if (statIndex != null) {
+            statIndex.save(statFile);
+        }
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINEST, "[TIME]COMPUTING CHANGED CLASSES: " + (end - start) + MILLISECOND);
+        return new Pair<>(changedClasses, starTests);
+    }
+
+    /**
+     * Des checksums calcules avec un autre algorithme ne sont pas comparables : le ZLC est ignore
+     * comme au premier run (tous les tests), puis reecrit avec l'algorithme courant.
+     */
+    private static boolean isOtherAlgorithm(HashAlgorithm algorithm) {
+        if (algorithm == ClassHasher.getDefaultAlgorithm()) {
+            return false;
+        }
+        LOGGER.log(Level.INFO, "deps.zlc checksums were computed with " + algorithm + " instead of "
+                + ClassHasher.getDefaultAlgorithm() + ": all tests are affected");
+        return true;
     }
 
-    private static BitSet fromCSVToBitSet(CharSequence csv, int maxIndexExclusive) {
-        BitSet bs = new BitSet(maxIndexExclusive); // 1 bit par index
-        int csvlength = csv.length();
+    /** En-tete d'un ZLC texte : ligne *, ligne de format et, en INDEXED, la table des tests. */
+    private static final class TextHeader {
+        private List<String> starTests = new ArrayList<>();
+        private ZLCFormat format = ZLCFormat.PLAIN_TEXT;  // default to plain text
+        private HashAlgorithm hashAlgorithm = HashAlgorithm.LEGACY;
+        private String[] tests = new String[0];
+        /** Premiere ligne de donnees, deja lue (null si le fichier n'en contient pas). */
+        private String firstRow;
+    }
+
+    /**
+     * Lit l'en-tete et s'arrete sur la premiere ligne de donnees. La table des tests est
+     * convertie une seule fois en tableau, indexe directement par les lignes.
+     */
+    private static TextHeader readTextHeader(BufferedReader reader) throws IOException {
+        TextHeader header = new TextHeader();
+        String line = reader.readLine();
+        // check whether the first line is for *
+        if (line != null && line.startsWith(STAR_FILE)) {
+            String[] parts = line.split(WHITE_SPACE);
+            if (parts.length > 2) {
+                header.starTests = fromCSV(parts[2]);
+            }
+            line = reader.readLine();
+        }
+        // "FORMAT" ou "FORMAT ALGORITHME" (pas d'algorithme : LEGACY)
+        String formatName = line;
+        if (line != null && line.indexOf(' ') > 0) {
+            formatName = line.substring(0, line.indexOf(' '));
+            try {
+                header.hashAlgorithm = HashAlgorithm.valueOf(line.substring(line.indexOf(' ') + 1).trim());
+            } catch (IllegalArgumentException iae) {
+                formatName = line;
+            }
+        }
+        if (ZLCFormat.PLAIN_TEXT.toString().equals(formatName)) {
+            line = reader.readLine();
+        } else if (ZLCFormat.INDEXED.toString().equals(formatName)) {
+            header.format = ZLCFormat.INDEXED;
+            header.tests = new String[Integer.parseInt(reader.readLine().trim())];
+            for (int i = 0; i < header.tests.length; i++) {
+                header.tests[i] = reader.readLine();
+            }
+            line = reader.readLine();
+        }
+        header.firstRow = line;
+        return header;
+    }
+
+    /** Lignes de donnees restantes (la premiere a deja ete lue avec l'en-tete). */
+    private static List<String> readTextRows(TextHeader header, BufferedReader reader) throws IOException {
+        List<String> rows = new ArrayList<>();
+        for (String line = header.firstRow; line != null; line = reader.readLine()) {
+            if (!line.isEmpty()) {
+                rows.add(line);
+            }
+        }
+        return rows;
+    }
+
+    private static List<String> urlsOf(List<String> rows) {
+        List<String> urls = new ArrayList<>(rows.size());
+        for (String line : rows) {
+            urls.add(line.substring(0, line.indexOf(' ')));
+        }
+        return urls;
+    }
+
+    /** Ajoute a {@code out} les tests de la colonne qui commence en {@code from} dans {@code line}. */
+    private static void addTests(String line, int from, TextHeader header, Set<String> out) {
+        if (header.format != ZLCFormat.INDEXED) {
+            out.addAll(fromCSV(line.substring(from)));
+            return;
+        }
         int index = 0;
         boolean inNum = false;
-        for (int i = 0; i < csvlength; i++) {
-            char charAt = csv.charAt(i);
-            if (charAt == ',') {
-                if (inNum) {
-                    bs.set(index);
-                    index = 0;
-                    inNum = false;
+        for (int i = from; i <= line.length(); i++) {
+            char charAt = i < line.length() ? line.charAt(i) : ',';
+            if (charAt >= '0' && charAt <= '9') {
+                inNum = true;
+                index = index * 10 + (charAt - '0');
+            } else if (charAt == ',' && inNum) {
+                if (index < header.tests.length) {
+                    out.add(header.tests[index]);
                 }
-            } else {
-                // optionnel: ignorer espaces
-                if (charAt >= '0' && charAt <= '9') {
-                    inNum = true;
-                    index = index * 10 + (charAt - '0');
+                index = 0;
+                inNum = false;
+            }
+        }
+    }
+
+    /**
+     * Racines des URLs du ZLC : les repertoires de {@code classpath}, sous la forme des URLs
+     * qu'en donne le class loader ({@code file:/.../classes/}).
+     */
+    public static List<String> classpathRoots(Collection<String> classpath) {
+        List<String> roots = new ArrayList<>();
+        for (String path : classpath) {
+            File dir = new File(path);
+            if (dir.isDirectory()) {
+                roots.add(dir.toURI().toString());
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Nom de classe (binaire, avec $) d'une URL du ZLC : chemin relatif au JAR
+     * ({@code jar:file:...!/a/b/C.class}), ou a la plus longue des racines qui la contient
+     * ({@code file:/.../classes/a/b/C.class}).
+     *
+     * @param roots repertoires du classpath, voir {@link #classpathRoots(Collection)}
+     * @return null si l'URL n'est dans aucune racine
+     */
+    public static String urlToClassName(String url, Collection<String> roots) {
+        int start = url.lastIndexOf("!/");
+        if (start >= 0) {
+            start += 2;
+        } else {
+            for (String root : roots) {
+                if (url.startsWith(root) && root.length() > start) {
+                    start = root.length();
                 }
             }
+            if (start < 0) {
+                return null;
+            }
         }
-        if (inNum) {
-            bs.set(index);
+        String path = url.substring(start);
+        if (path.endsWith(CLASS_EXTENSION)) {
+            path = path.substring(0, path.length() - CLASS_EXTENSION.length());
         }
-        return bs;
+        return URLDecoder.decode(path, StandardCharsets.UTF_8).replace('/', '.').replace('\\', '.');
+    }
+
+    private static List<String> fromCSV(String tests) {
+        return Arrays.asList(tests.split(COMMA));
     }
 
     public static Set<String> getExistingClasses(String artifactsDir) {
@@ -326,10 +754,22 @@ public class ZLCHelper implements StartsConstants {
             return existingClasses;
         }
         try {
-            List<String> zlcLines = Files.readAllLines(zlc.toPath(), Charset.defaultCharset());
-            for (String line : zlcLines) {
-                if (line.startsWith("file")) {
-                    existingClasses.add(Writer.urlToFQN(line.split(WHITE_SPACE)[0]));
+            if (ZLCBinaryFile.isBinary(zlc)) {
+                ZLCBinaryFile binary = ZLCBinaryFile.open(zlc);
+                for (int row = 0; row < binary.getRowCount(); row++) {
+                    String url = binary.getUrl(row);
+                    if (url.startsWith("file")) {
+                        existingClasses.add(Writer.urlToFQN(url));
+                    }
+                }
+            } else {
+                try (BufferedReader reader = Files.newBufferedReader(zlc.toPath(), Charset.defaultCharset())) {
+                    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                        if (line.startsWith("file")) {
+                            int urlEnd = line.indexOf(' ');
+                            existingClasses.add(Writer.urlToFQN(urlEnd < 0 ? line : line.substring(0, urlEnd)));
+                        }
+                    }
                 }
             }
         } catch (IOException ioe) {
@@ -339,4 +779,169 @@ public class ZLCHelper implements StartsConstants {
         LOGGER.log(Level.FINEST, "[TIME]COMPUTING EXISTING CLASSES: " + (end - start) + MILLISECOND);
         return existingClasses;
     }
-}
\ No newline at end of file
+
+    /** Ligne de deps.zlc en cours de mise a jour ; checksum null tant qu'il n'est pas calcule. */
+    private static final class ZLCRow {
+        private String checksum;
+        private final BitSet tests;
+
+        ZLCRow(String checksum, BitSet tests) {
+            this.checksum = checksum;
+            this.tests = tests;
+        }
+    }
+
+    /** deps.zlc relu pour {@link #updateZLCFileIncrementally} : lignes par URL, tests par index. */
+    private static final class ZLCTable {
+        private final List<String> tests = new ArrayList<>();
+        private final Map<String, Integer> testIndex = new HashMap<>();
+        private final Map<String, ZLCRow> rows = new LinkedHashMap<>();
+        /** Nombre de places {@link #REMOVED_TEST} dans {@link #tests}. */
+        private int removed;
+
+        /** @return null si le fichier est dans un autre format ou avec un autre algorithme */
+        static ZLCTable load(File zlc, ZLCFormat format) throws IOException {
+            ZLCTable table = new ZLCTable();
+            if (ZLCBinaryFile.isBinary(zlc)) {
+                ZLCBinaryFile binary = ZLCBinaryFile.open(zlc);
+                if (format != ZLCFormat.BINARY || binary.getHashAlgorithm() != ClassHasher.getDefaultAlgorithm()) {
+                    return null;
+                }
+                table.addTests(binary.getTests());
+                for (int row = 0; row < binary.getRowCount(); row++) {
+                    table.addRow(binary.getUrl(row), binary.getChecksum(row), binary.getTests(row));
+                }
+                return table;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(zlc.toPath(), Charset.defaultCharset())) {
+                TextHeader header = readTextHeader(reader);
+                if (header.format != format || header.hashAlgorithm != ClassHasher.getDefaultAlgorithm()) {
+                    return null;
+                }
+                table.addTests(header.tests);
+                for (String line : readTextRows(header, reader)) {
+                    int urlEnd = line.indexOf(' ');
+                    int checksumEnd = line.indexOf(' ', urlEnd + 1);
+                    BitSet tests = new BitSet(table.tests.size());
+                    if (checksumEnd >= 0) {
+                        for (String test : fromCSV(line.substring(checksumEnd + 1))) {
+                            int index = format == ZLCFormat.INDEXED ? Integer.parseInt(test.trim())
+                                    : table.indexOf(test);
+                            if (index < table.tests.size()) {
+                                tests.set(index);
+                            }
+                        }
+                    }
+                    table.addRow(line.substring(0, urlEnd), checksumEnd < 0 ? line.substring(urlEnd + 1)
+                            : line.substring(urlEnd + 1, checksumEnd), tests);
+                }
+            }
+            return table;
+        }
+
+        private void addTests(String[] names) {
+            for (String name : names) {
+                if (name.equals(REMOVED_TEST)) {
+                    removed++;
+                } else {
+                    testIndex.put(name, tests.size());
+                }
+                tests.add(name);
+            }
+        }
+
+        private void addRow(String url, String checksum, BitSet rowTests) {
+            ZLCRow previous = rows.putIfAbsent(url, new ZLCRow(checksum, rowTests));
+            if (previous != null) {
+                previous.tests.or(rowTests);
+            }
+        }
+
+        /** @return l'index de {@code test}, ajoute en fin de table s'il n'y est pas */
+        int indexOf(String test) {
+            Integer index = testIndex.get(test);
+            if (index == null) {
+                index = tests.size();
+                tests.add(test);
+                testIndex.put(test, index);
+            }
+            return index;
+        }
+
+        void remove(int index) {
+            testIndex.remove(tests.get(index));
+            tests.set(index, REMOVED_TEST);
+            removed++;
+        }
+
+        /** Retire les places des tests supprimes et renumerote les tests des lignes. */
+        void compact() {
+            int[] newIndex = new int[tests.size()];
+            List<String> kept = new ArrayList<>(tests.size() - removed);
+            for (int i = 0; i < tests.size(); i++) {
+                if (tests.get(i).equals(REMOVED_TEST)) {
+                    newIndex[i] = -1;
+                } else {
+                    newIndex[i] = kept.size();
+                    kept.add(tests.get(i));
+                }
+            }
+            for (ZLCRow row : rows.values()) {
+                BitSet remapped = new BitSet(kept.size());
+                for (int idx = row.tests.nextSetBit(0); idx >= 0; idx = row.tests.nextSetBit(idx + 1)) {
+                    remapped.set(newIndex[idx]);
+                }
+                row.tests.clear();
+                row.tests.or(remapped);
+            }
+            tests.clear();
+            tests.addAll(kept);
+            testIndex.clear();
+            for (int i = 0; i < tests.size(); i++) {
+                testIndex.put(tests.get(i), i);
+            }
+            removed = 0;
+        }
+
+        ZLCWriter.Rows toRows() {
+            List<String> urls = new ArrayList<>(rows.keySet());
+            List<ZLCRow> values = new ArrayList<>(rows.values());
+            return new ZLCWriter.Rows() {
+                @Override
+                public int size() {
+                    return urls.size();
+                }
+
+                @Override
+                public String url(int row) {
+                    return urls.get(row);
+                }
+
+                @Override
+                public String checksum(int row) {
+                    return values.get(row).checksum;
+                }
+
+                @Override
+                public BitSet tests(int row) {
+                    return values.get(row).tests;
+                }
+            };
+        }
+    }
+
+    /** Dependances suivies, avec les index des tests qui les atteignent, avant le calcul des checksums. */
+    private static final class TrackedDeps {
+        private final List<String> tests;
+        private final List<URL> urls = new ArrayList<>();
+        private final List<BitSet> testsOfUrls = new ArrayList<>();
+
+        TrackedDeps(List<String> tests) {
+            this.tests = tests;
+        }
+
+        void add(String dep, BitSet depTests, ClassLoader loader, boolean useJars) {
+            addTrackedDep(urls, testsOfUrls, dep, depTests, loader, useJars);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.List;
+
+import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.data.ZLCData;
+import edu.illinois.starts.data.ZLCFormat;
+import edu.illinois.starts.enums.HashAlgorithm;
+
+/**
+ * Ecriture de deps.zlc ligne par ligne : chaque ligne est encodee directement depuis le
+ * BitSet de ses tests vers le fichier, sans construire la chaine de la ligne ni garder le
+ * contenu du fichier en memoire. Le fichier est ecrit a cote de la cible puis renomme : un
+ * lecteur voit l'ancien ZLC ou le nouveau, jamais un fichier a moitie ecrit.
+ */
+public final class ZLCWriter implements StartsConstants {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private ZLCWriter() {
+    }
+
+    /** Lignes a ecrire, par index. */
+    public interface Rows {
+        int size();
+
+        String url(int row);
+
+        String checksum(int row);
+
+        /**
+         * Appele une seule fois par ligne, dans l'ordre des lignes : l'appelant peut liberer
+         * le BitSet des qu'il l'a rendu.
+         */
+        BitSet tests(int row);
+    }
+
+    /** Lignes deja construites (la liste reste referencee par l'appelant). */
+    public static Rows of(List<ZLCData> zlcData) {
+        return new Rows() {
+            @Override
+            public int size() {
+                return zlcData.size();
+            }
+
+            @Override
+            public String url(int row) {
+                return zlcData.get(row).getUrl().toExternalForm();
+            }
+
+            @Override
+            public String checksum(int row) {
+                return zlcData.get(row).getChecksum();
+            }
+
+            @Override
+            public BitSet tests(int row) {
+                return zlcData.get(row).getTests();
+            }
+        };
+    }
+
+    /**
+     * @param tests table des tests : les lignes en donnent les index
+     */
+    public static void write(File target, ZLCFormat format, HashAlgorithm algorithm, List<String> tests,
+                             Rows rows) throws IOException {
+        if (format == ZLCFormat.BINARY) {
+            ZLCBinaryFile.write(target, algorithm, tests, rows);
+            return;
+        }
+        Path path = target.toPath();
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Path tmp = path.resolveSibling(target.getName() + ".tmp");
+        String newLine = System.lineSeparator();
+        try {
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(tmp),
+                    StandardCharsets.UTF_8), BUFFER_SIZE)) {
+                // L'algorithme suit le format, sauf pour LEGACY qui garde l'en-tete historique
+                writer.write(format.toString());
+                if (algorithm != HashAlgorithm.LEGACY) {
+                    writer.write(WHITE_SPACE + algorithm);
+                }
+                writer.write(newLine);
+                if (format == ZLCFormat.INDEXED) {
+                    writer.write(tests.size() + newLine);
+                    for (String test : tests) {
+                        writer.write(test);
+                        writer.write(newLine);
+                    }
+                }
+                char[] digits = new char[10];
+                for (int row = 0; row < rows.size(); row++) {
+                    writer.write(rows.url(row));
+                    writer.write(' ');
+                    writer.write(rows.checksum(row));
+                    BitSet bits = rows.tests(row);
+                    char separator = ' ';
+                    for (int idx = bits.nextSetBit(0); idx >= 0; idx = bits.nextSetBit(idx + 1)) {
+                        writer.write(separator);
+                        separator = ',';
+                        if (format == ZLCFormat.INDEXED) {
+                            int start = toDigits(idx, digits);
+                            writer.write(digits, start, digits.length - start);
+                        } else {
+                            writer.write(tests.get(idx));
+                        }
+                    }
+                    writer.write(newLine);
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+    }
+
+    /** Ecrit {@code value} (positif) a la fin de {@code digits} ; renvoie l'index du premier chiffre. */
+    private static int toDigits(int value, char[] digits) {
+        int pos = digits.length;
+        do {
+            digits[--pos] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        return pos;
+    }
+}
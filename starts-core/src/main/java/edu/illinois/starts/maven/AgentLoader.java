@@ -3,6 +3,7 @@ package edu.illinois.starts.maven;
 import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -122,6 +123,14 @@ public final class AgentLoader implements StartsConstants {
 
     public static StringWriter loadAndRunJdeps(List<String> args) {
         StringWriter output = new StringWriter();
+        loadAndRunJdeps(args, output);
+        return output;
+    }
+
+    /**
+     * Runs jdeps and sends its output, line by line as jdeps prints it, to {@code output}.
+     */
+    public static void loadAndRunJdeps(List<String> args, Writer output) {
         try {
             File toolsJarFile = findToolsJar();
             if (!toolsJarFile.exists()) {
@@ -150,6 +159,5 @@ public final class AgentLoader implements StartsConstants {
         } catch (NoSuchMethodException noSuchMethodException) {
             noSuchMethodException.printStackTrace();
         }
-        return output;
     }
 }
@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.enums.HashAlgorithm;
+import edu.illinois.starts.helpers.Writer;
+
+/**
+ * Calcul des checksums d'un lot d'URLs de classes sur un ForkJoinPool borne.
+ *
+ * <p>Les entrees {@code jar:} sont regroupees par JAR : un meme thread traite toutes les
+ * entrees d'un JAR a la suite, le JAR n'est ouvert qu'une fois et n'est pas dispute entre
+ * threads. Les fichiers {@code file:}
+ * sont traites par paquets. Chaque thread a son propre Hasher (non thread-safe).
+ *
+ * <p>Une classe deja checksummee plus tot dans le build et inchangee depuis est reprise de
+ * {@link SessionChecksums} sans etre relue ; une entree de JAR deja checksummee par un autre
+ * module l'est de {@link SharedChecksumStore}.
+ */
+public class ChecksumEngine implements StartsConstants {
+    private static final Logger LOGGER = Logger.getGlobal();
+    /** En dessous, le calcul reste dans le thread appelant. */
+    private static final int MIN_PARALLEL_BATCH = 64;
+    private static final int FILE_CHUNK_SIZE = 128;
+    private static final String JAR_SEPARATOR = "!/";
+
+    private static int defaultParallelism;
+    private static SharedChecksumStore sharedStore;
+
+    private final int parallelism;
+    private final HashAlgorithm algorithm;
+    private final String hashKey;
+    private final ThreadLocal<ChecksumUtil> checksumUtils;
+    private final StatIndex statIndex;
+    private final SessionChecksums session;
+    private final boolean reuse;
+    private final LongAdder statHits = new LongAdder();
+    private final LongAdder sessionHits = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+
+    public ChecksumEngine(boolean cleanBytes) {
+        this(cleanBytes, defaultParallelism, null);
+    }
+
+    public ChecksumEngine(boolean cleanBytes, HashAlgorithm algorithm) {
+        this(cleanBytes, algorithm, defaultParallelism, null);
+    }
+
+    /**
+     * Reprend les checksums des fichiers inchanges depuis {@code statIndex}, et l'alimente.
+     * Les checksums sont calcules avec l'algorithme de l'index.
+     */
+    public ChecksumEngine(StatIndex statIndex) {
+        this(statIndex.isCleanBytes(), defaultParallelism, statIndex);
+    }
+
+    /**
+     * @param parallelism nombre de threads ; 0 = nombre de processeurs, 1 = sequentiel
+     */
+    public ChecksumEngine(boolean cleanBytes, int parallelism) {
+        this(cleanBytes, parallelism, null);
+    }
+
+    /**
+     * @param parallelism nombre de threads ; 0 = nombre de processeurs, 1 = sequentiel
+     * @param statIndex   index taille/date des fichiers, null pour tout recalculer
+     */
+    public ChecksumEngine(boolean cleanBytes, int parallelism, StatIndex statIndex) {
+        this(cleanBytes, statIndex == null ? ClassHasher.getDefaultAlgorithm() : statIndex.getAlgorithm(),
+                parallelism, statIndex);
+    }
+
+    /**
+     * @param parallelism nombre de threads ; 0 = nombre de processeurs, 1 = sequentiel
+     * @param statIndex   index taille/date des fichiers (du meme algorithme), null pour tout recalculer
+     */
+    public ChecksumEngine(boolean cleanBytes, HashAlgorithm algorithm, int parallelism, StatIndex statIndex) {
+        this(cleanBytes, algorithm, parallelism, statIndex, true);
+    }
+
+    /**
+     * Comme {@link #ChecksumEngine(StatIndex)}.
+     *
+     * @param reuse reprendre les checksums deja calcules dans le build (autre mojo, autre module) ;
+     *              false pour tout recalculer, et donc tout enregistrer dans {@code statIndex}
+     */
+    public ChecksumEngine(StatIndex statIndex, boolean reuse) {
+        this(statIndex.isCleanBytes(), statIndex.getAlgorithm(), defaultParallelism, statIndex, reuse);
+    }
+
+    private ChecksumEngine(boolean cleanBytes, HashAlgorithm algorithm, int parallelism, StatIndex statIndex,
+                           boolean reuse) {
+        this.parallelism = parallelism <= 0 ? Runtime.getRuntime().availableProcessors() : parallelism;
+        this.algorithm = algorithm;
+        this.hashKey = ClassHasher.key(cleanBytes, algorithm);
+        this.checksumUtils = ThreadLocal.withInitial(() -> new ChecksumUtil(cleanBytes, algorithm));
+        this.statIndex = statIndex;
+        this.session = SessionChecksums.get(hashKey);
+        this.reuse = reuse;
+    }
+
+    /** Algorithme des checksums calcules (a enregistrer avec eux). */
+    public HashAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /** Parallelisme des moteurs crees sans parametre (positionne par les mojos). */
+    public static void setDefaultParallelism(int parallelism) {
+        defaultParallelism = parallelism;
+    }
+
+    /** Checksums des JARs partages entre modules (positionne par les mojos), null pour ne pas partager. */
+    public static void setSharedStore(SharedChecksumStore store) {
+        sharedStore = store;
+    }
+
+    /**
+     * @param urls formes externes des URLs (doublons acceptes)
+     * @return URL -> checksum ("-1" si la classe n'existe plus)
+     */
+    public Map<String, String> computeAll(Collection<String> urls) {
+        long start = System.currentTimeMillis();
+        Map<String, String> checksums = new ConcurrentHashMap<>(urls.size() * 4 / 3 + 1);
+        List<List<String>> groups = group(urls);
+        if (parallelism == 1 || urls.size() < MIN_PARALLEL_BATCH) {
+            groups.forEach(group -> hash(group, checksums));
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.submit(() -> groups.parallelStream().forEach(group -> hash(group, checksums))).join();
+            } finally {
+                pool.shutdown();
+            }
+        }
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "[PROFILE] computeChecksums(urls=" + checksums.size() + ", groups=" + groups.size()
+                + ", threads=" + parallelism + ", sessionHits=" + sessionHits.sumThenReset()
+                + ", sharedHits=" + sharedHits.sumThenReset()
+                + ", statHits=" + statHits.sumThenReset() + "): "
+                + Writer.millsToLog(end - start));
+        return checksums;
+    }
+
+    /** Comme {@link #computeAll(Collection)}, pour des URLs. */
+    public Map<String, String> computeAllUrls(Collection<URL> urls) {
+        List<String> externalForms = new ArrayList<>(urls.size());
+        for (URL url : urls) {
+            externalForms.add(url.toExternalForm());
+        }
+        return computeAll(externalForms);
+    }
+
+    private void hash(List<String> group, Map<String, String> checksums) {
+        // Attributs lus avant le contenu : une modification pendant le calcul sera vue au prochain calcul.
+        // Une entree jar: prend ceux du JAR, lu une fois pour tout le groupe.
+        boolean inJar = group.get(0).startsWith("jar:");
+        StatIndex.FileStat jarStat = inJar ? StatIndex.stat(jarFileUrl(group.get(0))) : null;
+        Map<String, StatIndex.FileStat> stats = new HashMap<>();
+        List<String> missing = new ArrayList<>(group.size());
+        for (String url : group) {
+            if (checksums.containsKey(url)) {
+                continue;
+            }
+            StatIndex.FileStat stat = inJar ? jarStat : StatIndex.stat(url);
+            String checksum = stat == null || !reuse ? null : session.lookup(url, stat);
+            if (checksum != null) {
+                sessionHits.increment();
+                checksums.put(url, checksum);
+            } else if (!stats.containsKey(url)) {
+                stats.put(url, stat);
+                missing.add(url);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        List<String> toHash = missing;
+        boolean shared = inJar && jarStat != null && sharedStore != null;
+        if (shared && reuse) {
+            toHash = fromSharedStore(missing, jarStat, checksums);
+        }
+        ChecksumUtil checksumUtil = checksumUtils.get();
+        if (!toHash.isEmpty() && (!inJar || !hashJar(toHash, checksums, checksumUtil))) {
+            for (String url : toHash) {
+                StatIndex.FileStat stat = inJar || statIndex == null ? null : stats.get(url);
+                String checksum = stat == null ? null : statIndex.lookup(url, stat);
+                if (checksum != null) {
+                    statHits.increment();
+                } else {
+                    checksum = checksumUtil.computeSingleCheckSum(url);
+                    if (stat != null) {
+                        statIndex.record(url, stat, checksum);
+                    }
+                }
+                checksums.put(url, checksum);
+            }
+        }
+        if (shared && !toHash.isEmpty()) {
+            Map<String, String> published = new HashMap<>();
+            for (String url : toHash) {
+                published.put(entryName(url), checksums.get(url));
+            }
+            sharedStore.publish(jarFileUrl(missing.get(0)), jarStat, hashKey, published);
+        }
+        for (String url : missing) {
+            StatIndex.FileStat stat = stats.get(url);
+            if (stat != null) {
+                session.record(url, stat, checksums.get(url));
+            }
+        }
+    }
+
+    /** @return les URLs dont le checksum n'a pas encore ete publie par un autre module */
+    private List<String> fromSharedStore(List<String> urls, StatIndex.FileStat jarStat,
+                                         Map<String, String> checksums) {
+        Map<String, String> published = sharedStore.load(jarFileUrl(urls.get(0)), jarStat, hashKey);
+        List<String> remaining = new ArrayList<>();
+        for (String url : urls) {
+            String checksum = published.get(entryName(url));
+            if (checksum != null) {
+                sharedHits.increment();
+                checksums.put(url, checksum);
+            } else {
+                remaining.add(url);
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Entrees d'un meme JAR : le repertoire central est lu une fois, et seules les entrees dont
+     * le CRC-32 ou la taille differe de l'index sont recalculees, sur les octets lus dans le
+     * JAR ouvert. Les JarURLConnection en cache dans la JVM ne sont pas utilisees : elles
+     * peuvent encore servir l'ancien contenu d'un JAR reecrit pendant le build.
+     *
+     * @return false si le JAR n'a pas pu etre lu (les entrees sont alors calculees une a une)
+     */
+    private boolean hashJar(List<String> group, Map<String, String> checksums, ChecksumUtil checksumUtil) {
+        String first = group.get(0);
+        int separator = first.indexOf(JAR_SEPARATOR);
+        String jarUrl = jarFileUrl(first);
+        try (ZipFile jar = new ZipFile(Paths.get(new URI(jarUrl)).toFile())) {
+            for (String url : group) {
+                if (checksums.containsKey(url)) {
+                    continue;
+                }
+                String name = URLDecoder.decode(url.substring(separator + JAR_SEPARATOR.length()),
+                        StandardCharsets.UTF_8);
+                ZipEntry entry = jar.getEntry(name);
+                boolean indexed = statIndex != null && entry != null && entry.getCrc() >= 0;
+                String checksum = indexed ? statIndex.lookupJarEntry(url, entry.getCrc(), entry.getSize()) : null;
+                if (checksum != null) {
+                    statHits.increment();
+                } else {
+                    checksum = entry != null
+                            ? hashEntry(jar, entry, checksumUtil.getHasher())
+                            : ClassHasher.MISSING;
+                    if (indexed) {
+                        statIndex.recordJarEntry(url, entry.getCrc(), entry.getSize(), checksum);
+                    }
+                }
+                checksums.put(url, checksum);
+            }
+            return true;
+        } catch (IOException | URISyntaxException | IllegalArgumentException ex) {
+            LOGGER.log(Level.FINEST, "Cannot read central directory of " + jarUrl + ": " + ex);
+            return false;
+        }
+    }
+
+    /** "jar:file:/x.jar!/A.class" -> "A.class" */
+    private static String entryName(String url) {
+        return url.substring(url.indexOf(JAR_SEPARATOR) + JAR_SEPARATOR.length());
+    }
+
+    /** "jar:file:/x.jar!/A.class" -> "file:/x.jar" */
+    private static String jarFileUrl(String url) {
+        return url.substring("jar:".length(), url.indexOf(JAR_SEPARATOR));
+    }
+
+    /** Octets lus dans le JAR deja ouvert, sans repasser par l'URL. */
+    private static String hashEntry(ZipFile jar, ZipEntry entry, ClassHasher hasher) throws IOException {
+        try (InputStream in = jar.getInputStream(entry)) {
+            return hasher.hash(in.readAllBytes());
+        }
+    }
+
+    /** Un groupe par JAR, et des paquets de {@link #FILE_CHUNK_SIZE} pour le reste. */
+    private static List<List<String>> group(Collection<String> urls) {
+        Map<String, List<String>> byJar = new LinkedHashMap<>();
+        List<List<String>> groups = new ArrayList<>();
+        List<String> chunk = new ArrayList<>(FILE_CHUNK_SIZE);
+        for (String url : urls) {
+            int separator = url.startsWith("jar:") ? url.indexOf(JAR_SEPARATOR) : -1;
+            if (separator >= 0) {
+                byJar.computeIfAbsent(url.substring(0, separator), k -> new ArrayList<>()).add(url);
+            } else {
+                chunk.add(url);
+                if (chunk.size() == FILE_CHUNK_SIZE) {
+                    groups.add(chunk);
+                    chunk = new ArrayList<>(FILE_CHUNK_SIZE);
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            groups.add(chunk);
+        }
+        groups.addAll(byJar.values());
+        return groups;
+    }
+}
@@ -9,8 +9,10 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
@@ -19,21 +21,29 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.enums.HashAlgorithm;
 import org.ekstazi.data.RegData;
 import org.ekstazi.data.TxtStorer;
-import org.ekstazi.hash.Hasher;
 import org.ekstazi.util.Types;
 
 public class ChecksumUtil implements StartsConstants {
     public static final String JAVAHOME = System.getProperty(JAVA_HOME);
     private static final Logger LOGGER = Logger.getLogger(ChecksumUtil.class.getName());
 
-    Hasher hasher;
+    ClassHasher hasher;
     private Map<URL, String> checkSumMap; // map from URL to checksums, to reduce hashing
 
     public ChecksumUtil(boolean cleanBytes) {
+        this(cleanBytes, ClassHasher.getDefaultAlgorithm());
+    }
+
+    public ChecksumUtil(boolean cleanBytes, HashAlgorithm algorithm) {
         checkSumMap = new HashMap<>();
-        hasher = new Hasher(Hasher.Algorithm.CRC32, 1000, cleanBytes);
+        hasher = ClassHasher.create(algorithm, cleanBytes);
+    }
+
+    public ClassHasher getHasher() {
+        return hasher;
     }
 
     /**
@@ -46,12 +56,16 @@ public class ChecksumUtil implements StartsConstants {
      */
     public static Map<String, Set<RegData>> makeCheckSumMap(ClassLoader loader, Map<String,
             Set<String>> testDeps, Set<String> affected) {
-        Map<String, Set<RegData>> checksums = new HashMap<>();
-        ChecksumUtil checksumUtil = new ChecksumUtil(true);
+        // 1) URLs des classes de chaque test affecte, puis 2) tous les checksums en un seul lot
+        Map<String, List<URL>> urlsPerTest = new HashMap<>();
+        Set<String> allUrls = new HashSet<>();
         for (String test : affected) {
-            checksums.put(test, new HashSet<RegData>());
+            List<URL> urls = new ArrayList<>();
+            urlsPerTest.put(test, urls);
             URL url = loader.getResource(toClassName(test));
-            checksums.get(test).add(checksumUtil.computeChecksumRegData(url));
+            if (url != null) {
+                urls.add(url);
+            }
             long start = System.currentTimeMillis();
             for (String dep : testDeps.get(test)) {
                 String className = toClassName(dep);
@@ -59,7 +73,7 @@ public class ChecksumUtil implements StartsConstants {
                     url = loader.getResource(className);
                     if (url != null) {
                         if (!isWellKnownUrl(url.toExternalForm())) {
-                            checksums.get(test).add(checksumUtil.computeChecksumRegData(url));
+                            urls.add(url);
                         }
                     } else {
                         // Known benign cases where this can happen: (i) dep is from a shaded jar which is itself on
@@ -69,9 +83,23 @@ public class ChecksumUtil implements StartsConstants {
                     }
                 }
             }
+            for (URL dependency : urls) {
+                allUrls.add(dependency.toExternalForm());
+            }
             long end = System.currentTimeMillis();
             LOGGER.log(Level.FINEST, "LOADED RESOURCES: " + (end - start) + MILLISECOND);
         }
+        // Les .clz sont relus par Ekstazi, qui ne connait que ses propres checksums
+        Map<String, String> computed = new ChecksumEngine(true, HashAlgorithm.LEGACY).computeAll(allUrls);
+        Map<String, Set<RegData>> checksums = new HashMap<>();
+        for (Map.Entry<String, List<URL>> entry : urlsPerTest.entrySet()) {
+            Set<RegData> regData = new HashSet<>();
+            for (URL url : entry.getValue()) {
+                String externalForm = url.toExternalForm();
+                regData.add(new RegData(externalForm, computed.get(externalForm)));
+            }
+            checksums.put(entry.getKey(), regData);
+        }
         return checksums;
     }
 
@@ -134,7 +162,11 @@ public class ChecksumUtil implements StartsConstants {
     }
 
     public String computeSingleCheckSum(URL url) {
-        return hasher.hashURL(url.toExternalForm());
+        return hasher.hash(url);
+    }
+
+    public String computeSingleCheckSum(String externalForm) {
+        return hasher.hashUrl(externalForm);
     }
 
     static class StartsStorer extends TxtStorer {
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.util;
+
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.URI;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+import edu.illinois.starts.enums.HashAlgorithm;
+import edu.illinois.starts.helpers.ClassFileScanner;
+import org.ekstazi.hash.BytecodeCleaner;
+
+/**
+ * Checksum du contenu d'une classe.
+ *
+ * <p>Le contenu est hache directement depuis un {@code byte[]} ou un {@link ByteBuffer} : les
+ * appelants qui ont deja les octets (entree de JAR ouverte, lecture des dependances) n'ont pas
+ * a les faire relire. Avec {@code cleanBytes}, les attributs de debug sont retires avant le
+ * calcul (voir {@link ClassFileScanner#withoutDebug(byte[])}, et le nettoyage d'Ekstazi pour
+ * {@link HashAlgorithm#LEGACY}).
+ *
+ * <p>Une instance n'est pas thread-safe.
+ */
+public abstract class ClassHasher {
+    /** Checksum d'une ressource absente ou illisible. */
+    static final String MISSING = "-1";
+    private static final int CLASS_MAGIC = 0xCAFEBABE;
+
+    private static volatile HashAlgorithm defaultAlgorithm = HashAlgorithm.LEGACY;
+
+    protected final boolean cleanBytes;
+
+    protected ClassHasher(boolean cleanBytes) {
+        this.cleanBytes = cleanBytes;
+    }
+
+    public static ClassHasher create(HashAlgorithm algorithm, boolean cleanBytes) {
+        switch (algorithm) {
+            case CRC32C:
+                return new Crc32cHasher(cleanBytes);
+            case XXH64:
+                return new Xxh64Hasher(cleanBytes);
+            case LEGACY:
+                return new LegacyHasher(cleanBytes);
+            default:
+                throw new RuntimeException("Unexpected HashAlgorithm");
+        }
+    }
+
+    /** Algorithme des hashers crees sans parametre (positionne par les mojos). */
+    public static void setDefaultAlgorithm(HashAlgorithm algorithm) {
+        defaultAlgorithm = algorithm;
+    }
+
+    public static HashAlgorithm getDefaultAlgorithm() {
+        return defaultAlgorithm;
+    }
+
+    /**
+     * Identifie les checksums comparables entre eux : ceux calcules avec la meme cle.
+     * Vaut "clean" ou "raw" pour {@link HashAlgorithm#LEGACY}, comme avant l'introduction des
+     * autres algorithmes.
+     */
+    public static String key(boolean cleanBytes, HashAlgorithm algorithm) {
+        String key = cleanBytes ? "clean" : "raw";
+        return algorithm == HashAlgorithm.LEGACY ? key : key + "-" + algorithm;
+    }
+
+    public abstract HashAlgorithm getAlgorithm();
+
+    public String getKey() {
+        return key(cleanBytes, getAlgorithm());
+    }
+
+    public String hash(URL url) {
+        return hashUrl(url.toExternalForm());
+    }
+
+    /** @return le checksum de la ressource, "-1" si elle n'existe pas ou est illisible */
+    public String hashUrl(String externalForm) {
+        try {
+            byte[] bytes;
+            if (externalForm.startsWith("file:")) {
+                bytes = Files.readAllBytes(Paths.get(new URI(externalForm)));
+            } else {
+                try (InputStream in = new URL(externalForm).openStream()) {
+                    bytes = in.readAllBytes();
+                }
+            }
+            return hash(bytes);
+        } catch (Exception ex) {
+            return MISSING;
+        }
+    }
+
+    public String hash(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return hash(buffer.array());
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return hash(bytes);
+    }
+
+    public String hash(byte[] bytes) {
+        if (cleanBytes && isClassFile(bytes)) {
+            try {
+                bytes = ClassFileScanner.withoutDebug(bytes);
+            } catch (RuntimeException ex) {
+                // .class tronque ou mal forme : hache tel quel
+            }
+        }
+        return Long.toString(digest(bytes, 0, bytes.length));
+    }
+
+    protected abstract long digest(byte[] bytes, int offset, int length);
+
+    private static boolean isClassFile(byte[] bytes) {
+        return bytes.length >= 4 && ((bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16
+                | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF)) == CLASS_MAGIC;
+    }
+
+    /**
+     * Checksums d'Ekstazi, memes valeurs que {@code Hasher.hashURL} des versions precedentes :
+     * CRC32 du contenu passe par {@link BytecodeCleaner#removeDebugInfo(byte[])} avec
+     * {@code cleanBytes}, Adler32 du contenu brut sinon.
+     */
+    private static final class LegacyHasher extends ClassHasher {
+        private final CRC32 crc = new CRC32();
+        private final Adler32 adler = new Adler32();
+
+        LegacyHasher(boolean cleanBytes) {
+            super(cleanBytes);
+        }
+
+        @Override
+        public HashAlgorithm getAlgorithm() {
+            return HashAlgorithm.LEGACY;
+        }
+
+        @Override
+        public String hash(byte[] bytes) {
+            return Long.toString(digest(bytes, 0, bytes.length));
+        }
+
+        @Override
+        protected long digest(byte[] bytes, int offset, int length) {
+            if (!cleanBytes) {
+                adler.reset();
+                adler.update(bytes, offset, length);
+                return adler.getValue();
+            }
+            byte[] content = offset == 0 && length == bytes.length
+                    ? bytes : Arrays.copyOfRange(bytes, offset, offset + length);
+            crc.reset();
+            crc.update(BytecodeCleaner.removeDebugInfo(content));
+            return crc.getValue();
+        }
+    }
+
+    private static final class Crc32cHasher extends ClassHasher {
+        private final CRC32C crc = new CRC32C();
+
+        Crc32cHasher(boolean cleanBytes) {
+            super(cleanBytes);
+        }
+
+        @Override
+        public HashAlgorithm getAlgorithm() {
+            return HashAlgorithm.CRC32C;
+        }
+
+        @Override
+        protected long digest(byte[] bytes, int offset, int length) {
+            crc.reset();
+            crc.update(bytes, offset, length);
+            return crc.getValue();
+        }
+    }
+
+    /** xxHash64 (graine 0), voir https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md */
+    static final class Xxh64Hasher extends ClassHasher {
+        private static final long P1 = 0x9E3779B185EBCA87L;
+        private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+        private static final long P3 = 0x165667B19E3779F9L;
+        private static final long P4 = 0x85EBCA77C2B2AE63L;
+        private static final long P5 = 0x27D4EB2F165667C5L;
+        private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class,
+                ByteOrder.LITTLE_ENDIAN);
+        private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class,
+                ByteOrder.LITTLE_ENDIAN);
+
+        Xxh64Hasher(boolean cleanBytes) {
+            super(cleanBytes);
+        }
+
+        @Override
+        public HashAlgorithm getAlgorithm() {
+            return HashAlgorithm.XXH64;
+        }
+
+        @Override
+        protected long digest(byte[] bytes, int offset, int length) {
+            int end = offset + length;
+            long hash;
+            if (length >= 32) {
+                long v1 = P1 + P2;
+                long v2 = P2;
+                long v3 = 0;
+                long v4 = -P1;
+                do {
+                    v1 = round(v1, (long) LONGS.get(bytes, offset));
+                    v2 = round(v2, (long) LONGS.get(bytes, offset + 8));
+                    v3 = round(v3, (long) LONGS.get(bytes, offset + 16));
+                    v4 = round(v4, (long) LONGS.get(bytes, offset + 24));
+                    offset += 32;
+                } while (offset <= end - 32);
+                hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12)
+                        + Long.rotateLeft(v4, 18);
+                hash = merge(hash, v1);
+                hash = merge(hash, v2);
+                hash = merge(hash, v3);
+                hash = merge(hash, v4);
+            } else {
+                hash = P5;
+            }
+            hash += length;
+            for (; offset + 8 <= end; offset += 8) {
+                hash ^= round(0, (long) LONGS.get(bytes, offset));
+                hash = Long.rotateLeft(hash, 27) * P1 + P4;
+            }
+            if (offset + 4 <= end) {
+                hash ^= ((int) INTS.get(bytes, offset) & 0xFFFFFFFFL) * P1;
+                hash = Long.rotateLeft(hash, 23) * P2 + P3;
+                offset += 4;
+            }
+            for (; offset < end; offset++) {
+                hash ^= (bytes[offset] & 0xFF) * P5;
+                hash = Long.rotateLeft(hash, 11) * P1;
+            }
+            hash ^= hash >>> 33;
+            hash *= P2;
+            hash ^= hash >>> 29;
+            hash *= P3;
+            hash ^= hash >>> 32;
+            return hash;
+        }
+
+        private static long round(long acc, long input) {
+            acc += input * P2;
+            acc = Long.rotateLeft(acc, 31);
+            return acc * P1;
+        }
+
+        private static long merge(long acc, long value) {
+            acc ^= round(0, value);
+            return acc * P1 + P4;
+        }
+    }
+}
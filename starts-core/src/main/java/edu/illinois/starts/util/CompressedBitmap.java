@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Ensemble d'entiers immuable compresse, a la Roaring : l'espace est decoupe en
+ * blocs de 4096 valeurs, seuls les blocs non vides sont stockes, chacun sous
+ * forme de tableau trie (peu de valeurs) ou de bitmap de 64 longs.
+ *
+ * <p>Les blocs sont partages via un {@link BlockPool} (hash-consing) : deux
+ * ensembles qui ont le meme contenu sur un bloc referencent la meme instance.
+ * Les fermetures transitives des tests d'un meme module ne different souvent
+ * que par quelques blocs, le reste est stocke une seule fois.
+ */
+public final class CompressedBitmap {
+    public static final CompressedBitmap EMPTY = new CompressedBitmap(new int[0], new Block[0], 0);
+
+    private static final int BLOCK_SHIFT = 12;
+    private static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+    private static final int BLOCK_WORDS = (1 << BLOCK_SHIFT) / Long.SIZE;
+    /** Au-dela, un tableau de char prend plus de place que la bitmap du bloc. */
+    private static final int MAX_ARRAY_SIZE = BLOCK_WORDS * Long.BYTES / Character.BYTES;
+
+    private final int[] keys;
+    private final Block[] blocks;
+    private final int cardinality;
+
+    private CompressedBitmap(int[] keys, Block[] blocks, int cardinality) {
+        this.keys = keys;
+        this.blocks = blocks;
+        this.cardinality = cardinality;
+    }
+
+    /** Nombre de mots de 64 bits a allouer pour un tampon couvrant {@code size} valeurs. */
+    public static int scratchWords(int size) {
+        return ((size >> BLOCK_SHIFT) + 1) * BLOCK_WORDS;
+    }
+
+    /**
+     * Construit l'ensemble des bits de {@code words[fromWord .. toWord)} et remet ces mots
+     * a zero, pour reutiliser le tampon sans le reallouer.
+     */
+    public static CompressedBitmap drain(long[] words, int fromWord, int toWord, BlockPool pool) {
+        int firstBlock = fromWord / BLOCK_WORDS;
+        int lastBlock = (toWord + BLOCK_WORDS - 1) / BLOCK_WORDS;
+        int[] keys = new int[lastBlock - firstBlock];
+        Block[] blocks = new Block[lastBlock - firstBlock];
+        int count = 0;
+        int cardinality = 0;
+        for (int b = firstBlock; b < lastBlock; b++) {
+            int offset = b * BLOCK_WORDS;
+            int blockCardinality = 0;
+            for (int i = offset; i < offset + BLOCK_WORDS; i++) {
+                blockCardinality += Long.bitCount(words[i]);
+            }
+            if (blockCardinality == 0) {
+                continue;
+            }
+            Block block = blockCardinality <= MAX_ARRAY_SIZE
+                    ? Block.ofValues(words, offset, blockCardinality)
+                    : Block.ofWords(Arrays.copyOfRange(words, offset, offset + BLOCK_WORDS), blockCardinality);
+            Arrays.fill(words, offset, offset + BLOCK_WORDS, 0L);
+            keys[count] = b;
+            blocks[count++] = pool == null ? block : pool.intern(block);
+            cardinality += blockCardinality;
+        }
+        if (count == 0) {
+            return EMPTY;
+        }
+        return new CompressedBitmap(Arrays.copyOf(keys, count), Arrays.copyOf(blocks, count), cardinality);
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    public boolean contains(int value) {
+        int i = Arrays.binarySearch(keys, value >>> BLOCK_SHIFT);
+        return i >= 0 && blocks[i].contains(value & BLOCK_MASK);
+    }
+
+    /** Plus petite valeur de l'ensemble arrondie au debut de son bloc, -1 si vide. */
+    public int firstBlockStart() {
+        return keys.length == 0 ? -1 : keys[0] << BLOCK_SHIFT;
+    }
+
+    /** Union dans un tampon de mots de 64 bits (au moins {@link #scratchWords} mots). */
+    public void orInto(long[] words) {
+        for (int i = 0; i < keys.length; i++) {
+            blocks[i].orInto(words, keys[i] * BLOCK_WORDS);
+        }
+    }
+
+    /** Valeurs en ordre croissant. */
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            blocks[i].forEach(keys[i] << BLOCK_SHIFT, consumer);
+        }
+    }
+
+    /** Iterateur sur les valeurs en ordre croissant : {@code next()} retourne -1 a la fin. */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof CompressedBitmap)) {
+            return false;
+        }
+        CompressedBitmap that = (CompressedBitmap) other;
+        return cardinality == that.cardinality && Arrays.equals(keys, that.keys) && Arrays.equals(blocks, that.blocks);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(keys) + Arrays.hashCode(blocks);
+    }
+
+    /** Parcours sans IntConsumer, pour les Iterator. */
+    public final class Cursor {
+        private int block;
+        private int position = -1;
+
+        public int next() {
+            while (block < keys.length) {
+                position = blocks[block].next(position);
+                if (position >= 0) {
+                    return (keys[block] << BLOCK_SHIFT) | position;
+                }
+                block++;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Un bloc de 4096 valeurs : soit les valeurs triees (relatives au debut du bloc),
+     * soit la bitmap complete.
+     */
+    private static final class Block {
+        private final char[] values;
+        private final long[] words;
+        private final int cardinality;
+        private final int hash;
+
+        private Block(char[] values, long[] words, int cardinality) {
+            this.values = values;
+            this.words = words;
+            this.cardinality = cardinality;
+            this.hash = values != null ? Arrays.hashCode(values) : Arrays.hashCode(words);
+        }
+
+        static Block ofWords(long[] words, int cardinality) {
+            return new Block(null, words, cardinality);
+        }
+
+        static Block ofValues(long[] words, int offset, int cardinality) {
+            char[] values = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < BLOCK_WORDS; i++) {
+                long word = words[offset + i];
+                while (word != 0) {
+                    values[count++] = (char) (i * Long.SIZE + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new Block(values, null, cardinality);
+        }
+
+        boolean contains(int low) {
+            if (values != null) {
+                return Arrays.binarySearch(values, (char) low) >= 0;
+            }
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        void orInto(long[] target, int offset) {
+            if (values != null) {
+                for (char value : values) {
+                    target[offset + (value >>> 6)] |= 1L << value;
+                }
+            } else {
+                for (int i = 0; i < BLOCK_WORDS; i++) {
+                    target[offset + i] |= words[i];
+                }
+            }
+        }
+
+        void forEach(int base, IntConsumer consumer) {
+            if (values != null) {
+                for (char value : values) {
+                    consumer.accept(base | value);
+                }
+            } else {
+                for (int i = 0; i < BLOCK_WORDS; i++) {
+                    long word = words[i];
+                    while (word != 0) {
+                        consumer.accept(base | (i * Long.SIZE + Long.numberOfTrailingZeros(word)));
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+
+        /** Valeur suivant {@code low} dans le bloc, -1 s'il n'y en a plus. */
+        int next(int low) {
+            int from = low + 1;
+            if (values != null) {
+                int i = Arrays.binarySearch(values, (char) Math.min(from, BLOCK_MASK + 1));
+                if (i < 0) {
+                    i = -i - 1;
+                }
+                return i < values.length ? values[i] : -1;
+            }
+            for (int w = from >>> 6; w < BLOCK_WORDS; w++) {
+                long word = words[w] & (-1L << (w == from >>> 6 ? from : 0));
+                if (word != 0) {
+                    return w * Long.SIZE + Long.numberOfTrailingZeros(word);
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Block)) {
+                return false;
+            }
+            Block that = (Block) other;
+            return hash == that.hash && cardinality == that.cardinality
+                    && Arrays.equals(values, that.values) && Arrays.equals(words, that.words);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Blocs deja construits, indexes par contenu. Utilisable depuis plusieurs threads.
+     */
+    public static final class BlockPool {
+        private final ConcurrentHashMap<Block, Block> blocks = new ConcurrentHashMap<>();
+
+        Block intern(Block block) {
+            Block existing = blocks.putIfAbsent(block, block);
+            return existing == null ? block : existing;
+        }
+
+        /** Nombre de blocs distincts. */
+        public int size() {
+            return blocks.size();
+        }
+
+        /** Taille approximative des blocs distincts (contenu seulement). */
+        public long getSizeInBytes() {
+            long bytes = 0;
+            for (Block block : blocks.keySet()) {
+                bytes += block.values != null ? (long) block.values.length * Character.BYTES
+                        : (long) BLOCK_WORDS * Long.BYTES;
+            }
+            return bytes;
+        }
+    }
+}
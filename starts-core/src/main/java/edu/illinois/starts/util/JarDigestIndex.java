@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+import edu.illinois.starts.constants.StartsConstants;
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Empreinte (SHA-256 du contenu) des JARs, par chemin : le cache jdeps est indexe par le
+ * contenu du JAR, et cet index evite de relire un JAR dont la taille et la date n'ont pas
+ * change depuis le calcul de son empreinte.
+ *
+ * <p>Comme pour {@link StatIndex}, un JAR modifie moins de 2 s avant la prise de ses
+ * attributs n'est pas enregistre : son empreinte est recalculee au run suivant.
+ *
+ * <p>Un index par fichier et par processus, partage par tous les modules du build ; a
+ * l'enregistrement, les entrees publiees entre-temps par d'autres processus sont conservees.
+ * Utilisable depuis plusieurs threads.
+ */
+public class JarDigestIndex implements StartsConstants {
+    private static final Logger LOGGER = Logger.getGlobal();
+    private static final int MAGIC = 0x4A444958; // "JDIX"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final Map<File, JarDigestIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    private JarDigestIndex(File file) {
+        this.file = file;
+        read(file, entries);
+    }
+
+    /** @return l'index de {@code file}, lu une seule fois par processus */
+    public static JarDigestIndex in(File file) {
+        return INDEXES.computeIfAbsent(file.getAbsoluteFile(), JarDigestIndex::new);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /** @return l'empreinte hexadecimale du contenu de {@code jar} */
+    public String digest(Path jar) throws IOException {
+        String path = jar.toAbsolutePath().toString();
+        StatIndex.FileStat stat = StatIndex.stat(jar);
+        if (stat == null) {
+            throw new IOException("Cannot read attributes of " + jar);
+        }
+        Entry entry = entries.get(path);
+        if (entry != null && entry.size == stat.getSize() && entry.modified == stat.getModified()) {
+            return entry.digest;
+        }
+        String digest = sha256(jar);
+        if (!stat.isRacy()) {
+            entries.put(path, new Entry(stat.getSize(), stat.getModified(), digest));
+            dirty = true;
+        }
+        return digest;
+    }
+
+    /** Ecrit l'index s'il a change (fichier temporaire puis renommage). */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        // Entrees ajoutees par d'autres processus depuis la lecture : les notres priment
+        Map<String, Entry> merged = new ConcurrentHashMap<>();
+        read(file, merged);
+        merged.putAll(entries);
+        write(merged);
+    }
+
+    /**
+     * Oublie les JARs qui n'existent plus (supprimes du depot local) et reecrit l'index.
+     *
+     * @return le nombre d'entrees supprimees
+     */
+    public synchronized int removeMissing() {
+        Map<String, Entry> merged = new ConcurrentHashMap<>();
+        read(file, merged);
+        merged.putAll(entries);
+        int before = merged.size();
+        merged.keySet().removeIf(path -> !new File(path).exists());
+        entries.keySet().retainAll(merged.keySet());
+        if (merged.size() < before) {
+            write(merged);
+        }
+        return before - merged.size();
+    }
+
+    private void write(Map<String, Entry> merged) {
+        Path target = file.toPath();
+        Path tmp = target.resolveSibling(file.getName() + "." + ProcessHandle.current().pid() + ".tmp");
+        try {
+            Files.createDirectories(target.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp),
+                    BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(merged.size());
+                for (Map.Entry<String, Entry> e : merged.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeLong(e.getValue().size);
+                    out.writeLong(e.getValue().modified);
+                    out.writeUTF(e.getValue().digest);
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            entries.putAll(merged);
+            dirty = false;
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    public static String sha256(Path file) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new RuntimeException(nsae);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                md.update(buffer, 0, read);
+            }
+        }
+        return Hex.encodeHexString(md.digest());
+    }
+
+    private static void read(File file, Map<String, Entry> into) {
+        if (!file.exists()) {
+            return;
+        }
+        Map<String, Entry> entries = new ConcurrentHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()),
+                BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                entries.put(path, new Entry(in.readLong(), in.readLong(), in.readUTF()));
+            }
+        } catch (IOException ioe) {
+            LOGGER.log(Level.WARNING, "Ignoring corrupt jar digest index " + file + ": " + ioe);
+            return;
+        }
+        into.putAll(entries);
+    }
+
+    private static final class Entry {
+        private final long size;
+        private final long modified;
+        private final String digest;
+
+        Entry(long size, long modified, String digest) {
+            this.size = size;
+            this.modified = modified;
+            this.digest = digest;
+        }
+    }
+}
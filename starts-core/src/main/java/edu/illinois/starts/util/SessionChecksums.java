@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Checksums deja calcules pendant l'invocation Maven courante, partages par tous les mojos
+ * et helpers : les classes hachees par le diff ne sont pas relues par la mise a jour du ZLC
+ * apres les tests.
+ *
+ * <p>Le realm du plugin peut survivre au build (daemon mvnd) : les mojos declarent le build
+ * courant avec {@link #startBuild(String)}, et les checksums d'un build precedent sont alors
+ * oublies.
+ *
+ * <p>Une entree n'est reprise que si le fichier (le JAR pour une entree {@code jar:}) a la
+ * meme taille et la meme date qu'au moment du calcul, et qu'il n'etait pas "racy" a ce
+ * moment-la (voir {@link StatIndex}). Un cache par valeur de {@code cleanBytes} et algorithme.
+ *
+ * <p>Utilisable depuis plusieurs threads.
+ */
+public final class SessionChecksums {
+    private static final Map<String, SessionChecksums> CACHES = new ConcurrentHashMap<>();
+    private static String build;
+
+    private final Map<String, Entry> checksums = new ConcurrentHashMap<>();
+
+    private SessionChecksums() {
+    }
+
+    /**
+     * Vide les caches si {@code buildId} n'est pas celui du build qui les a remplis. Appele
+     * par chaque mojo avant de calculer des checksums.
+     *
+     * @param buildId identifiant du build Maven courant, null s'il est inconnu (caches gardes)
+     */
+    public static synchronized void startBuild(String buildId) {
+        if (buildId != null && !buildId.equals(build)) {
+            CACHES.clear();
+            build = buildId;
+        }
+    }
+
+    /** @param hashKey voir {@link ClassHasher#key(boolean, edu.illinois.starts.enums.HashAlgorithm)} */
+    public static SessionChecksums get(String hashKey) {
+        return CACHES.computeIfAbsent(hashKey, k -> new SessionChecksums());
+    }
+
+    /**
+     * @param stat attributs actuels du fichier (du JAR pour une entree {@code jar:})
+     * @return le checksum calcule plus tot dans le build si le fichier n'a pas change, sinon null
+     */
+    public String lookup(String url, StatIndex.FileStat stat) {
+        Entry entry = checksums.get(canonical(url));
+        return entry == null || !entry.stat.sameAs(stat) ? null : entry.checksum;
+    }
+
+    /** @param stat attributs du fichier pris AVANT son calcul */
+    public void record(String url, StatIndex.FileStat stat, String checksum) {
+        if (stat.isRacy()) {
+            checksums.remove(canonical(url));
+        } else {
+            checksums.put(canonical(url), new Entry(stat, checksum));
+        }
+    }
+
+    public int size() {
+        return checksums.size();
+    }
+
+    public void clear() {
+        checksums.clear();
+    }
+
+    /** "file:///x" et "file:/x" (idem dans une URL {@code jar:}) designent la meme classe. */
+    static String canonical(String url) {
+        if (url.startsWith("file:///")) {
+            return "file:/" + url.substring("file:///".length());
+        }
+        if (url.startsWith("jar:file:///")) {
+            return "jar:file:/" + url.substring("jar:file:///".length());
+        }
+        return url;
+    }
+
+    private static final class Entry {
+        private final StatIndex.FileStat stat;
+        private final String checksum;
+
+        Entry(StatIndex.FileStat stat, String checksum) {
+            this.stat = stat;
+            this.checksum = checksum;
+        }
+    }
+}
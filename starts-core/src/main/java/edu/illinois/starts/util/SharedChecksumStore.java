@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+import edu.illinois.starts.constants.StartsConstants;
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Checksums des entrees des JARs des modules amont, partages entre tous les modules d'un
+ * build (et entre processus) via le workDir : une classe de archi-jar est checksummee une
+ * fois, puis relue par chacun des modules qui en dependent.
+ *
+ * <p>Une version de JAR est identifiee par son chemin, sa taille et sa date :
+ * {@code <dir>/<md5 du chemin>/<taille>-<date>-<cle du hash>/} (voir {@link ClassHasher#key}). Chaque module y publie les
+ * entrees qu'il a du calculer dans un nouveau segment ({@code *.sum}), ecrit dans un fichier
+ * temporaire puis renomme : un segment visible est toujours complet, et les segments ne sont
+ * jamais modifies, ce qui permet des lecteurs et ecrivains concurrents sans verrou. Les
+ * versions precedentes du meme JAR sont supprimees a la publication d'une nouvelle.
+ *
+ * <p>Utilisable depuis plusieurs threads.
+ */
+public class SharedChecksumStore implements StartsConstants {
+    private static final Logger LOGGER = Logger.getGlobal();
+    /** Sous-repertoire du workDir. */
+    public static final String DIR_NAME = "shared-checksums";
+    private static final String SEGMENT_EXTENSION = ".sum";
+    private static final Map<File, SharedChecksumStore> STORES = new ConcurrentHashMap<>();
+
+    private final File dir;
+    /** Version de JAR -> (entree -> checksum) des segments deja lus par ce processus. */
+    private final Map<Path, Map<String, String>> loaded = new ConcurrentHashMap<>();
+    private final Map<Path, Set<String>> readSegments = new ConcurrentHashMap<>();
+
+    public SharedChecksumStore(File dir) {
+        this.dir = dir;
+    }
+
+    /** @return le store de {@code dir}, le meme pour tous les modules du build (segments deja lus en memoire) */
+    public static SharedChecksumStore in(File dir) {
+        return STORES.computeIfAbsent(dir.getAbsoluteFile(), SharedChecksumStore::new);
+    }
+
+    /**
+     * @param jarUrl     URL {@code file:} du JAR
+     * @param jarStat    attributs du JAR, pris avant la lecture de ses entrees
+     * @param hashKey    voir {@link ClassHasher#key}
+     * @return entree (partie de l'URL apres "!/") -> checksum, vide si rien n'est publie ou si
+     *         le JAR vient d'etre modifie
+     */
+    public Map<String, String> load(String jarUrl, StatIndex.FileStat jarStat, String hashKey) {
+        if (jarStat.isRacy()) {
+            return Collections.emptyMap();
+        }
+        Path version = versionDir(jarUrl, jarStat, hashKey);
+        Map<String, String> checksums = loaded.computeIfAbsent(version, v -> new ConcurrentHashMap<>());
+        Set<String> read = readSegments.computeIfAbsent(version, v -> ConcurrentHashMap.newKeySet());
+        if (!Files.isDirectory(version)) {
+            return checksums;
+        }
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(version, "*" + SEGMENT_EXTENSION)) {
+            for (Path segment : segments) {
+                if (read.add(segment.getFileName().toString())) {
+                    readSegment(segment, checksums);
+                }
+            }
+        } catch (IOException ioe) {
+            // Version supprimee par un autre processus : equivalent a un cache vide
+            LOGGER.log(Level.FINEST, "Cannot list shared checksums " + version + ": " + ioe);
+        }
+        return checksums;
+    }
+
+    /**
+     * Publie les checksums calcules pour des entrees du JAR.
+     *
+     * @param checksums entree (partie de l'URL apres "!/") -> checksum
+     */
+    public void publish(String jarUrl, StatIndex.FileStat jarStat, String hashKey, Map<String, String> checksums) {
+        if (checksums.isEmpty() || jarStat.isRacy()) {
+            return;
+        }
+        Path version = versionDir(jarUrl, jarStat, hashKey);
+        try {
+            if (!Files.isDirectory(version)) {
+                Files.createDirectories(version);
+                deleteOtherVersions(version);
+            }
+            String name = "seg-" + ProcessHandle.current().pid() + "-" + System.nanoTime();
+            Path tmp = version.resolve(name + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, String> entry : checksums.entrySet()) {
+                    writer.write(entry.getKey() + WHITE_SPACE + entry.getValue());
+                    writer.newLine();
+                }
+            }
+            Path segment = version.resolve(name + SEGMENT_EXTENSION);
+            Files.move(tmp, segment, StandardCopyOption.ATOMIC_MOVE);
+            readSegments.computeIfAbsent(version, v -> ConcurrentHashMap.newKeySet()).add(name + SEGMENT_EXTENSION);
+            loaded.computeIfAbsent(version, v -> new ConcurrentHashMap<>()).putAll(checksums);
+        } catch (IOException ioe) {
+            // Le partage est une optimisation : un echec ne fait que laisser le calcul aux autres modules
+            LOGGER.log(Level.FINEST, "Cannot publish shared checksums " + version + ": " + ioe);
+        }
+    }
+
+    private Path versionDir(String jarUrl, StatIndex.FileStat jarStat, String hashKey) {
+        return dir.toPath().resolve(md5(SessionChecksums.canonical(jarUrl)))
+                .resolve(jarStat.getSize() + "-" + jarStat.getModified() + "-" + hashKey);
+    }
+
+    private static void readSegment(Path segment, Map<String, String> checksums) {
+        try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space > 0) {
+                    checksums.put(line.substring(0, space), line.substring(space + 1));
+                }
+            }
+        } catch (IOException ioe) {
+            LOGGER.log(Level.FINEST, "Cannot read shared checksums " + segment + ": " + ioe);
+        }
+    }
+
+    /** Les autres versions du meme JAR ne serviront plus (meilleur effort). */
+    private static void deleteOtherVersions(Path version) {
+        try (DirectoryStream<Path> versions = Files.newDirectoryStream(version.getParent())) {
+            for (Path other : versions) {
+                if (!other.equals(version)) {
+                    deleteVersion(other);
+                }
+            }
+        } catch (IOException ioe) {
+            LOGGER.log(Level.FINEST, "Cannot prune shared checksums of " + version.getParent() + ": " + ioe);
+        }
+    }
+
+    private static void deleteVersion(Path version) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(version)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (NoSuchFileException nsfe) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(version);
+        } catch (DirectoryNotEmptyException dnee) {
+            // Un autre processus vient d'y publier un segment : il sera supprime plus tard
+        }
+    }
+
+    private static String md5(String value) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            return Hex.encodeHexString(md.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new RuntimeException(nsae);
+        }
+    }
+}
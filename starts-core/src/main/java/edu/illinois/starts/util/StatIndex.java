@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.enums.HashAlgorithm;
+import edu.illinois.starts.helpers.Writer;
+
+/**
+ * Taille et date de modification des fichiers .class deja checksummes, a la maniere de
+ * l'index de git : un fichier dont la taille et la date n'ont pas change depuis le dernier
+ * calcul reprend son checksum sans etre relu.
+ *
+ * <p>Une entree est ignoree si le fichier a ete modifie moins de {@link #RACY_WINDOW_MS}
+ * avant la prise de ses attributs : une recompilation dans la meme tranche de temps que le
+ * calcul ne changerait pas la date (granularite du systeme de fichiers) et passerait
+ * inapercue. Ces entrees sont recalculees, et enregistrees de nouveau, au run suivant.
+ *
+ * <p>Les entrees de JAR ({@code jar:}) sont validees par le CRC-32 et la taille que le
+ * repertoire central du JAR donne pour chaque entree : une seule lecture du repertoire
+ * central par JAR suffit, sans decompresser les classes inchangees.
+ *
+ * <p>Utilisable depuis plusieurs threads.
+ */
+public class StatIndex implements StartsConstants {
+    private static final Logger LOGGER = Logger.getGlobal();
+    private static final int MAGIC = 0x53544958; // "STIX"
+    private static final int VERSION = 3;
+    /** Couvre les systemes de fichiers a granularite grossiere (FAT : 2 s). */
+    private static final long RACY_WINDOW_MS = 2000;
+
+    private final boolean cleanBytes;
+    private final HashAlgorithm algorithm;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, JarEntryState> jarEntries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    public StatIndex(boolean cleanBytes) {
+        this(cleanBytes, ClassHasher.getDefaultAlgorithm());
+    }
+
+    public StatIndex(boolean cleanBytes, HashAlgorithm algorithm) {
+        this.cleanBytes = cleanBytes;
+        this.algorithm = algorithm;
+    }
+
+    public static StatIndex load(File file, boolean cleanBytes) {
+        return load(file, cleanBytes, ClassHasher.getDefaultAlgorithm());
+    }
+
+    /**
+     * @return l'index de {@code file}, ou un index vide s'il n'existe pas, est illisible ou a
+     *         ete calcule avec une autre valeur de {@code cleanBytes} ou un autre algorithme
+     */
+    public static StatIndex load(File file, boolean cleanBytes, HashAlgorithm algorithm) {
+        StatIndex index = new StatIndex(cleanBytes, algorithm);
+        if (!file.exists()) {
+            return index;
+        }
+        long start = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()),
+                1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readBoolean() != cleanBytes
+                    || !in.readUTF().equals(algorithm.name())) {
+                return index;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String url = in.readUTF();
+                index.entries.put(url, new Entry(in.readLong(), in.readLong(), in.readLong(), in.readUTF()));
+            }
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String url = in.readUTF();
+                index.jarEntries.put(url, new JarEntryState(in.readLong(), in.readLong(), in.readUTF()));
+            }
+        } catch (IOException ioe) {
+            LOGGER.log(Level.WARNING, "Ignoring corrupt stat index " + file + ": " + ioe);
+            index.entries.clear();
+            index.jarEntries.clear();
+        }
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "[PROFILE] loadStatIndex(entries=" + index.entries.size() + ", jarEntries="
+                + index.jarEntries.size() + "): "
+                + Writer.millsToLog(end - start));
+        return index;
+    }
+
+    /** Ecrit l'index s'il a change (fichier temporaire puis renommage). */
+    public void save(File file) {
+        if (!dirty) {
+            return;
+        }
+        Path target = file.toPath();
+        Path tmp = target.resolveSibling(file.getName() + ".tmp");
+        try {
+            Files.createDirectories(target.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp),
+                    1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeBoolean(cleanBytes);
+                out.writeUTF(algorithm.name());
+                Map<String, Entry> snapshot = Map.copyOf(entries);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeLong(e.getValue().size);
+                    out.writeLong(e.getValue().modified);
+                    out.writeLong(e.getValue().statTime);
+                    out.writeUTF(e.getValue().checksum);
+                }
+                Map<String, JarEntryState> jarSnapshot = Map.copyOf(jarEntries);
+                out.writeInt(jarSnapshot.size());
+                for (Map.Entry<String, JarEntryState> e : jarSnapshot.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeLong(e.getValue().crc);
+                    out.writeLong(e.getValue().size);
+                    out.writeUTF(e.getValue().checksum);
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    public boolean isCleanBytes() {
+        return cleanBytes;
+    }
+
+    public HashAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public int size() {
+        return entries.size() + jarEntries.size();
+    }
+
+    /** Oublie les URLs qui ne sont plus suivies (classes supprimees, modules retires). */
+    public void retainAll(Collection<String> urls) {
+        Set<String> kept = urls instanceof Set ? (Set<String>) urls : new HashSet<>(urls);
+        if (entries.keySet().retainAll(kept) | jarEntries.keySet().retainAll(kept)) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Attributs actuels du fichier d'une URL {@code file:}, a prendre AVANT de le lire.
+     *
+     * @return null pour une autre URL ou un fichier absent
+     */
+    public static FileStat stat(String url) {
+        if (!url.startsWith("file:")) {
+            return null;
+        }
+        try {
+            return stat(Paths.get(new URI(url)));
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    /** @return les attributs actuels de {@code file}, null s'il est absent */
+    public static FileStat stat(Path file) {
+        try {
+            long now = System.currentTimeMillis();
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new FileStat(attributes.size(), attributes.lastModifiedTime().toMillis(), now);
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    /** @return le checksum enregistre si le fichier n'a pas change depuis, sinon null */
+    public String lookup(String url, FileStat stat) {
+        Entry entry = entries.get(url);
+        if (entry == null || entry.size != stat.size || entry.modified != stat.modified
+                || entry.modified + RACY_WINDOW_MS >= entry.statTime) {
+            return null;
+        }
+        return entry.checksum;
+    }
+
+    public void record(String url, FileStat stat, String checksum) {
+        Entry previous = entries.put(url, new Entry(stat.size, stat.modified, stat.time, checksum));
+        if (previous == null || previous.size != stat.size || previous.modified != stat.modified
+                || previous.statTime != stat.time || !previous.checksum.equals(checksum)) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * @param url  URL {@code jar:} de l'entree
+     * @param crc  CRC-32 de l'entree dans le repertoire central
+     * @param size taille decompressee de l'entree
+     * @return le checksum enregistre si l'entree n'a pas change depuis, sinon null
+     */
+    public String lookupJarEntry(String url, long crc, long size) {
+        JarEntryState state = jarEntries.get(url);
+        return state == null || state.crc != crc || state.size != size ? null : state.checksum;
+    }
+
+    public void recordJarEntry(String url, long crc, long size, String checksum) {
+        JarEntryState previous = jarEntries.put(url, new JarEntryState(crc, size, checksum));
+        if (previous == null || previous.crc != crc || previous.size != size || !previous.checksum.equals(checksum)) {
+            dirty = true;
+        }
+    }
+
+    /** Taille, date de modification et instant de lecture des attributs d'un fichier. */
+    public static final class FileStat {
+        private final long size;
+        private final long modified;
+        private final long time;
+
+        FileStat(long size, long modified, long time) {
+            this.size = size;
+            this.modified = modified;
+            this.time = time;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getModified() {
+            return modified;
+        }
+
+        /** @return true si la taille et la date sont celles de {@code other} */
+        boolean sameAs(FileStat other) {
+            return size == other.size && modified == other.modified;
+        }
+
+        /** @return true si le fichier a pu etre modifie de nouveau sans que sa date change */
+        public boolean isRacy() {
+            return modified + RACY_WINDOW_MS >= time;
+        }
+    }
+
+    private static final class Entry {
+        private final long size;
+        private final long modified;
+        private final long statTime;
+        private final String checksum;
+
+        Entry(long size, long modified, long statTime, String checksum) {
+            this.size = size;
+            this.modified = modified;
+            this.statTime = statTime;
+            this.checksum = checksum;
+        }
+    }
+
+    private static final class JarEntryState {
+        private final long crc;
+        private final long size;
+        private final String checksum;
+
+        JarEntryState(long crc, long size, String checksum) {
+            this.crc = crc;
+            this.size = size;
+            this.checksum = checksum;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.util;
+
+import java.util.Arrays;
+
+/**
+ * Table de noms (FQN) -> identifiant entier dense, 0..size()-1.
+ *
+ * <p>Un nom n'est materialise en String qu'a sa premiere occurrence : les
+ * suivantes sont resolues directement depuis un tampon de caracteres, sans
+ * allocation. Toutes les occurrences d'un nom partagent ainsi la meme instance.
+ *
+ * <p>Non thread-safe.
+ */
+public class SymbolTable {
+    private static final int NONE = -1;
+
+    private String[] names;
+    private int[] hashes;
+    /** Table ouverte (sondage lineaire) : slot -> identifiant, NONE si vide. */
+    private int[] slots;
+    private int size;
+
+    public SymbolTable() {
+        this(1024);
+    }
+
+    public SymbolTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        names = new String[capacity / 2];
+        hashes = new int[capacity / 2];
+        slots = new int[capacity];
+        Arrays.fill(slots, NONE);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    /** Identifiant de {@code name}, ou -1 s'il n'est pas dans la table. */
+    public int find(String name) {
+        int hash = name.hashCode();
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; slots[slot] != NONE; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (hashes[id] == hash && names[id].equals(name)) {
+                return id;
+            }
+        }
+        return NONE;
+    }
+
+    public int intern(String name) {
+        int hash = name.hashCode();
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        for (; slots[slot] != NONE; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (hashes[id] == hash && names[id].equals(name)) {
+                return id;
+            }
+        }
+        return add(slot, hash, name);
+    }
+
+    /** Meme chose que {@code intern(new String(buf, offset, length))}, sans allouer si le nom est connu. */
+    public int intern(char[] buf, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + buf[i];
+        }
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        for (; slots[slot] != NONE; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (hashes[id] == hash && sameChars(names[id], buf, offset, length)) {
+                return id;
+            }
+        }
+        return add(slot, hash, new String(buf, offset, length));
+    }
+
+    private int add(int slot, int hash, String name) {
+        int id = size++;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        names[id] = name;
+        hashes[id] = hash;
+        slots[slot] = id;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        int[] newSlots = new int[slots.length * 2];
+        Arrays.fill(newSlots, NONE);
+        int mask = newSlots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (newSlots[slot] != NONE) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = id;
+        }
+        slots = newSlots;
+    }
+
+    private static boolean sameChars(String name, char[] buf, int offset, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != buf[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Les FQN d'un meme package ont des hashCode proches : on les disperse. */
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
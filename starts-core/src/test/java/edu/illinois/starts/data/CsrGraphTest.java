@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class CsrGraphTest {
+
+    private static CsrGraph graph() {
+        CsrGraph.Builder builder = new CsrGraph.Builder();
+        builder.addEdge("A", "B");
+        builder.addEdge("A", "C");
+        builder.addEdge("A", "B");
+        builder.addEdge("B", "C");
+        builder.addEdge("C", "B");
+        builder.addVertex("Isolated");
+        return builder.build();
+    }
+
+    @Test
+    public void testBuildRemovesDuplicateEdges() {
+        CsrGraph graph = graph();
+        assertEquals(4, graph.getVertexCount());
+        assertEquals(4, graph.getEdgeCount());
+        assertEquals(new HashSet<>(Arrays.asList("B", "C")), graph.getSuccessors("A"));
+        assertEquals(new HashSet<>(Arrays.asList("A", "C")), graph.getPredecessors("B"));
+        assertTrue(graph.getSuccessors("Isolated").isEmpty());
+        assertTrue(graph.getSuccessors("Unknown").isEmpty());
+        assertEquals(-1, graph.getId("Unknown"));
+    }
+
+    @Test
+    public void testReachability() {
+        CsrGraph graph = graph();
+        Set<String> forward = graph.acceptForward(Arrays.asList("B"));
+        assertEquals(new HashSet<>(Arrays.asList("B", "C")), forward);
+        Set<String> backward = graph.acceptBackward(Arrays.asList("C"));
+        assertEquals(new HashSet<>(Arrays.asList("A", "B", "C")), backward);
+    }
+
+    @Test
+    public void testForEachEdge() {
+        Set<String> edges = new HashSet<>();
+        graph().forEachEdge((src, dst) -> edges.add(src + " " + dst));
+        assertEquals(new HashSet<>(Arrays.asList("A B", "A C", "B C", "C B")), edges);
+    }
+}
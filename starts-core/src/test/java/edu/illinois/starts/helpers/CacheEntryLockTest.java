@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class CacheEntryLockTest {
+
+    @Test
+    public void testOneHolderAtATime() throws Exception {
+        File entry = new File(Files.createTempDirectory("jdeps-cache").toFile(), "by-digest/ab/abcd.graph");
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch firstHolds = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> first = pool.submit(() -> {
+                try (CacheEntryLock lock = CacheEntryLock.acquire(entry)) {
+                    events.add("first acquired");
+                    firstHolds.countDown();
+                    Thread.sleep(200);
+                    events.add("first released");
+                }
+                return null;
+            });
+            assertTrue(firstHolds.await(5, TimeUnit.SECONDS));
+            Future<?> second = pool.submit(() -> {
+                try (CacheEntryLock lock = CacheEntryLock.acquire(entry)) {
+                    events.add("second acquired");
+                }
+                return null;
+            });
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(List.of("first acquired", "first released", "second acquired"), events);
+        assertTrue(new File(entry.getPath() + CacheEntryLock.LOCK_EXTENSION).exists());
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import edu.illinois.starts.util.JarDigestIndex;
+import org.junit.Test;
+
+public class CacheTest {
+
+    @Test
+    public void testGraphFoundByJarContent() throws IOException {
+        Path m2 = Files.createTempDirectory("m2");
+        File jdepsCache = Files.createTempDirectory("jdeps-cache").toFile();
+        Path jar = writeJar(m2, "com/efluid/lib/1.0-SNAPSHOT/lib-1.0-SNAPSHOT.jar", "v1");
+        Path copy = writeJar(Files.createTempDirectory("other-m2"),
+                "com/efluid/lib/1.0-SNAPSHOT/lib-1.0-SNAPSHOT.jar", "v1");
+        writeGraph(jdepsCache, jar, "a.A", "b.B");
+
+        // Meme contenu a un autre chemin : meme graphe
+        String classpath = jar + File.pathSeparator + copy;
+        assertEquals(Collections.singleton("a.A b.B"),
+                new Cache(jdepsCache, m2.toString()).loadM2EdgesFromCache(classpath).toStrings());
+
+        // SNAPSHOT reinstalle au meme chemin : le graphe de l'ancien contenu n'est plus servi
+        writeJar(m2, "com/efluid/lib/1.0-SNAPSHOT/lib-1.0-SNAPSHOT.jar", "v2");
+        writeGraph(jdepsCache, jar, "a.A", "c.C");
+        assertEquals(Collections.singleton("a.A c.C"),
+                new Cache(jdepsCache, m2.toString()).loadM2EdgesFromCache(jar.toString()).toStrings());
+    }
+
+    @Test
+    public void testPathKeyedGraphAdoptedForReleasedJar() throws IOException {
+        Path m2 = Files.createTempDirectory("m2");
+        File jdepsCache = Files.createTempDirectory("jdeps-cache").toFile();
+        Path jar = writeJar(m2, "com/efluid/lib/1.0/lib-1.0.jar", "v1");
+        File pathKeyed = new File(jdepsCache, "com/efluid/lib/1.0/lib-1.0.graph");
+        pathKeyed.getParentFile().mkdirs();
+        Files.write(pathKeyed.toPath(), Collections.singletonList("a.A b.B"));
+
+        assertEquals(Collections.singleton("a.A b.B"),
+                new Cache(jdepsCache, m2.toString()).loadM2EdgesFromCache(jar.toString()).toStrings());
+        assertTrue(graphFile(jdepsCache, jar).exists());
+    }
+
+    @Test
+    public void testMissingGraphsCreatedPerJar() throws IOException {
+        Path m2 = Files.createTempDirectory("m2");
+        File jdepsCache = Files.createTempDirectory("jdeps-cache").toFile();
+        Path jar = writeFixtureJar(m2, "com/efluid/lib/1.0/lib-1.0.jar");
+        Path broken = writeJar(m2, "com/efluid/broken/1.0/broken-1.0.jar", "not a jar");
+
+        Cache cache = new Cache(jdepsCache, m2.toString());
+        cache.setParallelism(2);
+        try {
+            cache.loadM2EdgesFromCache(jar + File.pathSeparator + broken);
+            fail();
+        } catch (RuntimeException re) {
+            assertTrue(re.getMessage(), re.getMessage().contains(broken.toString()));
+            assertFalse(re.getMessage(), re.getMessage().contains(jar.toString()));
+        }
+        // Le graphe du JAR lisible est publie malgre l'echec de l'autre
+        assertTrue(graphFile(jdepsCache, jar).exists());
+        assertTrue(new Cache(jdepsCache, m2.toString()).loadM2EdgesFromCache(jar.toString()).toStrings()
+                .contains(Fixture.class.getName() + " java.lang.StringBuilder"));
+    }
+
+    @Test
+    public void testCorruptGraphRebuilt() throws IOException {
+        Path m2 = Files.createTempDirectory("m2");
+        File jdepsCache = Files.createTempDirectory("jdeps-cache").toFile();
+        Path jar = writeFixtureJar(m2, "com/efluid/lib/1.0/lib-1.0.jar");
+        File graph = graphFile(jdepsCache, jar);
+        graph.getParentFile().mkdirs();
+        // Graphe tronque apres l'en-tete
+        Files.write(graph.toPath(), new byte[] {'S', 'T', 'G', 'B', 0, 0, 0, 1, 0, 0, 0, 9});
+
+        assertTrue(new Cache(jdepsCache, m2.toString()).loadM2EdgesFromCache(jar.toString()).toStrings()
+                .contains(Fixture.class.getName() + " java.lang.StringBuilder"));
+        CachedEdges rebuilt = new CachedEdges();
+        GraphCacheFile.read(graph, rebuilt);
+        assertTrue(rebuilt.size() > 0);
+        // Le graphe recalcule est un miss, pas un hit
+        GraphCacheManager.Stats stats = new GraphCacheManager(jdepsCache).stats();
+        assertEquals(0, stats.getHits());
+        assertEquals(1, stats.getMisses());
+    }
+
+    @Test
+    public void testConcurrentBuildersShareOneGraph() throws Exception {
+        Path m2 = Files.createTempDirectory("m2");
+        File jdepsCache = Files.createTempDirectory("jdeps-cache").toFile();
+        Path jar = writeFixtureJar(m2, "com/efluid/lib/1.0/lib-1.0.jar");
+        // Un Cache par "module", comme les modules d'un build parallele
+        List<Cache> caches = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            caches.add(new Cache(jdepsCache, m2.toString()));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(caches.size());
+        try {
+            List<Future<Set<String>>> modules = new ArrayList<>();
+            for (Cache cache : caches) {
+                modules.add(pool.submit(() -> cache.loadM2EdgesFromCache(jar.toString()).toStrings()));
+            }
+            for (Future<Set<String>> module : modules) {
+                assertTrue(module.get().contains(Fixture.class.getName() + " java.lang.StringBuilder"));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        // Un seul module a calcule le graphe, les autres ont repris celui qu'il a publie
+        int builders = 0;
+        for (Cache cache : caches) {
+            builders += cache.getCreatedGraphs().size();
+        }
+        assertEquals(1, builders);
+        // Les verrous entre threads ne survivent pas a leur derniere utilisation
+        assertEquals(0, CacheEntryLock.inProcess());
+        File[] entries = graphFile(jdepsCache, jar).getParentFile().listFiles();
+        for (File file : entries) {
+            assertFalse(file.getName(), file.getName().endsWith(".tmp"));
+        }
+    }
+
+    static class Fixture implements Runnable {
+        public void run() {
+            new StringBuilder().append(1);
+        }
+    }
+
+    private static Path writeJar(Path m2, String path, String content) throws IOException {
+        Path jar = m2.resolve(path);
+        Files.createDirectories(jar.getParent());
+        return Files.write(jar, content.getBytes());
+    }
+
+    private static Path writeFixtureJar(Path m2, String path) throws IOException {
+        String resource = Fixture.class.getName().replace('.', '/') + ".class";
+        Path jar = m2.resolve(path);
+        Files.createDirectories(jar.getParent());
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar));
+             InputStream in = Fixture.class.getResourceAsStream("/" + resource)) {
+            out.putNextEntry(new JarEntry(resource));
+            out.write(in.readAllBytes());
+        }
+        return jar;
+    }
+
+    private static void writeGraph(File jdepsCache, Path jar, String source, String target) throws IOException {
+        GraphCacheFile.write(graphFile(jdepsCache, jar),
+                Collections.singletonMap(source, Collections.singleton(target)));
+    }
+
+    private static File graphFile(File jdepsCache, Path jar) throws IOException {
+        String digest = JarDigestIndex.sha256(jar);
+        return new File(jdepsCache, "by-digest/" + digest.substring(0, 2) + "/" + digest + ".graph");
+    }
+}
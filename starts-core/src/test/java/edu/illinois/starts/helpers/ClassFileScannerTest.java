@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+public class ClassFileScannerTest {
+
+    static class Fixture implements Callable<Integer> {
+        @Deprecated
+        List<StringBuilder> field;
+
+        public Integer call() throws IOException {
+            Runnable task = () -> { };
+            task.run();
+            return 0;
+        }
+    }
+
+    private static byte[] bytesOf(Class<?> clz) throws IOException {
+        String resource = "/" + clz.getName().replace('.', '/') + ".class";
+        try (InputStream in = clz.getResourceAsStream(resource)) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    public void testScanFindsJdepsDependencies() throws IOException {
+        Set<String> deps = new HashSet<>();
+        String name = ClassFileScanner.scan(bytesOf(Fixture.class), deps);
+        assertEquals(Fixture.class.getName(), name);
+        // super-classe, interface, outer class
+        assertTrue(deps.contains("java.lang.Object"));
+        assertTrue(deps.contains("java.util.concurrent.Callable"));
+        assertTrue(deps.contains(ClassFileScannerTest.class.getName()));
+        // descripteur et signature de champ, annotation
+        assertTrue(deps.contains("java.util.List"));
+        assertTrue(deps.contains("java.lang.StringBuilder"));
+        assertTrue(deps.contains("java.lang.Deprecated"));
+        // exceptions, lambdas (invokedynamic)
+        assertTrue(deps.contains("java.io.IOException"));
+        assertTrue(deps.contains("java.lang.Runnable"));
+        assertTrue(deps.contains("java.lang.invoke.LambdaMetafactory"));
+        // jamais d'arete vers soi-meme
+        assertFalse(deps.contains(Fixture.class.getName()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testScanRejectsNonClassFile() {
+        ClassFileScanner.scan(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, new HashSet<>());
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.illinois.starts.data.CsrGraph;
+import org.junit.Test;
+
+public class ClosureEngineTest {
+
+    @Test
+    public void testClosureThroughCycles() {
+        // TestA -> Entity <-> Dao -> Util, TestB -> Dao
+        CsrGraph graph = new CsrGraph.Builder()
+                .addEdge("TestA", "Entity")
+                .addEdge("Entity", "Dao")
+                .addEdge("Dao", "Entity")
+                .addEdge("Dao", "Util")
+                .addEdge("TestB", "Dao")
+                .build();
+        Map<String, Set<String>> closures = Loadables.getTransitiveClosurePerClass(graph,
+                Arrays.asList("TestA", "TestB", "Missing"));
+        assertEquals(new HashSet<>(Arrays.asList("TestA", "Entity", "Dao", "Util")), closures.get("TestA"));
+        assertEquals(new HashSet<>(Arrays.asList("TestB", "Entity", "Dao", "Util")), closures.get("TestB"));
+        assertEquals(new HashSet<>(Arrays.asList("Missing")), closures.get("Missing"));
+    }
+
+    @Test
+    public void testCycleMembersShareOneClosure() {
+        CsrGraph graph = new CsrGraph.Builder()
+                .addEdge("A", "B")
+                .addEdge("B", "C")
+                .addEdge("C", "A")
+                .addEdge("C", "D")
+                .build();
+        ClosureEngine engine = new ClosureEngine(graph).compute(new int[] {graph.getId("A")});
+        assertEquals(2, engine.getComponentCount());
+        assertSame(engine.closureOf(graph.getId("A")), engine.closureOf(graph.getId("C")));
+        assertEquals(4, engine.closureOf(graph.getId("B")).cardinality());
+        assertEquals(1, engine.closureOf(graph.getId("D")).cardinality());
+    }
+
+    @Test
+    public void testParallelClosureMatchesSequential() {
+        // 200 tests -> 200 services (cycles deux a deux) -> 50 utilitaires : niveaux assez larges pour le fork/join
+        CsrGraph.Builder builder = new CsrGraph.Builder();
+        List<String> tests = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            tests.add("Test" + i);
+            builder.addEdge("Test" + i, "Service" + i);
+            builder.addEdge("Service" + i, "Service" + (i ^ 1));
+            builder.addEdge("Service" + i, "Util" + (i % 50));
+            builder.addEdge("Util" + (i % 50), "Util" + ((i % 50) / 2));
+        }
+        CsrGraph graph = builder.build();
+        Map<String, Set<String>> sequential = Loadables.getTransitiveClosurePerClass(graph, tests, 1);
+        assertEquals(sequential, Loadables.getTransitiveClosurePerClass(graph, tests, 4));
+        assertEquals(sequential, Loadables.getTransitiveClosurePerClass(graph, tests, 0));
+    }
+
+    @Test
+    public void testMatrixColumnsAndUnreached() {
+        // TestA -> Dao -> Util, TestB -> Util, Orphan -> Util
+        CsrGraph graph = new CsrGraph.Builder()
+                .addEdge("TestA", "Dao")
+                .addEdge("Dao", "Util")
+                .addEdge("TestB", "Util")
+                .addEdge("Orphan", "Util")
+                .build();
+        TestDependencyMatrix matrix = Loadables.computeTestDependencies(graph,
+                Arrays.asList("TestA", "TestB", "Missing"), 1);
+        Map<String, BitSet> columns = new HashMap<>();
+        matrix.forEachColumn(columns::put);
+        assertEquals(Arrays.asList("TestA", "TestB", "Missing"), matrix.getTests());
+        assertEquals(BitSet.valueOf(new long[] {0b011}), columns.get("Util"));
+        assertEquals(BitSet.valueOf(new long[] {0b001}), columns.get("Dao"));
+        assertEquals(BitSet.valueOf(new long[] {0b100}), columns.get("Missing"));
+        assertEquals(5, columns.size());
+        assertEquals(new HashSet<>(Arrays.asList("Orphan", "Gone")),
+                matrix.findUnreached(Arrays.asList("TestA", "Dao", "Util", "Orphan", "Gone", "Missing")));
+    }
+}
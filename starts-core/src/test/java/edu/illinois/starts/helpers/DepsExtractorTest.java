@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import edu.illinois.starts.enums.HashAlgorithm;
+import edu.illinois.starts.util.ClassHasher;
+import edu.illinois.starts.util.SessionChecksums;
+import edu.illinois.starts.util.StatIndex;
+import org.junit.Test;
+
+public class DepsExtractorTest {
+
+    static class Fixture implements Runnable {
+        public void run() {
+            new StringBuilder().append(1);
+        }
+    }
+
+    @Test
+    public void testChecksumComputedFromScannedBytes() throws IOException {
+        String resource = Fixture.class.getName().replace('.', '/') + ".class";
+        byte[] bytes;
+        try (InputStream in = Fixture.class.getResourceAsStream("/" + resource)) {
+            bytes = in.readAllBytes();
+        }
+        Path dir = Files.createTempDirectory("classes");
+        Path file = dir.resolve(resource);
+        Files.createDirectories(file.getParent());
+        Files.write(file, bytes);
+        // Compile bien avant la lecture : hors de la fenetre "racy"
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+
+        HashAlgorithm previous = ClassHasher.getDefaultAlgorithm();
+        ClassHasher.setDefaultAlgorithm(HashAlgorithm.XXH64);
+        try {
+            ScannedClasses scanned = new ScannedClasses();
+            Map<String, Set<String>> deps = DepsExtractor.extract(Collections.singletonList(dir.toString()),
+                    null, null, scanned);
+            assertTrue(deps.get(Fixture.class.getName()).contains("java.lang.StringBuilder"));
+
+            String url = file.toUri().toURL().toExternalForm();
+            assertEquals(url, scanned.locate(resource).toExternalForm());
+            assertEquals(url, scanned.over(getClass().getClassLoader()).getResource(resource).toExternalForm());
+            assertNull(scanned.locate("com/x/Missing.class"));
+
+            SessionChecksums session = SessionChecksums.get(ClassHasher.key(true, HashAlgorithm.XXH64));
+            assertEquals(ClassHasher.create(HashAlgorithm.XXH64, true).hash(bytes),
+                    session.lookup(url, StatIndex.stat(file)));
+        } finally {
+            ClassHasher.setDefaultAlgorithm(previous);
+        }
+    }
+
+    @Test
+    public void testUnchangedClassNotReadAgain() throws IOException {
+        String resource = Fixture.class.getName().replace('.', '/') + ".class";
+        byte[] bytes;
+        try (InputStream in = Fixture.class.getResourceAsStream("/" + resource)) {
+            bytes = in.readAllBytes();
+        }
+        Path dir = Files.createTempDirectory("classes");
+        Path file = dir.resolve(resource);
+        Files.createDirectories(file.getParent());
+        Files.write(file, bytes);
+        FileTime compiled = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        Files.setLastModifiedTime(file, compiled);
+        File storeFile = dir.resolveSibling(dir.getFileName() + "-edges").toFile();
+        DepsExtractor.extract(Collections.singletonList(dir.toString()), null, ClassEdgeStore.load(storeFile));
+
+        // Meme taille et meme date : le contenu (illisible) n'est pas relu
+        Files.write(file, new byte[bytes.length]);
+        Files.setLastModifiedTime(file, compiled);
+        Map<String, Set<String>> deps = DepsExtractor.extract(Collections.singletonList(dir.toString()), null,
+                ClassEdgeStore.load(storeFile));
+        assertTrue(deps.get(Fixture.class.getName()).contains("java.lang.StringBuilder"));
+    }
+
+    @Test
+    public void testFileWithoutClassRemembered() throws IOException {
+        Path dir = Files.createTempDirectory("classes");
+        Path file = Files.write(dir.resolve("Broken.class"), new byte[] {1, 2, 3});
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        File storeFile = dir.resolveSibling(dir.getFileName() + "-edges").toFile();
+        assertTrue(DepsExtractor.extract(Collections.singletonList(dir.toString()), null,
+                ClassEdgeStore.load(storeFile)).isEmpty());
+
+        // Retenu sans classe : pas relu tant que sa taille et sa date ne changent pas
+        ClassEdgeStore.Entry entry = ClassEdgeStore.load(storeFile).get(file.toString(), StatIndex.stat(file));
+        assertNotNull(entry);
+        assertFalse(entry.hasClass());
+        assertTrue(DepsExtractor.extract(Collections.singletonList(dir.toString()), null,
+                ClassEdgeStore.load(storeFile)).isEmpty());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class GraphCacheFileTest {
+
+    @Test
+    public void testTextGraphMigratedOnFirstRead() throws IOException {
+        File graph = new File(Files.createTempDirectory("jdeps-cache").toFile(), "lib-1.0.graph");
+        Files.write(graph.toPath(), Arrays.asList("a.A b.B", "a.A c.C", "broken", "b.B c.C"),
+                Charset.defaultCharset());
+        assertFalse(GraphCacheFile.isBinary(graph));
+
+        CachedEdges text = new CachedEdges();
+        GraphCacheFile.read(graph, text);
+        assertTrue(GraphCacheFile.isBinary(graph));
+        CachedEdges binary = new CachedEdges();
+        GraphCacheFile.read(graph, binary);
+
+        Set<String> expected = new HashSet<>(Arrays.asList("a.A b.B", "a.A c.C", "b.B c.C"));
+        assertEquals(expected, text.toStrings());
+        assertEquals(expected, binary.toStrings());
+    }
+
+    @Test
+    public void testNamesSharedBetweenJars() throws IOException {
+        File dir = Files.createTempDirectory("jdeps-cache").toFile();
+        Map<String, Set<String>> first = new LinkedHashMap<>();
+        first.put("a.A", new HashSet<>(Arrays.asList("b.B", "a.Caf\u00e9")));
+        first.put("a.Empty", Collections.emptySet());
+        Map<String, Set<String>> second = new LinkedHashMap<>();
+        second.put("b.B", Collections.singleton("a.A"));
+        GraphCacheFile.write(new File(dir, "first.graph"), first);
+        GraphCacheFile.write(new File(dir, "second.graph"), second);
+
+        CachedEdges edges = new CachedEdges();
+        GraphCacheFile.read(new File(dir, "first.graph"), edges);
+        GraphCacheFile.read(new File(dir, "second.graph"), edges);
+
+        assertEquals(new HashSet<>(Arrays.asList("a.A b.B", "a.A a.Caf\u00e9", "b.B a.A")), edges.toStrings());
+        // Les classes sans dependance ne sont pas ecrites, et chaque nom n'est resolu qu'une fois
+        assertEquals(3, edges.getSymbols().size());
+        assertEquals(Arrays.asList("first.graph", "second.graph"), sorted(dir.list()));
+    }
+
+    @Test
+    public void testCorruptGraphRejectedWithoutEdges() throws IOException {
+        File graph = new File(Files.createTempDirectory("jdeps-cache").toFile(), "lib-1.0.graph");
+        GraphCacheFile.write(graph, Collections.singletonMap("a.A", Collections.singleton("b.B")));
+        byte[] valid = Files.readAllBytes(graph.toPath());
+        // magic, version, 2 noms "a.A" et "b.B" (taille + 3 octets), 1 arete
+        assertEquals(4 + 4 + 4 + 2 * 4 + 4 + 8, valid.length);
+
+        List<byte[]> corrupt = new ArrayList<>();
+        corrupt.add(withInt(valid, 4, 2));                   // version inconnue
+        corrupt.add(withInt(valid, 8, Integer.MAX_VALUE));   // nombre de noms
+        corrupt.add(withInt(valid, 8, -1));
+        corrupt.add(withByte(valid, 12, (byte) 0x7F));       // taille d'un nom
+        corrupt.add(withByte(valid, 12, (byte) 0xFF));
+        corrupt.add(withInt(valid, 20, Integer.MAX_VALUE));  // nombre d'aretes
+        corrupt.add(withInt(valid, 24, 5));                  // nom inconnu
+        corrupt.add(Arrays.copyOf(valid, valid.length - 1));
+        corrupt.add(Arrays.copyOf(valid, 10));
+        for (byte[] bytes : corrupt) {
+            Files.write(graph.toPath(), bytes);
+            CachedEdges edges = new CachedEdges();
+            try {
+                GraphCacheFile.read(graph, edges);
+                fail(Arrays.toString(bytes));
+            } catch (GraphCacheFile.CorruptGraphException expected) {
+                assertEquals(0, edges.size());
+            }
+        }
+    }
+
+    private static byte[] withInt(byte[] bytes, int offset, int value) {
+        byte[] copy = bytes.clone();
+        ByteBuffer.wrap(copy).putInt(offset, value);
+        return copy;
+    }
+
+    private static byte[] withByte(byte[] bytes, int offset, byte value) {
+        byte[] copy = bytes.clone();
+        copy[offset] = value;
+        return copy;
+    }
+
+    private static List<String> sorted(String[] names) {
+        List<String> list = new ArrayList<>(Arrays.asList(names));
+        Collections.sort(list);
+        return list;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import edu.illinois.starts.util.JarDigestIndex;
+import org.junit.Test;
+
+public class GraphCacheManagerTest {
+
+    @Test
+    public void testLeastRecentlyUsedEvictedFirst() throws IOException {
+        File jdepsCache = Files.createTempDirectory("jdeps-cache").toFile();
+        File used = graph(jdepsCache, "by-digest/aa/aa.graph", 10);
+        File stale = graph(jdepsCache, "by-digest/bb/bb.graph", 5);
+        File created = graph(jdepsCache, "by-digest/cc/cc.graph", 0);
+        new File(stale.getPath() + CacheEntryLock.LOCK_EXTENSION).createNewFile();
+        GraphCacheManager manager = new GraphCacheManager(jdepsCache);
+        manager.recordAccess(Collections.singleton(used), Collections.singleton(created));
+
+        GraphCacheManager.Stats stats = manager.stats();
+        assertEquals(3, stats.getEntries());
+        assertEquals(300, stats.getBytes());
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(0.5, stats.getHitRate(), 0);
+
+        // Le plus ancien acces est celui de "stale" (date du fichier, absent de l'index)
+        GraphCacheManager.Stats evicted = manager.gc(250, 0);
+        assertEquals(1, evicted.getEntries());
+        assertEquals(100, evicted.getBytes());
+        assertFalse(stale.exists());
+        assertFalse(new File(stale.getPath() + CacheEntryLock.LOCK_EXTENSION).exists());
+        assertTrue(used.exists());
+        assertTrue(created.exists());
+        assertEquals(2, manager.stats().getEntries());
+    }
+
+    @Test
+    public void testUnusedGraphsEvictedByAge() throws IOException {
+        File jdepsCache = Files.createTempDirectory("jdeps-cache").toFile();
+        File old = graph(jdepsCache, "com/efluid/lib/1.0/lib-1.0.graph", 40);
+        File recent = graph(jdepsCache, "by-digest/aa/aa.graph", 1);
+
+        assertEquals(1, new GraphCacheManager(jdepsCache).gc(0, TimeUnit.DAYS.toMillis(30)).getEntries());
+        assertFalse(old.exists());
+        assertTrue(recent.exists());
+    }
+
+    @Test
+    public void testAccessesMergedByGc() throws IOException {
+        File jdepsCache = Files.createTempDirectory("jdeps-cache").toFile();
+        File graph = graph(jdepsCache, "by-digest/aa/aa.graph", 40);
+        GraphCacheManager manager = new GraphCacheManager(jdepsCache);
+        // Deux modules : chacun note ses acces a part, sans reecrire l'index
+        manager.recordAccess(Collections.singleton(graph), Collections.emptySet());
+        manager.recordAccess(Collections.singleton(graph), Collections.emptySet());
+        File journal = new File(jdepsCache, GraphCacheManager.ACCESS_JOURNAL);
+        assertEquals(2, journal.list().length);
+        assertFalse(new File(jdepsCache, GraphCacheManager.ACCESS_INDEX).exists());
+        assertEquals(2, manager.stats().getHits());
+
+        // Le dernier acces compte, pas la date du fichier
+        assertEquals(0, manager.gc(0, TimeUnit.DAYS.toMillis(30)).getEntries());
+        assertTrue(graph.exists());
+        assertEquals(0, journal.list().length);
+        assertEquals(2, manager.stats().getHits());
+    }
+
+    @Test
+    public void testDigestsOfDeletedJarsForgotten() throws IOException {
+        File jdepsCache = Files.createTempDirectory("jdeps-cache").toFile();
+        Path m2 = Files.createTempDirectory("m2");
+        Path kept = Files.write(m2.resolve("kept-1.0.jar"), "kept".getBytes());
+        Path deleted = Files.write(m2.resolve("deleted-1.0.jar"), "deleted".getBytes());
+        for (Path jar : Arrays.asList(kept, deleted)) {
+            jar.toFile().setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1));
+        }
+        JarDigestIndex digests = JarDigestIndex.in(new File(jdepsCache, Cache.DIGEST_INDEX));
+        digests.digest(kept);
+        digests.digest(deleted);
+        digests.save();
+        assertEquals(2, digests.size());
+        Files.delete(deleted);
+
+        new GraphCacheManager(jdepsCache).gc(0, 0);
+        assertEquals(1, digests.size());
+    }
+
+    /** Graphe de 100 octets, modifie il y a {@code daysAgo} jours. */
+    private static File graph(File jdepsCache, String path, int daysAgo) throws IOException {
+        File graph = new File(jdepsCache, path);
+        graph.getParentFile().mkdirs();
+        Files.write(graph.toPath(), new byte[100]);
+        graph.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(daysAgo));
+        return graph;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.Set;
+
+import edu.illinois.starts.util.SymbolTable;
+import org.junit.Test;
+
+public class JdepsOutputParserTest {
+
+    @Test
+    public void testParsesLinesAsTheyAreWritten() {
+        SymbolTable symbols = new SymbolTable();
+        JdepsOutputParser parser = new JdepsOutputParser(symbols);
+        PrintWriter out = new PrintWriter(parser);
+        out.println("classes -> java.base");
+        out.println("   p.A                 -> p.B                 classes");
+        out.print("   p.A                 -> java.lang");
+        assertEquals(1, parser.getDeps().get("p.A").size());
+        out.println(".Object    java.base");
+        out.println("   p.B                 -> p.C                 not found");
+        out.println("foo.jar -> java.base");
+        out.print("   p.C   -> p.A   classes");
+        parser.close();
+
+        Map<String, Set<String>> deps = parser.getDeps();
+        assertEquals(3, deps.size());
+        assertTrue(deps.get("p.A").contains("p.B"));
+        assertTrue(deps.get("p.A").contains("java.lang.Object"));
+        assertTrue(deps.get("p.B").contains("p.C"));
+        assertTrue(deps.get("p.C").contains("p.A"));
+        // un meme nom n'est materialise qu'une fois
+        String left = deps.keySet().stream().filter("p.B"::equals).findFirst().get();
+        assertSame(left, deps.get("p.A").stream().filter("p.B"::equals).findFirst().get());
+        assertEquals(4, symbols.size());
+    }
+}
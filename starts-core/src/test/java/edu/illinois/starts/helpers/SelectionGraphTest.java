@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import edu.illinois.starts.data.CsrGraph;
+import org.junit.Test;
+
+public class SelectionGraphTest {
+
+    @Test
+    public void testSelectAfterSaveAndLoad() throws Exception {
+        // TestA -> Entity <-> Dao -> Util, TestB -> Util, TestC isole
+        CsrGraph graph = new CsrGraph.Builder()
+                .addEdge("TestA", "Entity")
+                .addEdge("Entity", "Dao")
+                .addEdge("Dao", "Entity")
+                .addEdge("Dao", "Util")
+                .addEdge("TestB", "Util")
+                .build();
+        File file = Files.createTempFile("selection", ".graph").toFile();
+        try {
+            SelectionGraph.save(file, graph, Arrays.asList("TestA", "TestB", "TestC"));
+            SelectionGraph loaded = SelectionGraph.load(file);
+            assertEquals(Arrays.asList("TestA", "TestB", "TestC"), loaded.getTests());
+            assertEquals(graph.getEdgeCount(), loaded.getGraph().getEdgeCount());
+            assertEquals(new HashSet<>(Arrays.asList("Entity", "Util")), loaded.getGraph().getSuccessors("Dao"));
+
+            assertEquals(new HashSet<>(Arrays.asList("TestA")),
+                    loaded.selectAffectedTests(Collections.singleton("Entity")));
+            assertEquals(new HashSet<>(Arrays.asList("TestA", "TestB")),
+                    loaded.selectAffectedTests(Collections.singleton("Util")));
+            assertEquals(new HashSet<>(Arrays.asList("TestC")),
+                    loaded.selectAffectedTests(Collections.singleton("TestC")));
+            assertEquals(new HashSet<String>(), loaded.selectAffectedTests(Collections.singleton("Unknown")));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCorruptFileIsIgnored() throws Exception {
+        File file = Files.createTempFile("selection", ".graph").toFile();
+        try {
+            Files.write(file.toPath(), new byte[] {0, 0, 0, 1, 0});
+            assertNull(SelectionGraph.load(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testUrlToClassName() {
+        List<String> roots = Arrays.asList("file:/work/mod/target/classes/", "file:/work/mod/target/test-classes/",
+                "file:/D:/mod/target/classes/");
+        assertEquals("a.b.C", ZLCHelper.urlToClassName("file:/work/mod/target/classes/a/b/C.class", roots));
+        assertEquals("a.b.CTest", ZLCHelper.urlToClassName("file:/work/mod/target/test-classes/a/b/CTest.class",
+                roots));
+        assertEquals("a.b.C$Inner", ZLCHelper.urlToClassName("jar:file:/m2/x.jar!/a/b/C$Inner.class", roots));
+        assertEquals("a.b.C", ZLCHelper.urlToClassName("file:/D:/mod/target/classes/a%5cb%5cC.class", roots));
+        // Paquet nomme comme un repertoire de sortie, URL hors du classpath
+        assertEquals("a.classes.B", ZLCHelper.urlToClassName("file:/work/mod/target/classes/a/classes/B.class",
+                roots));
+        assertEquals("a.test-classes.B",
+                ZLCHelper.urlToClassName("file:/work/mod/target/classes/a/test-classes/B.class", roots));
+        assertNull(ZLCHelper.urlToClassName("file:/work/other/a/b/C.class", roots));
+    }
+
+    @Test
+    public void testClasspathRoots() throws IOException {
+        File dir = Files.createTempDirectory("classes").toFile();
+        File jar = new File(dir, "lib.jar");
+        Files.write(jar.toPath(), new byte[0]);
+        List<String> roots = ZLCHelper.classpathRoots(Arrays.asList(dir.getPath(), jar.getPath()));
+        assertEquals(Collections.singletonList(dir.toURI().toString()), roots);
+        assertEquals("a.B", ZLCHelper.urlToClassName(new File(dir, "a/B.class").toURI().toString(), roots));
+    }
+}
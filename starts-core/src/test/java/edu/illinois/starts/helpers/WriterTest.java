@@ -5,6 +5,7 @@
 package edu.illinois.starts.helpers;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
@@ -21,6 +22,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 
 import edu.illinois.yasgl.DirectedGraph;
 import edu.illinois.yasgl.DirectedGraphBuilder;
@@ -132,6 +135,29 @@ public class WriterTest {
         assertEquals(1, lines.size());
     }
 
+    @Test
+    public void testJarChecksumIgnoresRepackaging() throws IOException {
+        Path dir = Files.createTempDirectory("jars");
+        String first = writeJar(dir.resolve("a.jar"), 1000L, "content");
+        String repackaged = writeJar(dir.resolve("b.jar"), 2000000L, "content");
+        String changed = writeJar(dir.resolve("c.jar"), 1000L, "changed");
+        assertEquals(Writer.getJarToChecksumMapping(first).getValue(),
+                Writer.getJarToChecksumMapping(repackaged).getValue());
+        assertNotEquals(Writer.getJarToChecksumMapping(first).getValue(),
+                Writer.getJarToChecksumMapping(changed).getValue());
+    }
+
+    private static String writeJar(Path jar, long time, String content) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            JarEntry entry = new JarEntry("com/efluid/A.class");
+            entry.setTime(time);
+            out.putNextEntry(entry);
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        return jar.toString();
+    }
+
     @Test
     public void testPathToString() {
         List<String> list = new ArrayList<String>();
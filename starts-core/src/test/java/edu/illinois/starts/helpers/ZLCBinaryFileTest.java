@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import edu.illinois.starts.data.ZLCData;
+import edu.illinois.starts.data.ZLCFileContent;
+import edu.illinois.starts.data.ZLCFormat;
+import edu.illinois.starts.enums.HashAlgorithm;
+import org.junit.Test;
+
+public class ZLCBinaryFileTest {
+    private static final List<String> TESTS = Arrays.asList("a.ATest", "b.BTest", "c.CTest");
+
+    @Test
+    public void testRoundTripAndLookup() throws Exception {
+        List<ZLCData> rows = new ArrayList<>();
+        rows.add(row("file:/m/target/classes/b/Dao.class", "12", 0, 2));
+        rows.add(row("jar:file:/repo/core.jar!/com/efluid/Util.class", "3456789012", 0, 1, 2));
+        rows.add(row("file:/m/target/test-classes/a/ATest.class", "-1", 0));
+        rows.add(row("file:/m/target/classes/a/Alone.class", "7"));
+        File file = write(rows);
+        try {
+            assertTrue(ZLCBinaryFile.isBinary(file));
+            ZLCBinaryFile binary = ZLCBinaryFile.open(file);
+            assertEquals(TESTS, Arrays.asList(binary.getTests()));
+            assertEquals(4, binary.getRowCount());
+
+            int dao = binary.find("b/Dao.class");
+            assertEquals("file:/m/target/classes/b/Dao.class", binary.getUrl(dao));
+            assertEquals("12", binary.getChecksum(dao));
+            assertEquals(bits(0, 2), binary.getTests(dao));
+
+            int util = binary.find("com/efluid/Util.class");
+            assertEquals("jar:file:/repo/core.jar!/com/efluid/Util.class", binary.getUrl(util));
+            assertEquals("3456789012", binary.getChecksum(util));
+            assertEquals(bits(0, 1, 2), binary.getTests(util));
+
+            assertEquals("-1", binary.getChecksum(binary.find("a/ATest.class")));
+            assertEquals(new BitSet(), binary.getTests(binary.find("a/Alone.class")));
+            assertEquals(-1, binary.find("a/Missing.class"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testNonNumericChecksums() throws Exception {
+        List<ZLCData> rows = new ArrayList<>();
+        rows.add(row("file:/m/target/classes/b/Dao.class", "9e107d9d372bb6826bd81d3542a419d6", 1));
+        rows.add(row("file:/m/target/classes/a/Entity.class", "12", 0));
+        File file = write(rows);
+        try {
+            ZLCBinaryFile binary = ZLCBinaryFile.open(file);
+            assertEquals("9e107d9d372bb6826bd81d3542a419d6", binary.getChecksum(binary.find("b/Dao.class")));
+            assertEquals("12", binary.getChecksum(binary.find("a/Entity.class")));
+            assertEquals(bits(1), binary.getTests(binary.find("b/Dao.class")));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testTextFileIsNotBinary() throws Exception {
+        File file = Files.createTempFile("deps", ".zlc").toFile();
+        try {
+            Files.write(file.toPath(), Arrays.asList("INDEXED", "0"));
+            assertFalse(ZLCBinaryFile.isBinary(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testHashAlgorithmRecordedInHeader() throws Exception {
+        List<ZLCData> rows = new ArrayList<>();
+        rows.add(row("file:/m/target/classes/b/Dao.class", "12", 0));
+        File file = Files.createTempFile("deps", ".zlc").toFile();
+        try {
+            Writer.writeToFile(new ZLCFileContent(TESTS, rows, ZLCFormat.BINARY, HashAlgorithm.XXH64),
+                    file.getAbsolutePath());
+            assertEquals(HashAlgorithm.XXH64, ZLCBinaryFile.open(file).getHashAlgorithm());
+            assertEquals(HashAlgorithm.LEGACY, ZLCBinaryFile.open(write(rows)).getHashAlgorithm());
+
+            // Un ZLC d'un autre algorithme est ignore, comme au premier run
+            File dir = Files.createTempDirectory("starts").toFile();
+            Writer.writeToFile(new ZLCFileContent(TESTS, rows, ZLCFormat.INDEXED, HashAlgorithm.CRC32C),
+                    ZLCHelper.zlcFile, dir.getAbsolutePath());
+            assertEquals("INDEXED CRC32C", Files.readAllLines(new File(dir, ZLCHelper.zlcFile).toPath()).get(0));
+            assertNull(ZLCHelper.getChangedData(dir.getAbsolutePath(), true));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static File write(List<ZLCData> rows) throws Exception {
+        File file = Files.createTempFile("deps", ".zlc").toFile();
+        Writer.writeToFile(new ZLCFileContent(TESTS, rows, ZLCFormat.BINARY), file.getAbsolutePath());
+        return file;
+    }
+
+    private static ZLCData row(String url, String checksum, int... tests) throws Exception {
+        return new ZLCData(new URL(url), checksum, ZLCFormat.BINARY, bits(tests), TESTS);
+    }
+
+    private static BitSet bits(int... indices) {
+        BitSet bits = new BitSet();
+        for (int index : indices) {
+            bits.set(index);
+        }
+        return bits;
+    }
+}
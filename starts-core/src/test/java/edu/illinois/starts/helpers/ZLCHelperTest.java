@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.illinois.starts.data.CsrGraph;
+import edu.illinois.starts.data.ZLCFormat;
+import edu.illinois.starts.util.Pair;
+import org.junit.Test;
+
+public class ZLCHelperTest {
+
+    @Test
+    public void testIncrementalUpdateMatchesFullRebuild() throws IOException {
+        Path classes = Files.createTempDirectory("classes");
+        for (String name : Arrays.asList("TestA", "TestB", "TestC", "TestD", "Dao", "Util", "Added")) {
+            writeClass(classes, name, "v1");
+        }
+        ClassLoader loader = new URLClassLoader(new URL[] {classes.toUri().toURL()}, null);
+        File incremental = Files.createTempDirectory("incremental").toFile();
+        File full = Files.createTempDirectory("full").toFile();
+
+        // v1 : TestA -> Dao -> Util, TestB -> Util, TestC -> Dao
+        CsrGraph v1 = new CsrGraph.Builder()
+                .addEdge("app.TestA", "app.Dao")
+                .addEdge("app.Dao", "app.Util")
+                .addEdge("app.TestB", "app.Util")
+                .addEdge("app.TestC", "app.Dao")
+                .build();
+        List<String> testsV1 = Arrays.asList("app.TestA", "app.TestB", "app.TestC");
+        ZLCHelper.updateZLCFile(Loadables.computeTestDependencies(v1, testsV1, 1), loader,
+                incremental.getPath(), new HashSet<>(), false, ZLCFormat.INDEXED);
+
+        // v2 : Dao change et depend de Added, TestC est supprime, TestD est ajoute
+        writeClass(classes, "Dao", "v2");
+        Pair<Set<String>, Set<String>> changeData = ZLCHelper.getChangedData(incremental.getPath(), true);
+        assertEquals(Collections.singleton(url(classes, "Dao")), changeData.getValue());
+        assertEquals(new HashSet<>(Arrays.asList("app.TestB")), changeData.getKey());
+        CsrGraph v2 = new CsrGraph.Builder()
+                .addEdge("app.TestA", "app.Dao")
+                .addEdge("app.Dao", "app.Util")
+                .addEdge("app.Dao", "app.Added")
+                .addEdge("app.TestB", "app.Util")
+                .addEdge("app.TestD", "app.Util")
+                .build();
+        List<String> testsV2 = Arrays.asList("app.TestA", "app.TestB", "app.TestD");
+        assertTrue(ZLCHelper.canUpdateIncrementally(incremental.getPath(), ZLCFormat.INDEXED));
+        assertTrue(ZLCHelper.updateZLCFileIncrementally(
+                Loadables.computeTestDependencies(v2, Arrays.asList("app.TestA", "app.TestD"), 1), testsV2,
+                changeData.getValue(), loader, incremental.getPath(), false, ZLCFormat.INDEXED, false));
+        ZLCHelper.updateZLCFile(Loadables.computeTestDependencies(v2, testsV2, 1), loader, full.getPath(),
+                new HashSet<>(), false, ZLCFormat.INDEXED);
+
+        assertEquals(readRows(full), readRows(incremental));
+        // La place de TestC reste dans la table, sans etre vue comme un test
+        assertEquals(new HashSet<>(testsV2), ZLCHelper.getChangedData(incremental.getPath(), true).getKey());
+    }
+
+    private static void writeClass(Path classes, String name, String content) throws IOException {
+        Path file = classes.resolve("app").resolve(name + ".class");
+        Files.createDirectories(file.getParent());
+        Files.write(file, (name + " " + content).getBytes());
+    }
+
+    private static String url(Path classes, String name) throws IOException {
+        return classes.resolve("app").resolve(name + ".class").toUri().toURL().toExternalForm();
+    }
+
+    /** URL -> checksum et noms des tests de chaque ligne d'un ZLC INDEXED. */
+    private static Map<String, String> readRows(File artifactsDir) throws IOException {
+        Map<String, String> rows = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(new File(artifactsDir, ZLCHelper.zlcFile).toPath(),
+                Charset.defaultCharset())) {
+            assertEquals(ZLCFormat.INDEXED.toString(), reader.readLine());
+            String[] tests = new String[Integer.parseInt(reader.readLine())];
+            for (int i = 0; i < tests.length; i++) {
+                tests[i] = reader.readLine();
+            }
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] parts = line.split(" ");
+                Set<String> names = new HashSet<>();
+                for (String index : parts[2].split(",")) {
+                    names.add(tests[Integer.parseInt(index)]);
+                }
+                rows.put(parts[0], parts[1] + " " + names);
+            }
+        }
+        return rows;
+    }
+}
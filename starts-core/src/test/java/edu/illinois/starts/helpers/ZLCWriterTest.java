@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import edu.illinois.starts.data.ZLCData;
+import edu.illinois.starts.data.ZLCFormat;
+import edu.illinois.starts.enums.HashAlgorithm;
+import org.junit.Test;
+
+public class ZLCWriterTest {
+    private static final List<String> TESTS = Arrays.asList("a.TestA", "a.TestB", "a.TestC");
+
+    @Test
+    public void testRowsWrittenLikeZLCData() throws Exception {
+        for (ZLCFormat format : Arrays.asList(ZLCFormat.INDEXED, ZLCFormat.PLAIN_TEXT)) {
+            List<ZLCData> rows = new ArrayList<>();
+            rows.add(new ZLCData(new URL("file:/m/target/classes/a/A.class"), "12", format, bits(0, 2), TESTS));
+            rows.add(new ZLCData(new URL("file:/m/target/classes/a/B.class"), "34", format, bits(), TESTS));
+            File zlc = new File(Files.createTempDirectory("zlc").toFile(), ZLCHelper.zlcFile);
+            ZLCWriter.write(zlc, format, HashAlgorithm.XXH64, TESTS, ZLCWriter.of(rows));
+
+            List<String> expected = new ArrayList<>();
+            expected.add(format + " " + HashAlgorithm.XXH64);
+            if (format == ZLCFormat.INDEXED) {
+                expected.add("3");
+                expected.addAll(TESTS);
+            }
+            expected.add(rows.get(0).toString());
+            expected.add(rows.get(1).toString());
+            assertEquals(expected, Files.readAllLines(zlc.toPath(), StandardCharsets.UTF_8));
+            assertFalse(new File(zlc.getParentFile(), ZLCHelper.zlcFile + ".tmp").exists());
+        }
+    }
+
+    @Test
+    public void testBinaryRowsReadBack() throws Exception {
+        List<ZLCData> rows = new ArrayList<>();
+        rows.add(new ZLCData(new URL("file:/m/target/classes/a/A.class"), "12", ZLCFormat.BINARY, bits(0, 2), TESTS));
+        rows.add(new ZLCData(new URL("jar:file:/m2/x.jar!/b/B.class"), "34", ZLCFormat.BINARY, bits(1), TESTS));
+        File zlc = new File(Files.createTempDirectory("zlc").toFile(), ZLCHelper.zlcFile);
+        ZLCWriter.write(zlc, ZLCFormat.BINARY, HashAlgorithm.XXH64, TESTS, ZLCWriter.of(rows));
+
+        ZLCBinaryFile binary = ZLCBinaryFile.open(zlc);
+        assertEquals(HashAlgorithm.XXH64, binary.getHashAlgorithm());
+        assertEquals(TESTS, Arrays.asList(binary.getTests()));
+        assertEquals(rows.size(), binary.getRowCount());
+        for (ZLCData row : rows) {
+            String url = row.getUrl().toExternalForm();
+            int index = binary.find(url.substring(ZLCBinaryFile.splitUrl(url)));
+            assertEquals(url, binary.getUrl(index));
+            assertEquals(row.getChecksum(), binary.getChecksum(index));
+            assertEquals(row.getTests(), binary.getTests(index));
+        }
+        assertFalse(new File(zlc.getParentFile(), ZLCHelper.zlcFile + ".tmp").exists());
+    }
+
+    @Test
+    public void testTmpFileDeletedOnFailure() throws Exception {
+        for (ZLCFormat format : Arrays.asList(ZLCFormat.INDEXED, ZLCFormat.PLAIN_TEXT, ZLCFormat.BINARY)) {
+            File dir = Files.createTempDirectory("zlc").toFile();
+            ZLCWriter.Rows failing = new ZLCWriter.Rows() {
+                @Override
+                public int size() {
+                    return 1;
+                }
+
+                @Override
+                public String url(int row) {
+                    return "file:/m/target/classes/a/A.class";
+                }
+
+                @Override
+                public String checksum(int row) {
+                    return "12";
+                }
+
+                @Override
+                public BitSet tests(int row) {
+                    throw new IllegalStateException("closure failed");
+                }
+            };
+            try {
+                ZLCWriter.write(new File(dir, ZLCHelper.zlcFile), format, HashAlgorithm.XXH64, TESTS, failing);
+                fail();
+            } catch (IllegalStateException expected) {
+                // ni ZLC a moitie ecrit, ni fichier temporaire
+            }
+            assertEquals(format.toString(), 0, dir.list().length);
+        }
+    }
+
+    private static BitSet bits(int... indices) {
+        BitSet bits = new BitSet();
+        for (int index : indices) {
+            bits.set(index);
+        }
+        return bits;
+    }
+}
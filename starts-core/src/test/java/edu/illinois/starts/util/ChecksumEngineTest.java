@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Test;
+
+public class ChecksumEngineTest {
+
+    @Test
+    public void testParallelMatchesSequential() throws Exception {
+        Path dir = Files.createTempDirectory("checksums");
+        File jar = dir.resolve("module.jar").toFile();
+        List<String> urls = new ArrayList<>();
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (int i = 0; i < 100; i++) {
+                out.putNextEntry(new JarEntry("com/efluid/C" + i + ".class"));
+                out.write(("jar class " + i).getBytes());
+                out.closeEntry();
+                urls.add("jar:" + jar.toURI() + "!/com/efluid/C" + i + ".class");
+            }
+        }
+        for (int i = 0; i < 100; i++) {
+            Path file = dir.resolve("F" + i + ".class");
+            Files.write(file, ("file class " + i).getBytes());
+            urls.add(file.toUri().toString());
+        }
+        urls.add(dir.resolve("Missing.class").toUri().toString());
+        urls.add(urls.get(0));
+
+        Map<String, String> sequential = new ChecksumEngine(true, 1).computeAll(urls);
+        assertEquals(201, sequential.size());
+        assertEquals(sequential, new ChecksumEngine(true, 4).computeAll(urls));
+        ChecksumUtil checksumUtil = new ChecksumUtil(true);
+        for (String url : urls) {
+            assertEquals(checksumUtil.computeSingleCheckSum(url), sequential.get(url));
+        }
+    }
+
+    @Test
+    public void testJarEntriesReusedFromCentralDirectory() throws Exception {
+        Path dir = Files.createTempDirectory("checksums");
+        File jar = dir.resolve("module.jar").toFile();
+        List<String> urls = writeJar(jar, "v1", "v1");
+        StatIndex statIndex = new StatIndex(true);
+        Map<String, String> first = new ChecksumEngine(true, 1, statIndex).computeAll(urls);
+        assertEquals(2, statIndex.size());
+        // Le JAR reste ouvert dans le cache des JarURLConnection de la JVM
+        ChecksumUtil checksumUtil = new ChecksumUtil(true);
+        assertEquals(first.get(urls.get(1)), checksumUtil.computeSingleCheckSum(urls.get(1)));
+
+        // Seule la seconde entree change : la premiere garde son CRC et son checksum, la
+        // seconde est relue dans le nouveau JAR et non dans celui du cache
+        writeJar(jar, "v1", "v2");
+        Map<String, String> second = new ChecksumEngine(true, 1, statIndex).computeAll(urls);
+        assertEquals(first.get(urls.get(0)), second.get(urls.get(0)));
+        assertEquals(checksumUtil.getHasher().hash("v2".getBytes()), second.get(urls.get(1)));
+        assertNotEquals(first.get(urls.get(1)), second.get(urls.get(1)));
+    }
+
+    @Test
+    public void testClassHashedOncePerSession() throws Exception {
+        Path klass = Files.createTempFile("Session", ".class");
+        Files.write(klass, "v1".getBytes());
+        FileTime modified = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        Files.setLastModifiedTime(klass, modified);
+        List<String> urls = Collections.singletonList(klass.toUri().toString());
+        String first = new ChecksumEngine(true, 1).computeAll(urls).get(urls.get(0));
+
+        // Meme taille et meme date : le checksum de la session est repris sans relire le fichier
+        Files.write(klass, "v2".getBytes());
+        Files.setLastModifiedTime(klass, modified);
+        assertEquals(first, new ChecksumEngine(true, 1).computeAll(urls).get(urls.get(0)));
+
+        Files.setLastModifiedTime(klass, FileTime.fromMillis(modified.toMillis() - 60_000));
+        String second = new ChecksumEngine(true, 1).computeAll(urls).get(urls.get(0));
+        assertEquals(new ChecksumUtil(true).computeSingleCheckSum(urls.get(0)), second);
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    public void testForcedHashRecordsSessionChecksums() throws Exception {
+        Path klass = Files.createTempFile("Forced", ".class");
+        Files.write(klass, "v1".getBytes());
+        Files.setLastModifiedTime(klass, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        List<String> urls = Collections.singletonList(klass.toUri().toString());
+        new ChecksumEngine(true, 1).computeAll(urls);
+
+        // Deja dans la session : repris sans l'enregistrer, sauf si tout est recalcule
+        StatIndex reused = new StatIndex(true);
+        new ChecksumEngine(reused, true).computeAll(urls);
+        assertEquals(0, reused.size());
+        StatIndex forced = new StatIndex(true);
+        new ChecksumEngine(forced, false).computeAll(urls);
+        assertEquals(1, forced.size());
+    }
+
+    @Test
+    public void testSessionForgottenByNextBuild() throws Exception {
+        Path klass = Files.createTempFile("Build", ".class");
+        Files.write(klass, "v1".getBytes());
+        Files.setLastModifiedTime(klass, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        String url = klass.toUri().toString();
+        SessionChecksums.startBuild("1");
+        new ChecksumEngine(true, 1).computeAll(Collections.singletonList(url));
+        String key = ClassHasher.key(true, ClassHasher.getDefaultAlgorithm());
+        assertNotNull(SessionChecksums.get(key).lookup(url, StatIndex.stat(url)));
+
+        SessionChecksums.startBuild("1");
+        assertNotNull(SessionChecksums.get(key).lookup(url, StatIndex.stat(url)));
+        SessionChecksums.startBuild("2");
+        assertNull(SessionChecksums.get(key).lookup(url, StatIndex.stat(url)));
+    }
+
+    private static List<String> writeJar(File jar, String... contents) throws Exception {
+        List<String> urls = new ArrayList<>();
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (int i = 0; i < contents.length; i++) {
+                out.putNextEntry(new JarEntry("com/efluid/C" + i + ".class"));
+                out.write(contents[i].getBytes());
+                out.closeEntry();
+                urls.add("jar:" + jar.toURI() + "!/com/efluid/C" + i + ".class");
+            }
+        }
+        return urls;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import edu.illinois.starts.asm.ClassWriter;
+import edu.illinois.starts.asm.Label;
+import edu.illinois.starts.asm.MethodVisitor;
+import edu.illinois.starts.asm.Opcodes;
+import edu.illinois.starts.enums.HashAlgorithm;
+import org.junit.Test;
+
+public class ClassHasherTest {
+
+    @Test
+    public void testKnownDigests() {
+        ClassHasher xxh64 = ClassHasher.create(HashAlgorithm.XXH64, false);
+        assertEquals(Long.toString(0xEF46DB3751D8E999L), xxh64.hash(new byte[0]));
+        assertEquals(Long.toString(0x44BC2CF5AD770999L), xxh64.hash(ascii("abc")));
+        assertEquals(Long.toString(0xFBCEA83C8A378BF1L), xxh64.hash(ascii("Nobody inspects the spammish repetition")));
+        ClassHasher crc32c = ClassHasher.create(HashAlgorithm.CRC32C, false);
+        assertEquals(Long.toString(0xE3069283L), crc32c.hash(ascii("123456789")));
+        assertEquals(crc32c.hash(ascii("123456789")), crc32c.hash(ByteBuffer.wrap(ascii("0123456789"), 1, 9)));
+        // LEGACY : Adler32 d'Ekstazi sans cleanBytes, CRC32 d'un contenu qui n'est pas une classe
+        ClassHasher legacy = ClassHasher.create(HashAlgorithm.LEGACY, false);
+        assertEquals(Long.toString(0x11E60398L), legacy.hash(ascii("Wikipedia")));
+        ClassHasher cleanLegacy = ClassHasher.create(HashAlgorithm.LEGACY, true);
+        assertEquals(Long.toString(0xCBF43926L), cleanLegacy.hash(ascii("123456789")));
+    }
+
+    @Test
+    public void testCleanBytesIgnoresDebugInfo() throws Exception {
+        byte[] original = generateClass("A.java", 10);
+        byte[] moved = generateClass("A.java", 42);
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            assertEquals(ClassHasher.create(algorithm, true).hash(original),
+                    ClassHasher.create(algorithm, true).hash(moved));
+            assertNotEquals(ClassHasher.create(algorithm, false).hash(original),
+                    ClassHasher.create(algorithm, false).hash(moved));
+        }
+        Path file = Files.createTempFile("A", ".class");
+        Files.write(file, original);
+        ClassHasher hasher = ClassHasher.create(HashAlgorithm.XXH64, true);
+        assertEquals(hasher.hash(original), hasher.hashUrl(file.toUri().toString()));
+        assertEquals("-1", hasher.hashUrl(file.resolveSibling("Missing.class").toUri().toString()));
+    }
+
+    /** Meme classe, seuls les numeros de ligne different. */
+    private static byte[] generateClass(String source, int line) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "p/A", null, "java/lang/Object", null);
+        writer.visitSource(source, null);
+        MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        method.visitCode();
+        Label start = new Label();
+        method.visitLabel(start);
+        method.visitLineNumber(line, start);
+        method.visitVarInsn(Opcodes.ALOAD, 0);
+        method.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        method.visitInsn(Opcodes.RETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CompressedBitmapTest {
+
+    private static CompressedBitmap of(long[] scratch, CompressedBitmap.BlockPool pool, int... values) {
+        int max = 0;
+        for (int value : values) {
+            scratch[value >>> 6] |= 1L << value;
+            max = Math.max(max, value);
+        }
+        return CompressedBitmap.drain(scratch, 0, (max >>> 6) + 1, pool);
+    }
+
+    @Test
+    public void testArrayAndBitmapBlocks() {
+        long[] scratch = new long[CompressedBitmap.scratchWords(20000)];
+        int[] values = new int[1003];
+        values[0] = 3;
+        values[1] = 4095;
+        values[2] = 19999;
+        // bloc 1 assez plein pour passer en bitmap
+        for (int i = 0; i < 1000; i++) {
+            values[3 + i] = 4096 + 2 * i;
+        }
+        CompressedBitmap bitmap = of(scratch, null, values);
+        assertEquals(1003, bitmap.cardinality());
+        assertTrue(bitmap.contains(4095));
+        assertTrue(bitmap.contains(4096 + 1998));
+        assertFalse(bitmap.contains(4097));
+        assertFalse(bitmap.contains(12000));
+
+        List<Integer> iterated = new ArrayList<>();
+        bitmap.forEach(iterated::add);
+        List<Integer> cursor = new ArrayList<>();
+        CompressedBitmap.Cursor it = bitmap.cursor();
+        for (int v = it.next(); v >= 0; v = it.next()) {
+            cursor.add(v);
+        }
+        List<Integer> expected = new ArrayList<>();
+        Arrays.stream(values).sorted().forEach(expected::add);
+        assertEquals(expected, iterated);
+        assertEquals(expected, cursor);
+        // le tampon est remis a zero
+        assertTrue(Arrays.stream(scratch).allMatch(w -> w == 0));
+    }
+
+    @Test
+    public void testOrIntoAndSharedBlocks() {
+        long[] scratch = new long[CompressedBitmap.scratchWords(10000)];
+        CompressedBitmap.BlockPool pool = new CompressedBitmap.BlockPool();
+        CompressedBitmap a = of(scratch, pool, 1, 2, 3, 9000);
+        CompressedBitmap b = of(scratch, pool, 1, 2, 3, 9001);
+        // meme premier bloc : une seule instance
+        assertEquals(3, pool.size());
+        a.orInto(scratch);
+        b.orInto(scratch);
+        CompressedBitmap union = CompressedBitmap.drain(scratch, 0, scratch.length, pool);
+        assertEquals(5, union.cardinality());
+        assertTrue(union.contains(9000) && union.contains(9001));
+        assertEquals(a, of(scratch, pool, 1, 2, 3, 9000));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Test;
+
+public class SharedChecksumStoreTest {
+
+    @Test
+    public void testPublishedEntriesVisibleToOtherStores() throws Exception {
+        Path dir = Files.createTempDirectory("shared");
+        Path jar = Files.write(dir.resolve("archi.jar"), new byte[] {1, 2, 3});
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        String jarUrl = jar.toUri().toString();
+        File storeDir = dir.resolve("store").toFile();
+
+        new SharedChecksumStore(storeDir).publish(jarUrl, StatIndex.stat(jarUrl), "clean",
+                Collections.singletonMap("com/efluid/A.class", "42"));
+        // Un autre processus (une autre instance) relit le segment publie
+        SharedChecksumStore other = new SharedChecksumStore(storeDir);
+        assertEquals("42", other.load(jarUrl, StatIndex.stat(jarUrl), "clean").get("com/efluid/A.class"));
+        assertTrue(other.load(jarUrl, StatIndex.stat(jarUrl), "raw").isEmpty());
+
+        // Nouvelle version du JAR : rien n'est repris et l'ancienne version est supprimee
+        Files.write(jar, new byte[] {1, 2, 3, 4});
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(System.currentTimeMillis() - 30_000));
+        assertTrue(other.load(jarUrl, StatIndex.stat(jarUrl), "clean").isEmpty());
+        other.publish(jarUrl, StatIndex.stat(jarUrl), "clean", Collections.singletonMap("com/efluid/A.class", "43"));
+        File[] versions = storeDir.listFiles()[0].listFiles();
+        assertEquals(1, versions.length);
+    }
+
+    @Test
+    public void testEngineChecksumsJarEntriesOnce() throws Exception {
+        Path dir = Files.createTempDirectory("shared");
+        File jar = dir.resolve("archi.jar").toFile();
+        List<String> urls = new ArrayList<>();
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (int i = 0; i < 3; i++) {
+                out.putNextEntry(new JarEntry("com/efluid/C" + i + ".class"));
+                out.write(("class " + i).getBytes());
+                out.closeEntry();
+                urls.add("jar:" + jar.toURI() + "!/com/efluid/C" + i + ".class");
+            }
+        }
+        Files.setLastModifiedTime(jar.toPath(), FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        File storeDir = dir.resolve("store").toFile();
+        ChecksumEngine.setSharedStore(new SharedChecksumStore(storeDir));
+        try {
+            Map<String, String> checksums = new ChecksumEngine(true, 1).computeAll(urls);
+            Map<String, String> published = new SharedChecksumStore(storeDir)
+                    .load(jar.toURI().toString(), StatIndex.stat(jar.toURI().toString()), "clean");
+            assertEquals(3, published.size());
+            assertEquals(checksums.get(urls.get(1)), published.get("com/efluid/C1.class"));
+            assertFalse(published.containsValue("-1"));
+        } finally {
+            ChecksumEngine.setSharedStore(null);
+        }
+    }
+}
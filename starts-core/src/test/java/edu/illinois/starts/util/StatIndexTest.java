@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class StatIndexTest {
+
+    @Test
+    public void testLookupAfterSaveAndLoad() throws Exception {
+        Path dir = Files.createTempDirectory("stat");
+        Path klass = dir.resolve("A.class");
+        Files.write(klass, new byte[] {1, 2, 3});
+        // Fichier compile bien avant le calcul : hors de la fenetre "racy"
+        Files.setLastModifiedTime(klass, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        String url = klass.toUri().toString();
+
+        StatIndex index = new StatIndex(true);
+        index.record(url, StatIndex.stat(url), "42");
+        File file = dir.resolve("deps.stat").toFile();
+        index.save(file);
+
+        StatIndex loaded = StatIndex.load(file, true);
+        assertEquals("42", loaded.lookup(url, StatIndex.stat(url)));
+        assertEquals(0, StatIndex.load(file, false).size());
+
+        Files.write(klass, new byte[] {1, 2, 3, 4});
+        assertNull(loaded.lookup(url, StatIndex.stat(url)));
+
+        loaded.retainAll(Collections.emptySet());
+        assertEquals(0, loaded.size());
+    }
+
+    @Test
+    public void testRecentlyModifiedFileIsNotTrusted() throws Exception {
+        Path klass = Files.createTempFile("B", ".class");
+        String url = klass.toUri().toString();
+        StatIndex index = new StatIndex(true);
+        index.record(url, StatIndex.stat(url), "42");
+        // Modifie dans la meme seconde que la prise d'attributs : la date seule ne suffit pas
+        assertNull(index.lookup(url, StatIndex.stat(url)));
+        assertNull(StatIndex.stat("jar:file:/x.jar!/A.class"));
+    }
+}
@@ -8,7 +8,6 @@ import java.io.File;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -16,16 +15,22 @@ import java.util.Set;
 import java.util.logging.Level;
 
 import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.data.CsrGraph;
 import edu.illinois.starts.enums.DependencyFormat;
+import edu.illinois.starts.enums.HashAlgorithm;
 import edu.illinois.starts.helpers.Cache;
+import edu.illinois.starts.helpers.CachedEdges;
 import edu.illinois.starts.helpers.Loadables;
 import edu.illinois.starts.helpers.PomUtil;
 import edu.illinois.starts.helpers.RTSUtil;
+import edu.illinois.starts.helpers.ScannedClasses;
+import edu.illinois.starts.helpers.TestDependencyMatrix;
 import edu.illinois.starts.helpers.Writer;
 import edu.illinois.starts.util.Logger;
-import edu.illinois.yasgl.DirectedGraph;
+import edu.illinois.starts.util.SessionChecksums;
 import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.surefire.AbstractSurefireMojo;
 import org.apache.maven.plugin.surefire.SurefireMojo;
@@ -104,6 +109,57 @@ abstract class BaseMojo extends SurefireMojo implements StartsConstants {
     @Parameter(property = "exclureArchiDep", defaultValue = TRUE)
     protected boolean exclureArchiDep;
 
+    /**
+     * Set this to "true" to compute class dependencies with jdeps (ToolProvider) instead of
+     * reading the class files in-process. Kept as a fallback; both produce the same edges.
+     */
+    @Parameter(property = "useJdeps", defaultValue = FALSE)
+    protected boolean useJdeps;
+
+    /**
+     * Number of threads used to compute the transitive closures (level by level on the
+     * condensed dependency graph). 1 keeps the sequential computation, 0 uses all processors.
+     */
+    @Parameter(property = "closureParallelism", defaultValue = "0")
+    protected int closureParallelism;
+
+    /**
+     * Number of threads used to checksum classes (reading and writing deps.zlc, CLZ files).
+     * Entries of the same jar are hashed by one thread. 1 is sequential, 0 uses all processors.
+     */
+    @Parameter(property = "checksumParallelism", defaultValue = "0")
+    protected int checksumParallelism;
+
+    /**
+     * Number of threads used to compute the graphs of the jars missing from the jdeps cache
+     * (one jar per thread). 1 is sequential, 0 uses all processors.
+     */
+    @Parameter(property = "jdepsCacheParallelism", defaultValue = "0")
+    protected int jdepsCacheParallelism;
+
+    /**
+     * Algorithm used to checksum classes in deps.zlc: LEGACY (Ekstazi's CRC32), CRC32C or XXH64.
+     * The algorithm is recorded in deps.zlc; changing it makes the next run select all tests.
+     * CLZ files always use LEGACY.
+     */
+    @Parameter(property = "hashAlgorithm", defaultValue = "LEGACY")
+    protected HashAlgorithm hashAlgorithm;
+
+    /**
+     * Identifiant du build Maven courant (date de debut de la requete), pour oublier les
+     * checksums d'un build precedent quand le plugin reste charge (voir
+     * {@link SessionChecksums#startBuild(String)}).
+     *
+     * @return null si la session n'est pas connue
+     */
+    protected String getBuildId() {
+        MavenSession session = getSession();
+        if (session == null || session.getRequest() == null || session.getRequest().getStartTime() == null) {
+            return null;
+        }
+        return Long.toString(session.getRequest().getStartTime().getTime());
+    }
+
     protected void printResult(Set<String> set, String title) {
         Writer.writeToLog(set, title, Logger.getGlobal());
     }
@@ -177,24 +233,36 @@ abstract class BaseMojo extends SurefireMojo implements StartsConstants {
     }
 
     protected class Result {
-        private Map<String, Set<String>> testDeps;
-        private DirectedGraph<String> graph;
+        private TestDependencyMatrix testDependencies;
+        private CsrGraph graph;
         private Set<String> affectedTests;
         private Set<String> unreachedDeps;
+        private ScannedClasses scannedClasses;
 
-        public Result(Map<String, Set<String>> testDeps, DirectedGraph<String> graph,
+        public Result(TestDependencyMatrix testDependencies, CsrGraph graph,
                       Set<String> affectedTests, Set<String> unreached) {
-            this.testDeps = testDeps;
+            this(testDependencies, graph, affectedTests, unreached, null);
+        }
+
+        public Result(TestDependencyMatrix testDependencies, CsrGraph graph,
+                      Set<String> affectedTests, Set<String> unreached, ScannedClasses scannedClasses) {
+            this.testDependencies = testDependencies;
             this.graph = graph;
             this.affectedTests = affectedTests;
             this.unreachedDeps = unreached;
+            this.scannedClasses = scannedClasses;
         }
 
+        /** Vue {@code test -> fermeture} de {@link #getTestDependencies()}. */
         public Map<String, Set<String>> getTestDeps() {
-            return testDeps;
+            return testDependencies.asMap();
+        }
+
+        public TestDependencyMatrix getTestDependencies() {
+            return testDependencies;
         }
 
-        public DirectedGraph<String> getGraph() {
+        public CsrGraph getGraph() {
             return graph;
         }
 
@@ -205,6 +273,14 @@ abstract class BaseMojo extends SurefireMojo implements StartsConstants {
         public Set<String> getUnreachedDeps() {
             return unreachedDeps;
         }
+
+        /**
+         * @return {@code loader}, ou un classloader qui resout sans lui les classes deja lues
+         *         pour le graphe
+         */
+        public ClassLoader resolveScannedFirst(ClassLoader loader) {
+            return scannedClasses == null || loader == null ? loader : scannedClasses.over(loader);
+        }
     }
 
     public Classpath getSureFireClassPath() throws MojoExecutionException {
@@ -238,19 +314,23 @@ abstract class BaseMojo extends SurefireMojo implements StartsConstants {
         // Surefire Classpath object is easier to iterate over without de-constructing
         // sfPathString (which we use in a number of other places)
         loadables.setSurefireClasspath(sfClassPath);
+        loadables.setUseJdeps(useJdeps);
+        loadables.setClosureParallelism(closureParallelism);
 
         long loadMoreEdges = System.currentTimeMillis();
         Cache cache = new Cache(jdepsCache, m2Repo);
+        cache.setParallelism(jdepsCacheParallelism);
+        cache.setUseJdeps(useJdeps);
         // 1. Load non-reflection edges from third-party libraries in the classpath
-        List<String> moreEdges = new ArrayList<>();
+        CachedEdges moreEdges = new CachedEdges();
         if (useThirdParty) {
             moreEdges = cache.loadM2EdgesFromCache(sfPathString);
         }
         long loadM2EdgesFromCache = System.currentTimeMillis();
         // 2. Get non-reflection edges from CUT and SDK; use (1) to build graph
-        loadables.create(new ArrayList<>(moreEdges), sfClassPath, computeUnreached, exclureArchiDep);
+        loadables.create(moreEdges, sfClassPath, computeUnreached, exclureArchiDep);
 
-        Map<String, Set<String>> transitiveClosure = loadables.getTransitiveClosure();
+        TestDependencyMatrix testDependencies = loadables.getTestDependencies();
         long createLoadables = System.currentTimeMillis();
 
         // We don't need to compute affected tests this way with ZLC format.
@@ -260,7 +340,7 @@ abstract class BaseMojo extends SurefireMojo implements StartsConstants {
         // nonAffected tests.
         Set<String> affected = depFormat == DependencyFormat.ZLC ? null
                 : RTSUtil.computeAffectedTests(new HashSet<>(classesToAnalyze),
-                                               nonAffected, transitiveClosure);
+                                               nonAffected, testDependencies.asMap());
         long end = System.currentTimeMillis();
         Logger.getGlobal().log(Level.FINE, "[PROFILE] prepareForNextRun(loadMoreEdges): "
                 + Writer.millsToSeconds(loadMoreEdges - start));
@@ -272,7 +352,8 @@ abstract class BaseMojo extends SurefireMojo implements StartsConstants {
                 + Writer.millsToSeconds(end - createLoadables));
         Logger.getGlobal().log(Level.FINE, "[PROFILE] updateForNextRun(prepareForNextRun(TOTAL)): "
                 + Writer.millsToSeconds(end - start));
-        return new Result(transitiveClosure, loadables.getGraph(), affected, loadables.getUnreached());
+        return new Result(testDependencies, loadables.getGraph(), affected, loadables.getUnreached(),
+                loadables.getScannedClasses());
     }
 
     protected List<String> getAllClasses() {
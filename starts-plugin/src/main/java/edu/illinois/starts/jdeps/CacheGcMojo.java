@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.jdeps;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import edu.illinois.starts.helpers.GraphCacheManager;
+import edu.illinois.starts.util.Logger;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Evicts the least recently used graphs from the jdeps cache (-DgCache) once it exceeds a
+ * size or age budget, and prints the cache statistics (entries, bytes, hit rate).
+ */
+@Mojo(name = "cache-gc", requiresDirectInvocation = true)
+public class CacheGcMojo extends BaseMojo {
+    /** Maximum size of the jdeps cache, in megabytes. 0 disables the size budget. */
+    @Parameter(property = "cacheMaxSizeMb", defaultValue = "2048")
+    private long cacheMaxSizeMb;
+
+    /** Graphs not used for this many days are evicted. 0 disables the age budget. */
+    @Parameter(property = "cacheMaxAgeDays", defaultValue = "30")
+    private long cacheMaxAgeDays;
+
+    /** Set this to "true" to only print the statistics, without evicting anything. */
+    @Parameter(property = "cacheStatsOnly", defaultValue = FALSE)
+    private boolean cacheStatsOnly;
+
+    public void execute() throws MojoExecutionException {
+        Logger.getGlobal().setLoggingLevel(Level.parse(loggingLevel));
+        GraphCacheManager manager = new GraphCacheManager(new File(graphCache));
+        try {
+            Logger.getGlobal().log(Level.INFO, "jdeps cache " + graphCache + ": " + manager.stats());
+            if (cacheStatsOnly) {
+                return;
+            }
+            GraphCacheManager.Stats evicted = manager.gc(cacheMaxSizeMb * 1024 * 1024,
+                    TimeUnit.DAYS.toMillis(cacheMaxAgeDays));
+            if (evicted.getEntries() > 0) {
+                Logger.getGlobal().log(Level.INFO, "jdeps cache after gc: " + manager.stats());
+            }
+        } catch (IOException ioe) {
+            throw new MojoExecutionException("Failed to clean the jdeps cache " + graphCache, ioe);
+        }
+    }
+}
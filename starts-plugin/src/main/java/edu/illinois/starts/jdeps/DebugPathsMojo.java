@@ -13,18 +13,21 @@ import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
 
+import edu.illinois.starts.util.ChecksumEngine;
+import edu.illinois.starts.util.ClassHasher;
 import edu.illinois.starts.util.Pair;
+import edu.illinois.starts.util.SessionChecksums;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 
 import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.data.CsrGraph;
 import edu.illinois.starts.jdeps.runner.PathFinder;
 import edu.illinois.starts.helpers.Writer;
 import edu.illinois.starts.util.Logger;
 import org.apache.maven.surefire.booter.Classpath;
-import edu.illinois.yasgl.DirectedGraph;
 
 /**
  * Affiche le plus court chemin (classe modifiee -> intermediaires -> test) dans
@@ -63,6 +66,9 @@ public class DebugPathsMojo extends DiffMojo implements StartsConstants {
     @Override
     public void execute() throws MojoExecutionException {
         Logger.getGlobal().setLoggingLevel(Level.parse(loggingLevel));
+        ChecksumEngine.setDefaultParallelism(checksumParallelism);
+        ClassHasher.setDefaultAlgorithm(hashAlgorithm);
+        SessionChecksums.startBuild(getBuildId());
         Logger logger = Logger.getGlobal();
 
         logger.log(Level.INFO, "");
@@ -111,7 +117,7 @@ public class DebugPathsMojo extends DiffMojo implements StartsConstants {
                 getAllClasses(),
                 nonAffected,
                 true);
-        DirectedGraph<String> graph = result.getGraph();
+        CsrGraph graph = result.getGraph();
         // En format ZLC, result.getAffectedTests() est null.
         // On reproduit la logique de TestSelector.computeAffectedTests() :
         //   affectedTests = TOUS les tests - nonAffectedTests
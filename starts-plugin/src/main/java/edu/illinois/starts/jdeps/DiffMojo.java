@@ -4,22 +4,28 @@
 
 package edu.illinois.starts.jdeps;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 
 import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.data.CsrGraph;
 import edu.illinois.starts.data.ZLCFormat;
 import edu.illinois.starts.enums.DependencyFormat;
+import edu.illinois.starts.enums.SelectionMode;
 import edu.illinois.starts.helpers.EkstaziHelper;
 import edu.illinois.starts.helpers.RTSUtil;
+import edu.illinois.starts.helpers.SelectionGraph;
 import edu.illinois.starts.helpers.Writer;
 import edu.illinois.starts.helpers.ZLCHelper;
+import edu.illinois.starts.util.ChecksumEngine;
+import edu.illinois.starts.util.ClassHasher;
 import edu.illinois.starts.util.Logger;
 import edu.illinois.starts.util.Pair;
-import edu.illinois.yasgl.DirectedGraph;
+import edu.illinois.starts.util.SessionChecksums;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
@@ -43,10 +49,29 @@ public class DiffMojo extends BaseMojo implements StartsConstants {
     @Parameter(property = "cleanBytes", defaultValue = TRUE)
     protected boolean cleanBytes;
 
+    /**
+     * Set this to "true" to checksum every class listed in deps.zlc and rebuild .starts/deps.stat.
+     * By default, class files whose size and modification time are unchanged since their last
+     * checksum are not read again (see .starts/deps.stat), nor is a class checksummed earlier in
+     * the same Maven invocation and unchanged since.
+     */
+    @Parameter(property = "forceFullHash", defaultValue = FALSE)
+    protected boolean forceFullHash;
+
+    /**
+     * Set this to "false" to rebuild deps.zlc from scratch after each run. By default, only the
+     * closures of the affected and new tests are computed, and only the rows of deps.zlc they
+     * touch, or whose class changed, are updated. deps.zlc is always rebuilt when every test is
+     * affected, or when it was written with another zlcFormat or hashAlgorithm.
+     */
+    @Parameter(property = "incrementalZlc", defaultValue = TRUE)
+    protected boolean incrementalZlc;
+
     /**
      * Format of the ZLC dependency file deps.zlc
      * Set to "INDEXED" to store indices of tests
      * Set to "PLAIN_TEXT" to store full URLs of tests
+     * Set to "BINARY" for a compact binary file with a sorted class index
      */
     @Parameter(property = "zlcFormat", defaultValue = "INDEXED")
     protected ZLCFormat zlcFormat;
@@ -59,8 +84,21 @@ public class DiffMojo extends BaseMojo implements StartsConstants {
     @Parameter(property = "updateDiffChecksums", defaultValue = FALSE)
     private boolean updateDiffChecksums;
 
+    /**
+     * How affected tests are found (ZLC format only).
+     * Set to "ZLC" to read the tests listed for each changed class in deps.zlc.
+     * Set to "REVERSE_GRAPH" to walk the dependency graph saved by the last update backwards
+     * from the changed classes; deps.zlc is then only used for the checksums. Falls back to
+     * "ZLC" while no graph has been saved.
+     */
+    @Parameter(property = "selectionMode", defaultValue = "ZLC")
+    protected SelectionMode selectionMode;
+
     public void execute() throws MojoExecutionException {
         Logger.getGlobal().setLoggingLevel(Level.parse(loggingLevel));
+        ChecksumEngine.setDefaultParallelism(checksumParallelism);
+        ClassHasher.setDefaultAlgorithm(hashAlgorithm);
+        SessionChecksums.startBuild(getBuildId());
 
         // Auto-skip : modules agregateurs (packaging=pom) ou sans tests.
         // Ils n'ont pas de plugin Surefire -> getSureFireClassPath planterait.
@@ -105,9 +143,13 @@ public class DiffMojo extends BaseMojo implements StartsConstants {
         }
         long start = System.currentTimeMillis();
         Pair<Set<String>, Set<String>> data = null;
-        if (depFormat == DependencyFormat.ZLC) {
+        SelectionGraph selectionGraph = useSelectionGraph()
+                ? SelectionGraph.load(new File(getArtifactsDir(), SELECTION_GRAPH)) : null;
+        if (selectionGraph != null) {
+            data = computeChangeDataFromGraph(selectionGraph);
+        } else if (depFormat == DependencyFormat.ZLC) {
             ZLCHelper zlcHelper = new ZLCHelper();
-            data = zlcHelper.getChangedData(getArtifactsDir(), cleanBytes);
+            data = zlcHelper.getChangedData(getArtifactsDir(), cleanBytes, !forceFullHash);
         } else if (depFormat == DependencyFormat.CLZ) {
             data = EkstaziHelper.getNonAffectedTests(getArtifactsDir());
         }
@@ -120,6 +162,42 @@ public class DiffMojo extends BaseMojo implements StartsConstants {
         return data;
     }
 
+    private boolean useSelectionGraph() {
+        return depFormat == DependencyFormat.ZLC && selectionMode == SelectionMode.REVERSE_GRAPH;
+    }
+
+    /**
+     * Selection par accessibilite inverse : les checksums du ZLC donnent les classes
+     * modifiees, un BFS arriere sur le graphe persiste donne les tests qui les atteignent.
+     */
+    private Pair<Set<String>, Set<String>> computeChangeDataFromGraph(SelectionGraph selectionGraph)
+            throws MojoExecutionException {
+        Pair<Set<String>, List<String>> changedData = ZLCHelper.getChangedClasses(getArtifactsDir(), cleanBytes,
+                !forceFullHash);
+        if (changedData == null) {
+            return null;
+        }
+        Set<String> changed = changedData.getKey();
+        Set<String> changedClasses = new HashSet<>();
+        List<String> roots = ZLCHelper.classpathRoots(getSureFireClassPath().getClassPath());
+        for (String url : changed) {
+            String className = ZLCHelper.urlToClassName(url, roots);
+            if (className == null) {
+                // Classe sortie du classpath : son nom n'est plus connu, selection par le ZLC
+                Logger.getGlobal().log(Level.FINE, "No classpath root for " + url + ", selecting from the ZLC");
+                return new ZLCHelper().getChangedData(getArtifactsDir(), cleanBytes, !forceFullHash);
+            }
+            changedClasses.add(className);
+        }
+        Set<String> affected = selectionGraph.selectAffectedTests(changedClasses);
+        if (!changed.isEmpty()) {
+            affected.addAll(changedData.getValue());
+        }
+        Set<String> nonAffected = new HashSet<>(selectionGraph.getTests());
+        nonAffected.removeAll(affected);
+        return new Pair<>(nonAffected, changed);
+    }
+
     public void updateForNextRun(Set<String> nonAffected) throws MojoExecutionException {
         long start = System.currentTimeMillis();
         Classpath sfClassPath = getSureFireClassPath();
@@ -128,25 +206,44 @@ public class DiffMojo extends BaseMojo implements StartsConstants {
         List<String> allTests = getTestClasses("updateForNextRun");
         Set<String> affectedTests = new HashSet<>(allTests);
         affectedTests.removeAll(nonAffected);
-        DirectedGraph<String> graph = null;
+        CsrGraph graph = null;
         if (!affectedTests.isEmpty()) {
             ClassLoader loader = createClassLoader(sfClassPath);
+            // Les fermetures des tests non affectes n'ont pas change : seules celles des autres sont calculees
+            Pair<Set<String>, Set<String>> changeData = incrementalZlc && depFormat == DependencyFormat.ZLC
+                    && !nonAffected.isEmpty() && ZLCHelper.canUpdateIncrementally(getArtifactsDir(), zlcFormat)
+                    ? computeChangeData(false) : null;
+            boolean incremental = changeData != null;
             //TODO: set this boolean to true only for static reflectionAnalyses with * (border, string, naive)?
-            boolean computeUnreached = true;
-            Result result = prepareForNextRun(sfPathString, sfClassPath, allTests, nonAffected, computeUnreached);
-            Map<String, Set<String>> testDeps = result.getTestDeps();
+            boolean computeUnreached = !incremental;
+            Result result = prepareForNextRun(sfPathString, sfClassPath,
+                    incremental ? new ArrayList<>(affectedTests) : allTests, nonAffected, computeUnreached);
+            if (incremental && !ZLCHelper.updateZLCFileIncrementally(result.getTestDependencies(), allTests,
+                    changeData.getValue(), result.resolveScannedFirst(loader), getArtifactsDir(), useThirdParty,
+                    zlcFormat, !forceFullHash)) {
+                Logger.getGlobal().log(Level.WARNING, "Rebuilding " + ZLCHelper.zlcFile + " from scratch");
+                incremental = false;
+                computeUnreached = true;
+                result = prepareForNextRun(sfPathString, sfClassPath, allTests, nonAffected, computeUnreached);
+            }
+            // Les classes locales lues pour le graphe ne repassent pas par le classloader
+            loader = result.resolveScannedFirst(loader);
             graph = result.getGraph();
             Set<String> unreached = computeUnreached ? result.getUnreachedDeps() : new HashSet<String>();
             if (depFormat == DependencyFormat.ZLC) {
-                ZLCHelper zlcHelper = new ZLCHelper();
-                zlcHelper.updateZLCFile(testDeps, loader, getArtifactsDir(), unreached, useThirdParty, zlcFormat);
+                if (!incremental) {
+                    ZLCHelper zlcHelper = new ZLCHelper();
+                    zlcHelper.updateZLCFile(result.getTestDependencies(), loader, getArtifactsDir(), unreached,
+                            useThirdParty, zlcFormat, !forceFullHash);
+                }
+                updateSelectionGraph(graph, allTests);
             } else if (depFormat == DependencyFormat.CLZ) {
                 // The next line is not needed with ZLC because '*' is explicitly tracked in ZLC
                 affectedTests = result.getAffectedTests();
                 if (affectedTests == null) {
                     throw new MojoExecutionException("Affected tests should not be null with CLZ format!");
                 }
-                RTSUtil.computeAndSaveNewCheckSums(getArtifactsDir(), affectedTests, testDeps, loader);
+                RTSUtil.computeAndSaveNewCheckSums(getArtifactsDir(), affectedTests, result.getTestDeps(), loader);
             }
         }
         save(getArtifactsDir(), affectedTests, allTests, sfPathString, graph);
@@ -155,13 +252,26 @@ public class DiffMojo extends BaseMojo implements StartsConstants {
         Logger.getGlobal().log(Level.FINE, PROFILE_UPDATE_FOR_NEXT_RUN_TOTAL + Writer.millsToSeconds(end - start));
     }
 
+    /**
+     * Le graphe de selection doit correspondre au ZLC qui vient d'etre ecrit : il est
+     * sauvegarde en mode REVERSE_GRAPH, et supprime sinon pour ne jamais servir perime.
+     */
+    protected void updateSelectionGraph(CsrGraph graph, List<String> tests) throws MojoExecutionException {
+        File file = new File(getArtifactsDir(), SELECTION_GRAPH);
+        if (useSelectionGraph()) {
+            SelectionGraph.save(file, graph, tests);
+        } else if (file.exists() && !file.delete()) {
+            Logger.getGlobal().log(Level.WARNING, "Could not delete stale selection graph: " + file);
+        }
+    }
+
     public void printToTerminal(List<String> testClasses, Set<String> affectedTests) {
         Logger.getGlobal().log(Level.INFO, STARTS_AFFECTED_TESTS + affectedTests.size());
         Logger.getGlobal().log(Level.INFO, "STARTS:TotalTests: " + testClasses.size());
     }
 
     public void save(String artifactsDir, Set<String> affectedTests, List<String> testClasses,
-                     String sfPathString, DirectedGraph<String> graph) {
+                     String sfPathString, CsrGraph graph) {
         int globalLogLevel = Logger.getGlobal().getLoggingLevel().intValue();
         Writer.writeToFile(testClasses, "all-tests", artifactsDir);
         Writer.writeToFile(affectedTests, "selected-tests", artifactsDir);
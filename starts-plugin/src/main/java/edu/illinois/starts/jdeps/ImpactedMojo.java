@@ -10,12 +10,16 @@ import java.util.Set;
 import java.util.logging.Level;
 
 import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.data.CsrGraph;
+import edu.illinois.starts.enums.SelectionMode;
 import edu.illinois.starts.helpers.RTSUtil;
 import edu.illinois.starts.helpers.Writer;
 import edu.illinois.starts.helpers.ZLCHelper;
+import edu.illinois.starts.util.ChecksumEngine;
+import edu.illinois.starts.util.ClassHasher;
 import edu.illinois.starts.util.Logger;
 import edu.illinois.starts.util.Pair;
-import edu.illinois.yasgl.DirectedGraph;
+import edu.illinois.starts.util.SessionChecksums;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Execute;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
@@ -62,7 +66,12 @@ public class ImpactedMojo extends DiffMojo implements StartsConstants {
 
     public void execute() throws MojoExecutionException {
         Logger.getGlobal().setLoggingLevel(Level.parse(loggingLevel));
+        ChecksumEngine.setDefaultParallelism(checksumParallelism);
+        ClassHasher.setDefaultAlgorithm(hashAlgorithm);
+        SessionChecksums.startBuild(getBuildId());
         logger = Logger.getGlobal();
+        // Ici les "tests" du ZLC sont toutes les classes du module : pas de selection par graphe
+        selectionMode = SelectionMode.ZLC;
         Pair<Set<String>, Set<String>> data = computeChangeData(false);
         // 0. Find all classes in program
         List<String> allClasses = getAllClasses();
@@ -106,9 +115,11 @@ public class ImpactedMojo extends DiffMojo implements StartsConstants {
         String sfPathString = Writer.pathToString(sfClassPath.getClassPath());
         ClassLoader loader = createClassLoader(sfClassPath);
         Result result = prepareForNextRun(sfPathString, sfClassPath, allClasses, new HashSet<String>(), false);
+        loader = result.resolveScannedFirst(loader);
         ZLCHelper zlcHelper = new ZLCHelper();
-        zlcHelper.updateZLCFile(result.getTestDeps(), loader, getArtifactsDir(), new HashSet<String>(), useThirdParty,
-                zlcFormat);
+        zlcHelper.updateZLCFile(result.getTestDependencies(), loader, getArtifactsDir(), new HashSet<String>(), useThirdParty,
+                zlcFormat, !forceFullHash);
+        updateSelectionGraph(result.getGraph(), allClasses);
         long end = System.currentTimeMillis();
         if (writePath || logger.getLoggingLevel().intValue() <= Level.FINER.intValue()) {
             Writer.writeClassPath(sfPathString, getArtifactsDir());
@@ -119,7 +130,7 @@ public class ImpactedMojo extends DiffMojo implements StartsConstants {
         Logger.getGlobal().log(Level.FINE, PROFILE_UPDATE_FOR_NEXT_RUN_TOTAL + Writer.millsToSeconds(end - start));
     }
 
-    private void save(String artifactsDir, DirectedGraph<String> graph) {
+    private void save(String artifactsDir, CsrGraph graph) {
         RTSUtil.saveForNextRun(artifactsDir, graph, printGraph, graphFile);
     }
 }
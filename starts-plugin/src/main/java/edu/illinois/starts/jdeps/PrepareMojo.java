@@ -16,7 +16,10 @@ import edu.illinois.starts.constants.StartsConstants;
 import edu.illinois.starts.jdeps.runner.MavenTestRunner;
 import edu.illinois.starts.jdeps.runner.PropertiesGuard;
 import edu.illinois.starts.jdeps.runner.RunReport;
+import edu.illinois.starts.util.ChecksumEngine;
+import edu.illinois.starts.util.ClassHasher;
 import edu.illinois.starts.util.Logger;
+import edu.illinois.starts.util.SessionChecksums;
 
 /**
  * Pre-requis GLOBAUX, a executer UNE seule fois avant une serie de
@@ -64,6 +67,9 @@ public class PrepareMojo extends BaseMojo implements StartsConstants {
     @Override
     public void execute() throws MojoExecutionException {
         Logger.getGlobal().setLoggingLevel(Level.parse(loggingLevel));
+        ChecksumEngine.setDefaultParallelism(checksumParallelism);
+        ClassHasher.setDefaultAlgorithm(hashAlgorithm);
+        SessionChecksums.startBuild(getBuildId());
         Logger logger = Logger.getGlobal();
 
         RunReport report = new RunReport(logger, logsDir, getProject().getArtifactId());
@@ -20,8 +20,11 @@ import java.util.logging.Level;
 import edu.illinois.starts.constants.StartsConstants;
 import edu.illinois.starts.helpers.Writer;
 import edu.illinois.starts.maven.AgentLoader;
+import edu.illinois.starts.util.ChecksumEngine;
+import edu.illinois.starts.util.ClassHasher;
 import edu.illinois.starts.util.Logger;
 import edu.illinois.starts.util.Pair;
+import edu.illinois.starts.util.SessionChecksums;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
@@ -76,6 +79,9 @@ public class RunMojo extends DiffMojo implements StartsConstants {
 
     public void execute() throws MojoExecutionException {
         Logger.getGlobal().setLoggingLevel(Level.parse(loggingLevel));
+        ChecksumEngine.setDefaultParallelism(checksumParallelism);
+        ClassHasher.setDefaultAlgorithm(hashAlgorithm);
+        SessionChecksums.startBuild(getBuildId());
         logger = Logger.getGlobal();
         long start = System.currentTimeMillis();
         setIncludesExcludes();
@@ -9,7 +9,11 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
+import edu.illinois.starts.util.ChecksumEngine;
+import edu.illinois.starts.util.ClassHasher;
 import edu.illinois.starts.util.Pair;
+import edu.illinois.starts.util.SessionChecksums;
+import edu.illinois.starts.util.SharedChecksumStore;
 import java.util.logging.Level;
 
 import edu.illinois.starts.constants.StartsConstants;
@@ -151,7 +155,8 @@ public class RunSelectedMojo extends DiffMojo implements StartsConstants {
 
     /**
      * Repertoire de travail partage pour les artefacts transverses
-     * (failed-tests.txt agrege). Defaut : le .starts du module.
+     * (failed-tests.txt agrege, checksums des JARs des modules amont).
+     * Defaut : le .starts du module, sans partage des checksums.
      * En multi-module, le shell passe archi/scripts/starts/work.
      */
     @Parameter(property = "workDir", defaultValue = "")
@@ -173,6 +178,11 @@ public class RunSelectedMojo extends DiffMojo implements StartsConstants {
 
     public void execute() throws MojoExecutionException {
         Logger.getGlobal().setLoggingLevel(Level.parse(loggingLevel));
+        ChecksumEngine.setDefaultParallelism(checksumParallelism);
+        ClassHasher.setDefaultAlgorithm(hashAlgorithm);
+        SessionChecksums.startBuild(getBuildId());
+        ChecksumEngine.setSharedStore(workDir == null || workDir.isEmpty() ? null
+                : SharedChecksumStore.in(new File(workDir, SharedChecksumStore.DIR_NAME)));
         Logger logger = Logger.getGlobal();
         long start = System.currentTimeMillis();
 
@@ -4,18 +4,14 @@
 
 package edu.illinois.starts.jdeps.runner;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.Deque;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
-import edu.illinois.yasgl.DirectedGraph;
-import edu.illinois.yasgl.Edge;
+import edu.illinois.starts.data.CsrGraph;
 
 /**
  * Calcule le plus court chemin entre une classe modifiee et un test affecte
@@ -27,23 +23,22 @@ import edu.illinois.yasgl.Edge;
  */
 public class PathFinder {
 
-    /** classe -> classes qui en dependent (predecesseurs dans le graphe). */
-    private final Map<String, Set<String>> reverseAdjacency = new HashMap<>();
-    /** classe -> classes vers lesquelles elle pointe (successeurs). */
-    private final Map<String, Set<String>> forwardAdjacency = new HashMap<>();
+    private final CsrGraph graph;
+    /** Tampons de BFS, reutilises d'un appel a l'autre (debug-paths en fait des milliers). */
+    private final BitSet visited;
+    private final int[] parents;
+    private final int[] queue;
 
     /**
      * Construit le PathFinder a partir du graphe STARTS.
      *
-     * @param graph le graphe de dependances (DirectedGraph YASGL)
+     * @param graph le graphe de dependances (CSR, aretes inverses incluses)
      */
-    public PathFinder(DirectedGraph<String> graph) {
-        for (Edge<String> edge : graph.getEdges()) {
-            String src = edge.getSource();
-            String dst = edge.getDestination();
-            forwardAdjacency.computeIfAbsent(src, k -> new HashSet<>()).add(dst);
-            reverseAdjacency.computeIfAbsent(dst, k -> new HashSet<>()).add(src);
-        }
+    public PathFinder(CsrGraph graph) {
+        this.graph = graph;
+        this.visited = new BitSet(graph.getVertexCount());
+        this.parents = new int[graph.getVertexCount()];
+        this.queue = new int[graph.getVertexCount()];
     }
 
     /**
@@ -77,41 +72,43 @@ public class PathFinder {
         if (test.equals(modifiedClass)) {
             return Collections.singletonList(test);
         }
+        int from = graph.getId(modifiedClass);
+        int to = graph.getId(test);
+        if (from < 0 || to < 0) {
+            return Collections.emptyList();
+        }
+        BitSet forbidden = toIds(forbiddenIntermediates);
 
         // STARTS construit le graphe ainsi : si A depend de B, arete A -> B.
         // Donc pour trouver les tests qui dependent de modifiedClass, on part
         // de modifiedClass et on suit les aretes INVERSES (les classes qui
         // pointent vers nous), jusqu'a atteindre test.
-        Map<String, String> parents = new HashMap<>();
-        Set<String> visited = new HashSet<>();
-        Deque<String> queue = new ArrayDeque<>();
-
-        queue.add(modifiedClass);
-        visited.add(modifiedClass);
+        int[] offsets = graph.getReverseOffsets();
+        int[] dependents = graph.getReverseTargets();
+        visited.clear();
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = from;
+        visited.set(from);
 
         boolean found = false;
-        while (!queue.isEmpty()) {
-            String current = queue.poll();
-            Set<String> dependents = reverseAdjacency.get(current);
-            if (dependents == null) {
-                continue;
-            }
-            for (String dep : dependents) {
-                if (visited.add(dep)) {
-                    parents.put(dep, current);
-                    if (dep.equals(test)) {
-                        found = true;
-                        break;
-                    }
-                    // Ne pas traverser les noeuds interdits comme intermediaires
-                    if (forbiddenIntermediates.contains(dep)) {
-                        continue;
-                    }
-                    queue.add(dep);
+        while (head < tail && !found) {
+            int current = queue[head++];
+            for (int i = offsets[current]; i < offsets[current + 1]; i++) {
+                int dep = dependents[i];
+                if (visited.get(dep)) {
+                    continue;
+                }
+                visited.set(dep);
+                parents[dep] = current;
+                if (dep == to) {
+                    found = true;
+                    break;
+                }
+                // Ne pas traverser les noeuds interdits comme intermediaires
+                if (!forbidden.get(dep)) {
+                    queue[tail++] = dep;
                 }
-            }
-            if (found) {
-                break;
             }
         }
 
@@ -122,13 +119,11 @@ public class PathFinder {
         // Reconstruire en remontant les parents : test -> ... -> modifiedClass
         // Puis inverser pour avoir modifiedClass -> ... -> test
         List<String> reversed = new ArrayList<>();
-        String node = test;
-        while (node != null) {
-            reversed.add(node);
-            if (node.equals(modifiedClass)) {
-                break;
-            }
-            node = parents.get(node);
+        int node = to;
+        reversed.add(graph.getName(node));
+        while (node != from) {
+            node = parents[node];
+            reversed.add(graph.getName(node));
         }
         Collections.reverse(reversed);
         return reversed;
@@ -153,34 +148,57 @@ public class PathFinder {
     public Set<String> findReachableTests(String modifiedClass, Set<String> candidateTests,
                                           Set<String> forbiddenIntermediates) {
         Set<String> reachable = new HashSet<>();
-        Set<String> visited = new HashSet<>();
-        Deque<String> queue = new ArrayDeque<>();
-        queue.add(modifiedClass);
-        visited.add(modifiedClass);
-
-        while (!queue.isEmpty()) {
-            String current = queue.poll();
-            if (candidateTests.contains(current)) {
-                reachable.add(current);
+        int from = graph.getId(modifiedClass);
+        if (from < 0) {
+            if (candidateTests.contains(modifiedClass)) {
+                reachable.add(modifiedClass);
             }
-            Set<String> dependents = reverseAdjacency.get(current);
-            if (dependents == null) {
-                continue;
+            return reachable;
+        }
+        BitSet forbidden = toIds(forbiddenIntermediates);
+        int[] offsets = graph.getReverseOffsets();
+        int[] dependents = graph.getReverseTargets();
+        visited.clear();
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = from;
+        visited.set(from);
+
+        while (head < tail) {
+            int current = queue[head++];
+            String name = graph.getName(current);
+            if (candidateTests.contains(name)) {
+                reachable.add(name);
             }
-            for (String dep : dependents) {
-                if (visited.add(dep)) {
-                    // Ne pas traverser les noeuds interdits comme intermediaires
-                    // (mais on peut quand meme les compter s'ils sont des tests cibles)
-                    if (forbiddenIntermediates.contains(dep)) {
-                        if (candidateTests.contains(dep)) {
-                            reachable.add(dep);
-                        }
-                        continue;
+            for (int i = offsets[current]; i < offsets[current + 1]; i++) {
+                int dep = dependents[i];
+                if (visited.get(dep)) {
+                    continue;
+                }
+                visited.set(dep);
+                // Ne pas traverser les noeuds interdits comme intermediaires
+                // (mais on peut quand meme les compter s'ils sont des tests cibles)
+                if (forbidden.get(dep)) {
+                    String depName = graph.getName(dep);
+                    if (candidateTests.contains(depName)) {
+                        reachable.add(depName);
                     }
-                    queue.add(dep);
+                    continue;
                 }
+                queue[tail++] = dep;
             }
         }
         return reachable;
     }
-}
\ No newline at end of file
+
+    private BitSet toIds(Set<String> names) {
+        BitSet ids = new BitSet();
+        for (String name : names) {
+            int id = graph.getId(name);
+            if (id >= 0) {
+                ids.set(id);
+            }
+        }
+        return ids;
+    }
+}